@@ -13,6 +13,7 @@ module.exports = {
   deleteMember: memberController.deleteMember,
   changeRole: memberController.changeRole,
   getMembers: memberController.getMembers,
+  getMemberIds: memberController.getMemberIds,
   
   getGroupMessages: messageController.getGroupMessages
 };
\ No newline at end of file
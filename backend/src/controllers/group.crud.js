@@ -1,6 +1,7 @@
 const Group = require('../models/group.model');
 const mongoose = require('mongoose');
 const User = require('../models/user.model');
+const resourceVersion = require("../services/resourceVersion.service");
 
 module.exports.createGroup = async (req, res) => {
   try {
@@ -75,6 +76,13 @@ module.exports.getGroups = async (req, res) => {
     const userId = req.user._id;
     const userObjectId = new mongoose.Types.ObjectId(userId);
 
+    // ETag từ danh sách nhóm đang tham gia và phiên bản của từng nhóm (truy vấn theo chỉ mục, chỉ lấy _id),
+    // không đổi -> 304, không chạy lại aggregate tin nhắn của tất cả các nhóm
+    const { keys } = resourceVersion;
+    const joined = await Group.find({ "members.userId": userObjectId, isActive: true }).select("_id").sort({ _id: 1 }).lean();
+    const versionKeys = [keys.groupsOf(userId), keys.profiles(), ...joined.map(g => keys.group(g._id))];
+    if (resourceVersion.notModified(req, res, versionKeys)) return;
+
     const groups = await Group.aggregate([
       //lọc các nhóm mà user tham gia
       {
@@ -137,6 +145,7 @@ module.exports.getGroups = async (req, res) => {
           avatar: 1,
           description: 1,
           owner: 1,
+          memberCount: { $size: "$members" }, // danh sách thành viên được tải riêng khi cần (getMembers/memberIds)
           unreadCount: 1,
           lastMessage: {
             content: "$lastMessage.content",
@@ -199,6 +208,7 @@ module.exports.updateGroup = async (req, res) => {
     }
 
     await group.save();
+    resourceVersion.bump(resourceVersion.keys.group(id));
 
     return res.status(200).json({
       message: "Cập nhật thành công",
@@ -218,6 +228,23 @@ module.exports.getInfoGroup = async (req, res) => {
 
     if(!mongoose.Types.ObjectId.isValid(id)) return res.status(400).json({ message: "Id nhóm không hợp lệ"});
 
+    // thành viên đang giữ đúng bản mới nhất -> 304 (người không phải thành viên đi tiếp để nhận lỗi như cũ)
+    const { keys } = resourceVersion;
+    const isMember = await Group.exists({ _id: id, isActive: true, "members.userId": userId });
+    if (isMember && resourceVersion.notModified(req, res, [keys.group(id), keys.profiles()])) return;
+
+    // members=false: chỉ trả về thông tin nhóm và số thành viên, không populate toàn bộ thành viên
+    // (client tải thành viên theo trang qua getMembers, kiểm tra quyền qua memberIds)
+    if (req.query.members === "false") {
+      const group = await Group.findById(id).populate("owner", "username avatar fullName").lean();
+      if(!group) return res.status(404).json({ message: "Nhóm không tồn tại"});
+      if(!group.isActive) return res.status(400).json({ message: "Nhóm không còn hoạt động"});
+      if(!isMember) return res.status(403).json({ message: "Bạn không phải thành viên của nhóm này"});
+
+      const { members, ...info } = group;
+      return res.status(200).json({ message: "Lấy thông tin nhóm thành công", group: { ...info, memberCount: members.length }});
+    }
+
     const group = await Group.findById(id)
     .populate("members.userId", "username avatar fullName")
     .populate("owner", "username avatar fullName");
@@ -259,6 +286,7 @@ module.exports.deleteGroup = async (req, res) => {
     if(group.owner.toString() === userId.toString()) {
       group.isActive = false;
       await group.save();
+      resourceVersion.bump(resourceVersion.keys.group(id));
       return res.status(200).json({ message: "Xóa nhóm thành công", group});
     } 
 
@@ -267,6 +295,7 @@ module.exports.deleteGroup = async (req, res) => {
       group.isActive = false;
     }
     await group.save();
+    resourceVersion.bump(resourceVersion.keys.group(id));
     return res.status(200).json({ message: "Rời nhóm thành công", group});
     
   } catch (error) {
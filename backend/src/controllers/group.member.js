@@ -1,6 +1,8 @@
 const Group = require('../models/group.model');
 const mongoose = require('mongoose');
 const User = require('../models/user.model');
+const resourceVersion = require("../services/resourceVersion.service");
+const pagination = require("../services/pagination.service");
 
 module.exports.addMember = async (req, res) => {
   try {
@@ -52,6 +54,7 @@ module.exports.addMember = async (req, res) => {
     group.members.push(...newMembers);
 
     await group.save();
+    resourceVersion.bump(resourceVersion.keys.group(id));
 
     return res.status(200).json({ message: "Thêm thành viên thành công", existingMembers, newMembers});
 
@@ -102,6 +105,7 @@ module.exports.changeRole = async (req, res) => {
 
     targetMember.role = newRole;
     await group.save();
+    resourceVersion.bump(resourceVersion.keys.group(id));
 
     const updatedGroup = await Group.findById(id)
       .populate('members.userId', 'username fullName avatar')
@@ -117,6 +121,9 @@ module.exports.changeRole = async (req, res) => {
   }
 }
 
+// thành viên nhóm, người mới tham gia trước
+// có tham số "limit"/"before" thì trả về 1 trang (con trỏ theo joinedAt), có "q" thì chỉ lấy người có tên/username chứa q
+// không có tham số nào thì trả về tất cả như trước
 module.exports.getMembers = async (req, res) => {
   try {
     const userId = req.user._id;
@@ -124,22 +131,98 @@ module.exports.getMembers = async (req, res) => {
 
     if(!id || !mongoose.Types.ObjectId.isValid(id)) return res.status(400).json({ message: "ID nhóm không hợp lệ"});
 
-    const group = await Group.findById(id).populate('members.userId', 'username avatar fullName');
+    const page = pagination.parsePageQuery(req.query);
+    if (page && page.error) return res.status(400).json({ message: page.error });
+    const q = typeof req.query.q === "string" ? req.query.q.trim() : "";
 
-    if(!group || !group.isActive) return res.status(400).json({ message: "Nhóm không tồn tại hoặc không còn hoạt động"});
-
-    const member = group.members.find(m => m.userId._id.toString() === userId.toString());
-    if(!member) return res.status(403).json({ message: "Bạn không phải là thành viên của nhóm này"});
+    const { keys } = resourceVersion;
+    const isMember = await Group.exists({ _id: id, isActive: true, "members.userId": userId });
+    if (!isMember) {
+      const group = await Group.findById(id).select("isActive").lean();
+      if(!group || !group.isActive) return res.status(400).json({ message: "Nhóm không tồn tại hoặc không còn hoạt động"});
+      return res.status(403).json({ message: "Bạn không phải là thành viên của nhóm này"});
+    }
+    // thành viên đang giữ đúng bản mới nhất -> 304 (mỗi trang/từ khóa là 1 url nên được cache riêng)
+    if (resourceVersion.notModified(req, res, [keys.group(id), keys.profiles()])) return;
+
+    // tách từng thành viên thành 1 document, chỉ lấy thông tin người dùng của các thành viên trong trang
+    const pipeline = [
+      { $match: { _id: new mongoose.Types.ObjectId(id) } },
+      { $unwind: "$members" },
+      { $replaceWith: "$members" },
+      { $sort: { joinedAt: -1, _id: -1 } }
+    ];
+    if (page && page.cursor) pipeline.push({ $match: pagination.beforeCursor(page.cursor, "joinedAt") });
+
+    const lookupUser = [
+      { $lookup: { from: "users", localField: "userId", foreignField: "_id", as: "userId" } },
+      { $unwind: "$userId" },
+      {
+        $project: {
+          role: 1,
+          joinedAt: 1,
+          "userId._id": 1,
+          "userId.username": 1,
+          "userId.fullName": 1,
+          "userId.avatar": 1
+        }
+      }
+    ];
+    const limit = page ? [{ $limit: page.limit + 1 }] : [];
+
+    if (q) {
+      const pattern = new RegExp(q.replace(/[.*+?^${}()|[\]\\]/g, "\\$&"), "i");
+      pipeline.push(...lookupUser, { $match: { $or: [{ "userId.username": pattern }, { "userId.fullName": pattern }] } }, ...limit);
+    } else {
+      pipeline.push(...limit, ...lookupUser);
+    }
 
-    const members = group.members.sort((a, b) => new Date(b.joinedAt) - new Date(a.joinedAt));
+    const docs = await Group.aggregate(pipeline);
+    const hasMore = page ? docs.length > page.limit : false;
+    const members = hasMore ? docs.slice(0, page.limit) : docs;
 
-    return res.status(200).json({ message: "Lấy danh sách thành viên thành công", members});
+    return res.status(200).json({
+      message: "Lấy danh sách thành viên thành công",
+      members,
+      hasMore,
+      nextCursor: hasMore ? pagination.encodeCursor(members[members.length - 1], "joinedAt") : null
+    });
   } catch (error) {
     console.log("Lỗi khi lấy danh sách nhân viên: ", error);
     return res.status(500).json({ message: "Lỗi server khi lấy danh sách thành viên"})
   }
 }
 
+// id của tất cả thành viên và các admin (không kèm thông tin người dùng),
+// đủ để client kiểm tra quyền hoặc "đã là thành viên chưa" mà không phải tải toàn bộ danh sách thành viên
+module.exports.getMemberIds = async (req, res) => {
+  try {
+    const userId = req.user._id;
+    const { id } = req.params;
+
+    if(!id || !mongoose.Types.ObjectId.isValid(id)) return res.status(400).json({ message: "ID nhóm không hợp lệ"});
+
+    const group = await Group.findById(id).select("owner isActive members.userId members.role").lean();
+    if(!group || !group.isActive) return res.status(400).json({ message: "Nhóm không tồn tại hoặc không còn hoạt động"});
+
+    if(!group.members.some(m => m.userId.toString() === userId.toString()))
+      return res.status(403).json({ message: "Bạn không phải là thành viên của nhóm này"});
+
+    const { keys } = resourceVersion;
+    if (resourceVersion.notModified(req, res, [keys.group(id)])) return;
+
+    return res.status(200).json({
+      message: "Lấy danh sách id thành viên thành công",
+      owner: group.owner,
+      memberIds: group.members.map(m => m.userId),
+      adminIds: group.members.filter(m => m.role === "admin").map(m => m.userId)
+    });
+  } catch (error) {
+    console.log("Lỗi khi lấy id thành viên: ", error);
+    return res.status(500).json({ message: "Lỗi server khi lấy danh sách thành viên"});
+  }
+}
+
 module.exports.deleteMember = async (req, res) => {
   try {
     const userId = req.user._id;
@@ -169,6 +252,7 @@ module.exports.deleteMember = async (req, res) => {
     group.members = group.members.filter(m => m.userId.toString() !== memberId.toString());
 
     await group.save();
+    resourceVersion.bump(resourceVersion.keys.group(id));
 
     return res.status(200).json({ message: "Đã xóa thành công thành viên này khỏi nhóm", group});
   } catch (error) {
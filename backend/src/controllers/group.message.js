@@ -2,6 +2,7 @@ const Group = require('../models/group.model');
 const mongoose = require('mongoose');
 const User = require('../models/user.model');
 const Message = require('../models/message.model');
+const pagination = require('../services/pagination.service');
 
 module.exports.getGroupMessages = async (req, res) => {
   try {
@@ -18,9 +19,26 @@ module.exports.getGroupMessages = async (req, res) => {
     const member = group.members.find(m => m.userId.toString() === userId.toString());
     if(!member) return res.status(403).json({ message: "Bạn không phải thành viên nhóm này"});
 
-    const messages = await Message.find({
-      groupId: id
-    }).sort({ createdAt: 1}).populate("senderId", "username avatar fullName");
+    const filter = { groupId: id };
+
+    // chỉ lấy các tin từ mốc "after" trở về sau (client tải bù sau khi kết nối lại)
+    const { after } = req.query;
+    if (after) {
+      const afterDate = new Date(after);
+      if (isNaN(afterDate.getTime())) return res.status(400).json({ message: "Mốc thời gian không hợp lệ" });
+      filter.createdAt = { $gte: afterDate };
+    }
+
+    // phân trang theo con trỏ: ?limit=50&before=<nextCursor của trang trước>
+    const page = pagination.parsePageQuery(req.query);
+    if (page && page.error) return res.status(400).json({ message: page.error });
+    if (page) {
+      if (page.cursor) Object.assign(filter, pagination.beforeCursor(page.cursor));
+      const result = await pagination.findPage(Message.find(filter).populate("senderId", "username avatar fullName"), page);
+      return res.status(200).json({ message: "Lấy tin nhắn thành công", ...result });
+    }
+
+    const messages = await Message.find(filter).sort({ createdAt: 1}).populate("senderId", "username avatar fullName");
 
     return res.status(200).json({ message: "Lấy tin nhắn thành công", messages})
 
@@ -1,18 +1,40 @@
 const Message = require("../models/message.model");
 const mongoose = require("mongoose");
 const User = require("../models/user.model");
+const pagination = require("../services/pagination.service");
+const resourceVersion = require("../services/resourceVersion.service");
+const conversationService = require("../services/conversation.service");
 
 // lấy messages giữa tôi và người này
 module.exports.getMessages = async (req, res) => {
   try {
     const { id: friendId } = req.params;
     const userId = req.user.id;
+    const { after } = req.query;
 
-    // lấy tất cả messages giữa tôi và người này
-    const messages = await Message.find({
+    const filter = {
       senderId: { $in: [userId, friendId] },
       receiverId: { $in: [userId, friendId] }
-    }).sort({ createdAt: 1 }).select('-updatedAt');    
+    };
+
+    // chỉ lấy các tin từ mốc "after" trở về sau (client tải bù sau khi kết nối lại)
+    if (after) {
+      const afterDate = new Date(after);
+      if (isNaN(afterDate.getTime())) return res.status(400).json({ message: "Mốc thời gian không hợp lệ" });
+      filter.createdAt = { $gte: afterDate };
+    }
+
+    // phân trang theo con trỏ: ?limit=50&before=<nextCursor của trang trước>
+    const page = pagination.parsePageQuery(req.query);
+    if (page && page.error) return res.status(400).json({ message: page.error });
+    if (page) {
+      if (page.cursor) Object.assign(filter, pagination.beforeCursor(page.cursor));
+      const result = await pagination.findPage(Message.find(filter).select('-updatedAt'), page);
+      return res.status(200).json(result);
+    }
+
+    // lấy tất cả messages giữa tôi và người này
+    const messages = await Message.find(filter).sort({ createdAt: 1 }).select('-updatedAt');    
 
     return res.status(200).json({
       messages,
@@ -26,90 +48,24 @@ module.exports.getMessages = async (req, res) => {
 }
 
 
-// lấy danh sách người dùng đã từng nhắn tin với tôi
+// lấy danh sách người dùng đã từng nhắn tin với tôi, sắp xếp theo hoạt động gần nhất
+// đọc từ bảng tóm tắt cuộc trò chuyện (không quét lại toàn bộ tin nhắn)
+// phân trang theo con trỏ: ?limit=30&before=<nextCursor của trang trước>, không có tham số -> tất cả
 module.exports.getUsers = async (req, res) => {
   try {
     const userId = req.user.id;
-    const userObjectId = new mongoose.Types.ObjectId(userId);
-
-    const users = await Message.aggregate([
-      // 1. Lọc tin nhắn liên quan đến userId
-      {
-        $match: {
-          $or: [
-            { senderId: userObjectId },
-            { receiverId: userObjectId }
-          ]
-        }
-      },
-      
-      // 2. Sắp xếp theo thời gian (mới nhất trước)
-      { $sort: { createdAt: -1 } },
-      
-      // 3. Group theo otherUserId
-      {
-        $group: {
-          _id: {
-            $cond: [
-              { $eq: ['$senderId', userObjectId] },
-              '$receiverId',
-              '$senderId'
-            ]
-          },
-          lastMessage: { $first: '$$ROOT' },  // Tin nhắn cuối cùng
-          unreadCount: {
-            $sum: {
-              $cond: [
-                {
-                  $and: [
-                    { $eq: ['$receiverId', userObjectId] },  // Tin gửi cho mình
-                    { $not: { $in: [userObjectId, '$seenBy'] } }  // Mình chưa xem
-                  ]
-                },
-                1,
-                0
-              ]
-            }
-          }
-        }
-      },
-      
-      // 4. Lookup thông tin user
-      {
-        $lookup: {
-          from: 'users',
-          localField: '_id',
-          foreignField: '_id',
-          as: 'userInfo'
-        }
-      },
-      { $unwind: '$userInfo' },
-      
-      // 5. Project các field cần thiết
-      {
-        $project: {
-          _id: '$userInfo._id',
-          username: '$userInfo.username',
-          fullName: '$userInfo.fullName',
-          email: '$userInfo.email',
-          avatar: '$userInfo.avatar',
-          unreadCount: 1,
-          lastMessage: {
-            content: '$lastMessage.content',
-            createdAt: '$lastMessage.createdAt',
-            isMine: { $eq: ['$lastMessage.senderId', userObjectId] }
-          },
-          lastMessageTime: '$lastMessage.createdAt'
-        }
-      },
-      
-      // 6. Sắp xếp theo tin nhắn mới nhất
-      { $sort: { lastMessageTime: -1 } }
-    ]);
-
-    return res.status(200).json({ 
-      users,
-    })
+
+    const page = pagination.parsePageQuery(req.query);
+    if (page && page.error) return res.status(400).json({ message: page.error });
+
+    // danh sách không đổi kể từ lần tải trước -> 304, không cần đọc lại
+    const { keys } = resourceVersion;
+    if (resourceVersion.notModified(req, res, [keys.conversations(userId), keys.profiles()])) return;
+
+    await conversationService.ensureIndexed(userId);
+    const result = await conversationService.listConversations(userId, page);
+
+    return res.status(200).json(page ? result : { users: result.users });
   } catch (error) {
     console.log(error);
     return res.status(500).json({message: "Lỗi server khi lấy danh sách người dùng"});
@@ -154,6 +110,11 @@ module.exports.deleteMessage = async (req, res) => {
       return res.status(403).json({ message: "Bạn không có quyền xóa tin nhắn này"});
 
     const deleted = await Message.findByIdAndDelete(messageId);
+    if (deleted && deleted.receiverId) {
+      await conversationService.rebuildPair(deleted.senderId, deleted.receiverId);
+      const { keys } = resourceVersion;
+      resourceVersion.bump(keys.conversations(deleted.senderId), keys.conversations(deleted.receiverId));
+    }
 
     return res.status(200).json({ message: "Xóa tin nhắn thành công", deleted });
   } catch (error) {
@@ -177,6 +138,9 @@ module.exports.deleteAllMessage = async (req, res) => {
       senderId: { $in: [userId, friend._id]},
       receiverId: {$in: [userId, friend._id]}
     })
+    await conversationService.rebuildPair(userId, friend._id);
+    const { keys } = resourceVersion;
+    resourceVersion.bump(keys.conversations(userId), keys.conversations(friend._id));
 
     return res.status(200).json({ message: "Xóa thành công tin nhắn", deletedCount: result.deletedCount })
   } catch (error) {
@@ -1,6 +1,7 @@
 const User = require("../models/user.model");
 const Group = require("../models/group.model");
 const hashingService = require("../services/hasing.service");
+const resourceVersion = require("../services/resourceVersion.service");
 
 module.exports.editAccount = async (req, res) => {
   try {
@@ -47,6 +48,8 @@ module.exports.editAccount = async (req, res) => {
       fullName,
       email
     });
+    // tên/username hiện trong danh sách chat và nhóm của người khác
+    resourceVersion.bump(resourceVersion.keys.profiles());
 
     return res.status(200).json({
       message: "Cập nhật tài khoản thành công",
@@ -79,6 +82,7 @@ module.exports.uploadAvatar = async (req, res) => {
         new: true
       } // trả về user sau khi update
     );
+    resourceVersion.bump(resourceVersion.keys.profiles());
 
     return res.status(200).json({
       message: "Avatar updated",
@@ -0,0 +1,42 @@
+const mongoose = require("mongoose");
+
+// tóm tắt 1 cuộc trò chuyện cá nhân nhìn từ phía userId (mỗi cặp người dùng có 2 bản ghi, mỗi phía 1 bản)
+// được cập nhật dần khi gửi/xem/xóa tin nhắn để tải danh sách chat không phải quét lại toàn bộ tin nhắn
+const conversationSchema = new mongoose.Schema(
+  {
+    userId: {
+      type: mongoose.Schema.Types.ObjectId,
+      ref: "User",
+      required: true,
+    },
+    peerId: {
+      type: mongoose.Schema.Types.ObjectId,
+      ref: "User",
+      required: true,
+    },
+    lastMessage: {
+      messageId: { type: mongoose.Schema.Types.ObjectId, ref: "Message" },
+      content: { type: String },
+      senderId: { type: mongoose.Schema.Types.ObjectId, ref: "User" },
+      createdAt: { type: Date }
+    },
+    // số tin peerId gửi mà userId chưa xem
+    unreadCount: {
+      type: Number,
+      default: 0
+    },
+    lastActivityAt: {
+      type: Date
+    }
+  },
+  { timestamps: true }
+);
+
+// mỗi phía của 1 cặp chỉ có 1 bản ghi
+conversationSchema.index({ userId: 1, peerId: 1 }, { unique: true });
+// phân trang danh sách chat theo con trỏ (lastActivityAt, _id)
+conversationSchema.index({ userId: 1, lastActivityAt: -1, _id: -1 });
+
+const Conversation = mongoose.model("Conversation", conversationSchema);
+
+module.exports = Conversation;
@@ -27,11 +27,25 @@ const messageSchema = new mongoose.Schema(
     },
     seenBy: [
       { type: mongoose.Schema.Types.ObjectId, ref: 'User' }
-    ]
+    ],
+    // id do client tạo khi gửi, dùng để bỏ qua tin nhắn bị gửi lặp lại
+    clientId: {
+      type: String
+    }
   },
   { timestamps: true }
 );
 
+// phục vụ phân trang lịch sử theo con trỏ (createdAt, _id) của tin nhắn cá nhân và tin nhắn nhóm
+messageSchema.index({ senderId: 1, receiverId: 1, createdAt: -1, _id: -1 });
+messageSchema.index({ groupId: 1, createdAt: -1, _id: -1 });
+
+// mỗi người gửi chỉ có 1 tin nhắn cho mỗi clientId
+messageSchema.index(
+  { senderId: 1, clientId: 1 },
+  { unique: true, partialFilterExpression: { clientId: { $type: "string" } } }
+);
+
 const Message = mongoose.model("Message", messageSchema);
 
 module.exports =  Message;
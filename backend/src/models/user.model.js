@@ -24,6 +24,11 @@ const userSchema = new mongoose.Schema(
     avatar: {
       type: String,
       required: false,
+    },
+    // thời điểm đã dựng xong bảng tóm tắt cuộc trò chuyện từ tin nhắn cũ (null = chưa dựng)
+    conversationsIndexedAt: {
+      type: Date,
+      select: false
     }
   },
   { timestamps: true }
@@ -12,6 +12,7 @@ router.get('/:id', authMiddleware, controller.getInfoGroup); // xem thông tin n
 router.get('/:id/messages', authMiddleware, controller.getGroupMessages); //lấy tin nhắn trong nhóm đó
 router.post('/:id/addMembers', authMiddleware, controller.addMember); //thêm thành viên nhóm
 router.get('/:id/getMembers', authMiddleware, controller.getMembers); //lấy danh sách thành viên
+router.get('/:id/memberIds', authMiddleware, controller.getMemberIds); //lấy id thành viên và admin (kiểm tra quyền)
 router.delete('/:id/deleteMembers/:memberId', authMiddleware, controller.deleteMember);  //xóa thành viên nhóm
 router.patch('/:id/changeRole/:memberId', authMiddleware, controller.changeRole); // đổi role thành viên
 
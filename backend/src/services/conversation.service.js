@@ -0,0 +1,223 @@
+const mongoose = require("mongoose");
+const Conversation = require("../models/conversation.model");
+const Message = require("../models/message.model");
+const User = require("../models/user.model");
+const pagination = require("./pagination.service");
+
+// bảng tóm tắt cuộc trò chuyện cá nhân (tin cuối, số tin chưa đọc, thời điểm hoạt động) của từng người dùng
+// cập nhật dần khi gửi/xem/xóa tin nhắn, nên tải danh sách chat không phụ thuộc tổng số tin nhắn đã có
+
+const toObjectId = (id) => new mongoose.Types.ObjectId(id.toString());
+
+const lastMessageOf = (message) => ({
+  messageId: message._id,
+  content: message.content,
+  senderId: message.senderId,
+  createdAt: message.createdAt
+});
+
+// đặt tin cuối nếu tin này không cũ hơn tin cuối đang lưu (2 tin gửi gần như cùng lúc có thể được ghi lệch thứ tự)
+const newerLastMessage = (message, extra = {}) => [{
+  $set: {
+    lastMessage: {
+      $cond: [
+        { $gte: [message.createdAt, { $ifNull: ["$lastActivityAt", new Date(0)] }] },
+        { $literal: lastMessageOf(message) },
+        "$lastMessage"
+      ]
+    },
+    lastActivityAt: { $max: ["$lastActivityAt", message.createdAt] },
+    ...extra
+  }
+}];
+
+// tin nhắn cá nhân mới: cập nhật tin cuối của cả 2 phía, người nhận có thêm 1 tin chưa đọc
+module.exports.recordMessage = async (message) => {
+  if (!message.receiverId) return;
+  await Conversation.bulkWrite([
+    {
+      updateOne: {
+        filter: { userId: message.senderId, peerId: message.receiverId },
+        update: newerLastMessage(message, { unreadCount: { $ifNull: ["$unreadCount", 0] } }),
+        upsert: true
+      }
+    },
+    {
+      updateOne: {
+        filter: { userId: message.receiverId, peerId: message.senderId },
+        update: newerLastMessage(message, { unreadCount: { $add: [{ $ifNull: ["$unreadCount", 0] }, 1] } }),
+        upsert: true
+      }
+    }
+  ], { ordered: false });
+};
+
+// viewerId vừa xem count tin của peerId (count = null: đã xem tất cả)
+module.exports.markRead = async (viewerId, peerId, count) => {
+  const update = count == null
+    ? { $set: { unreadCount: 0 } }
+    : [{ $set: { unreadCount: { $max: [0, { $subtract: ["$unreadCount", count] }] } } }];
+  await Conversation.updateOne({ userId: viewerId, peerId }, update);
+};
+
+const REBUILD_ATTEMPTS = 3;
+const isDuplicateKey = (error) => error && error.code === 11000;
+
+// tính lại tóm tắt 1 phía từ tin nhắn (sau khi xóa tin), chỉ đọc tin nhắn của cặp này qua chỉ mục
+// tin cuối có thể phải lùi về tin cũ hơn nên không dùng $max được: chỉ ghi khi lastActivityAt vẫn như lúc bắt đầu tính,
+// nếu recordMessage vừa ghi tin mới hơn thì tính lại
+const rebuild = async (userId, peerId) => {
+  for (let attempt = 0; attempt < REBUILD_ATTEMPTS; attempt++) {
+    const current = await Conversation.findOne({ userId, peerId }).select("lastActivityAt").lean();
+    const guard = { userId, peerId, lastActivityAt: current ? current.lastActivityAt : null };
+
+    const last = await Message.findOne({
+      $or: [
+        { senderId: userId, receiverId: peerId },
+        { senderId: peerId, receiverId: userId }
+      ]
+    }).sort({ createdAt: -1, _id: -1 });
+
+    if (!last) {
+      if (!current) return;
+      const { deletedCount } = await Conversation.deleteOne(guard);
+      if (deletedCount > 0) return;
+      continue;
+    }
+
+    const unreadCount = await Message.countDocuments({ senderId: peerId, receiverId: userId, seenBy: { $ne: userId } });
+    try {
+      const result = await Conversation.updateOne(
+        guard,
+        { $set: { lastMessage: lastMessageOf(last), lastActivityAt: last.createdAt, unreadCount } },
+        { upsert: !current }
+      );
+      if (result.matchedCount > 0 || result.upsertedCount > 0) return;
+    } catch (error) {
+      // recordMessage vừa tạo tóm tắt của cặp này -> tính lại
+      if (!isDuplicateKey(error)) throw error;
+    }
+  }
+  console.log(`Không tính lại được tóm tắt cuộc trò chuyện ${userId}-${peerId} do bị ghi đồng thời`);
+};
+
+module.exports.rebuildPair = async (userA, userB) => {
+  await Promise.all([rebuild(userA, userB), rebuild(userB, userA)]);
+};
+
+// dựng bảng tóm tắt từ tin nhắn cũ (chỉ 1 lần cho mỗi người dùng, với dữ liệu có từ trước khi có bảng này)
+const indexed = new Set();
+const indexing = new Map();
+
+const backfill = async (userId) => {
+  const userObjectId = toObjectId(userId);
+  const rows = await Message.aggregate([
+    {
+      $match: {
+        receiverId: { $ne: null },
+        $or: [
+          { senderId: userObjectId },
+          { receiverId: userObjectId }
+        ]
+      }
+    },
+    { $sort: { createdAt: -1 } },
+    {
+      $group: {
+        _id: {
+          $cond: [
+            { $eq: ['$senderId', userObjectId] },
+            '$receiverId',
+            '$senderId'
+          ]
+        },
+        lastMessage: { $first: '$$ROOT' },
+        unreadCount: {
+          $sum: {
+            $cond: [
+              {
+                $and: [
+                  { $eq: ['$receiverId', userObjectId] },
+                  { $not: { $in: [userObjectId, { $ifNull: ['$seenBy', []] }] } }
+                ]
+              },
+              1,
+              0
+            ]
+          }
+        }
+      }
+    }
+  ]);
+
+  // recordMessage có thể đã ghi tin mới hơn trong lúc aggregate: chỉ đặt tin cuối khi không cũ hơn tin đang lưu
+  // (như recordMessage), số tin chưa đọc lấy giá trị lớn hơn để không mất phần recordMessage vừa cộng
+  if (rows.length > 0) {
+    await Conversation.bulkWrite(rows.map(row => ({
+      updateOne: {
+        filter: { userId: userObjectId, peerId: row._id },
+        update: newerLastMessage(row.lastMessage, {
+          unreadCount: { $max: [{ $ifNull: ["$unreadCount", 0] }, row.unreadCount] }
+        }),
+        upsert: true
+      }
+    })), { ordered: false });
+  }
+  await User.updateOne({ _id: userObjectId }, { $set: { conversationsIndexedAt: new Date() } });
+};
+
+module.exports.ensureIndexed = async (userId) => {
+  const key = userId.toString();
+  if (indexed.has(key)) return;
+
+  const done = await User.exists({ _id: userId, conversationsIndexedAt: { $ne: null } });
+  if (!done) {
+    // nhiều request cùng lúc chỉ dựng 1 lần
+    if (!indexing.has(key)) {
+      indexing.set(key, backfill(userId).finally(() => indexing.delete(key)));
+    }
+    await indexing.get(key);
+  }
+  indexed.add(key);
+};
+
+// danh sách chat của userId sắp xếp theo hoạt động gần nhất
+// page = null: trả về tất cả, ngược lại là 1 trang (xem pagination.parsePageQuery)
+module.exports.listConversations = async (userId, page) => {
+  const userObjectId = toObjectId(userId);
+  const filter = { userId: userObjectId };
+  if (page && page.cursor) Object.assign(filter, pagination.beforeCursor(page.cursor, "lastActivityAt"));
+
+  let query = Conversation.find(filter)
+    .sort({ lastActivityAt: -1, _id: -1 })
+    .populate("peerId", "username fullName email avatar")
+    .lean();
+  if (page) query = query.limit(page.limit + 1);
+
+  const docs = await query;
+  const hasMore = page ? docs.length > page.limit : false;
+  const rows = hasMore ? docs.slice(0, page.limit) : docs;
+
+  const users = rows
+    .filter(row => row.peerId) // người dùng đã bị xóa
+    .map(row => ({
+      _id: row.peerId._id,
+      username: row.peerId.username,
+      fullName: row.peerId.fullName,
+      email: row.peerId.email,
+      avatar: row.peerId.avatar,
+      unreadCount: row.unreadCount,
+      lastMessage: {
+        content: row.lastMessage?.content,
+        createdAt: row.lastMessage?.createdAt,
+        isMine: row.lastMessage?.senderId?.toString() === userObjectId.toString()
+      },
+      lastMessageTime: row.lastActivityAt
+    }));
+
+  return {
+    users,
+    hasMore,
+    nextCursor: hasMore ? pagination.encodeCursor(rows[rows.length - 1], "lastActivityAt") : null
+  };
+};
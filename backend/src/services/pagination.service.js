@@ -0,0 +1,64 @@
+const mongoose = require("mongoose");
+
+const DEFAULT_LIMIT = 50;
+const MAX_LIMIT = 200;
+
+// con trỏ phân trang dạng "<createdAt ISO>_<_id>" của tin nhắn cũ nhất trong trang hiện tại
+// (field: trường thời gian dùng để sắp xếp nếu không phải createdAt)
+module.exports.encodeCursor = (message, field = "createdAt") => {
+  return `${new Date(message[field]).toISOString()}_${message._id}`;
+}
+
+// đọc tham số phân trang "before" và "limit", trả về null nếu không dùng phân trang
+// trả về { error } nếu tham số không hợp lệ
+module.exports.parsePageQuery = (query) => {
+  const { before, limit } = query;
+  if (before === undefined && limit === undefined) return null;
+
+  let pageSize = DEFAULT_LIMIT;
+  if (limit !== undefined) {
+    pageSize = parseInt(limit, 10);
+    if (isNaN(pageSize) || pageSize <= 0) return { error: "Tham số limit không hợp lệ" };
+    pageSize = Math.min(pageSize, MAX_LIMIT);
+  }
+
+  if (!before) return { limit: pageSize, cursor: null };
+
+  // chấp nhận cả con trỏ đầy đủ lẫn chỉ mốc thời gian
+  const [time, id] = String(before).split("_");
+  const createdAt = new Date(time);
+  if (isNaN(createdAt.getTime())) return { error: "Con trỏ phân trang không hợp lệ" };
+  if (id && !mongoose.Types.ObjectId.isValid(id)) return { error: "Con trỏ phân trang không hợp lệ" };
+
+  return {
+    limit: pageSize,
+    cursor: { createdAt, id: id ? new mongoose.Types.ObjectId(id) : null }
+  };
+}
+
+// điều kiện lấy các tin cũ hơn con trỏ (cùng createdAt thì so sánh tiếp theo _id)
+module.exports.beforeCursor = (cursor, field = "createdAt") => {
+  if (!cursor.id) return { [field]: { $lt: cursor.createdAt } };
+  return {
+    $or: [
+      { [field]: { $lt: cursor.createdAt } },
+      { [field]: cursor.createdAt, _id: { $lt: cursor.id } }
+    ]
+  };
+}
+
+// chạy truy vấn 1 trang: lấy các tin mới nhất trước con trỏ, trả về theo thứ tự cũ -> mới
+module.exports.findPage = async (query, page) => {
+  const docs = await query
+    .sort({ createdAt: -1, _id: -1 })
+    .limit(page.limit + 1);
+
+  const hasMore = docs.length > page.limit;
+  const messages = docs.slice(0, page.limit).reverse();
+
+  return {
+    messages,
+    hasMore,
+    nextCursor: hasMore && messages.length > 0 ? module.exports.encodeCursor(messages[0]) : null
+  };
+}
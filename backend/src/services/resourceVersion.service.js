@@ -0,0 +1,48 @@
+const crypto = require("crypto");
+
+// phiên bản của các tài nguyên hay được tải lại (danh sách chat, danh sách nhóm, thông tin/thành viên nhóm)
+// mỗi lần dữ liệu thay đổi thì tăng phiên bản, ETag được tính từ các phiên bản này
+// nên kiểm tra "client đã có bản mới nhất chưa" không cần chạy lại truy vấn/aggregate
+// giữ trong bộ nhớ của tiến trình: khởi động lại server thì mọi ETag cũ đều không còn khớp
+const BOOT_ID = Date.now().toString(36);
+const versions = new Map();
+
+// khóa tài nguyên
+module.exports.keys = {
+  conversations: (userId) => `conversations:${userId}`, // danh sách người đã nhắn tin (tin cuối, số tin chưa đọc)
+  groupsOf: (userId) => `groups:${userId}`,             // trạng thái đã đọc các nhóm của người dùng
+  group: (groupId) => `group:${groupId}`,               // thông tin, thành viên, tin nhắn của nhóm
+  profiles: () => "profiles"                            // tên/avatar người dùng (hiện trong mọi danh sách)
+};
+
+// dữ liệu của các tài nguyên này vừa thay đổi
+module.exports.bump = (...keys) => {
+  for (const key of keys) {
+    versions.set(key, (versions.get(key) || 0) + 1);
+  }
+};
+
+// ETag yếu của 1 phản hồi phụ thuộc vào các tài nguyên keys
+module.exports.etagOf = (keys) => {
+  const hash = crypto.createHash("sha1").update(BOOT_ID);
+  for (const key of keys) {
+    hash.update(`|${key}=${versions.get(key) || 0}`);
+  }
+  return `W/"${hash.digest("base64url")}"`;
+};
+
+// gắn ETag vào phản hồi, trả về true (và đã trả 304) nếu client đang giữ đúng bản này
+// gọi trước khi truy vấn dữ liệu, sau khi đã kiểm tra quyền truy cập
+module.exports.notModified = (req, res, keys) => {
+  const etag = module.exports.etagOf(keys);
+  // client phải hỏi lại mỗi lần nhưng được giữ bản cũ để dùng khi nhận 304
+  res.set("Cache-Control", "private, no-cache");
+  res.set("ETag", etag);
+
+  const ifNoneMatch = req.get("If-None-Match");
+  if (ifNoneMatch && ifNoneMatch.split(/\s*,\s*/).includes(etag)) {
+    res.status(304).end();
+    return true;
+  }
+  return false;
+};
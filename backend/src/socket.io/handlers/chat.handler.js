@@ -1,5 +1,22 @@
 const { now } = require("mongoose");
 const Message = require("../../models/message.model");
+const resourceVersion = require("../../services/resourceVersion.service");
+const conversationService = require("../../services/conversation.service");
+
+// tìm tin nhắn đã lưu theo clientId của người gửi
+const findByClientId = (senderId, clientId) => {
+  if (!clientId) return null;
+  return Message.findOne({ senderId, clientId });
+};
+
+// nội dung ack trả về cho người gửi
+const ackOf = (message, duplicate) => ({
+  success: true,
+  duplicate,
+  _id: message._id.toString(),
+  clientId: message.clientId,
+  createdAt: message.createdAt
+});
 
 module.exports =  (io, socket) => {
   socket.on("send-message", async (data, updateStatus) => {
@@ -9,16 +26,47 @@ module.exports =  (io, socket) => {
         return updateStatus({success: false, message: "Thiếu content hoặc receiverId"});
       }
 
-      const savedMessage = await Message.create({
-        senderId: socket.user._id,
-        receiverId: data.receiverId,
-        content: data.content.trim(),
-        replyTo: data.replyTo || null,
-        attachments: data.fileUrl || null
-      });
+      const clientId = typeof data.clientId === "string" ? data.clientId : undefined;
+
+      // client gửi lại tin đã lưu (do mất ack) -> trả lại kết quả cũ, không phát lại
+      const existing = await findByClientId(socket.user._id, clientId);
+      if (existing) {
+        return updateStatus(ackOf(existing, true));
+      }
+
+      let savedMessage;
+      try {
+        savedMessage = await Message.create({
+          senderId: socket.user._id,
+          receiverId: data.receiverId,
+          content: data.content.trim(),
+          replyTo: data.replyTo || null,
+          attachments: data.fileUrl || null,
+          clientId
+        });
+      } catch (error) {
+        // 2 lần gửi cùng clientId đến gần như đồng thời
+        const duplicate = error.code === 11000 && await findByClientId(socket.user._id, clientId);
+        if (duplicate) {
+          return updateStatus(ackOf(duplicate, true));
+        }
+        throw error;
+      }
+
+      // cập nhật tóm tắt cuộc trò chuyện của 2 phía (lỗi ở đây không làm hỏng việc gửi tin đã lưu)
+      try {
+        await conversationService.recordMessage(savedMessage);
+      } catch (error) {
+        console.error("Error updating conversation summary:", error);
+      }
+      resourceVersion.bump(
+        resourceVersion.keys.conversations(socket.user._id),
+        resourceVersion.keys.conversations(data.receiverId)
+      );
 
       // console.log(savedMessage.createdAt)
-      updateStatus({success: true});
+      // trả về id và thời điểm lưu để client cập nhật mốc đồng bộ của cuộc trò chuyện
+      updateStatus(ackOf(savedMessage, false));
       io.to(data.receiverId.toString()).emit("receive-message", {
         _id: savedMessage._id.toString(),
         senderId: socket.user._id.toString(), // Thêm senderId để người nhận biết ai gửi
@@ -26,7 +74,8 @@ module.exports =  (io, socket) => {
         createdAt: savedMessage.createdAt,
         sentAt: savedMessage.createdAt,
         replyTo: data.replyTo || null,
-        attachments: data.fileUrl || null
+        attachments: data.fileUrl || null,
+        clientId
       });
 
     } catch (error) {
@@ -39,23 +88,34 @@ module.exports =  (io, socket) => {
   // Xử lý khi người dùng xem tin nhắn
   socket.on("seen-message", async (data) => {
     try {
-      const { senderId } = data;
+      const { senderId, messageId } = data;
       const viewerId = socket.user._id;
       
       if (!senderId || !viewerId) return;
 
       // Update DB: Mark seen cho tất cả messages từ senderId đến viewerId
-      const result = await Message.updateMany(
-        { senderId, receiverId: viewerId, seenBy: { $nin: [viewerId] } },
-        { $push: { seenBy: viewerId } }
-      );
+      // (nếu có messageId thì chỉ tới tin đó: người xem mới đọc tới đây, các tin mới hơn chưa được xem)
+      const filter = { senderId, receiverId: viewerId, seenBy: { $nin: [viewerId] } };
+      let upToCreatedAt;
+      if (messageId) {
+        const upTo = await Message.findOne({ _id: messageId, senderId, receiverId: viewerId }).select("createdAt");
+        if (upTo) {
+          filter.createdAt = { $lte: upTo.createdAt };
+          upToCreatedAt = upTo.createdAt;
+        }
+      }
+      const result = await Message.updateMany(filter, { $push: { seenBy: viewerId } });
 
       // Chỉ emit nếu có messages được update
       if (result.modifiedCount > 0) {
+        // đã xem tất cả -> đặt lại 0, chỉ tới mốc -> trừ đi số tin vừa được đánh dấu
+        await conversationService.markRead(viewerId, senderId, upToCreatedAt ? result.modifiedCount : null);
+        resourceVersion.bump(resourceVersion.keys.conversations(viewerId));
         // Gửi thông báo về cho người gửi tin rằng tin nhắn đã được xem
         io.to(senderId.toString()).emit("seen-message", {
           viewerId: viewerId.toString(), // người xem tin nhắn
-          seenAt: new Date()
+          seenAt: new Date(),
+          upToCreatedAt // không có = đã xem tất cả
         });
       }
     } catch (error) {
@@ -1,30 +1,60 @@
 const Message = require('../../models/message.model');
 const Group = require('../../models/group.model');
+const resourceVersion = require("../../services/resourceVersion.service");
+
+// nội dung ack trả về cho người gửi
+const ackOf = (message, duplicate) => ({
+  success: true,
+  duplicate,
+  _id: message._id.toString(),
+  clientId: message.clientId,
+  createdAt: message.createdAt
+});
 
 module.exports = (io, socket) => {
   socket.on("send-group-message", async (data, updateStatus) => {
     try {
       const { groupId, content, replyTo, fileUrl } = data;
       const senderId = socket.user._id;
+      const clientId = typeof data.clientId === "string" ? data.clientId : undefined;
 
       // Validate
       if (!groupId || !content.trim()) {
         return updateStatus({ success: false, message: "Dữ liệu không hợp lệ" });
       }
 
+      // client gửi lại tin đã lưu (do mất ack) -> trả lại kết quả cũ, không phát lại
+      const existing = clientId && await Message.findOne({ senderId, clientId });
+      if (existing) {
+        return updateStatus(ackOf(existing, true));
+      }
+
       // Lưu DB
-      const message = await Message.create({
-        senderId,
-        groupId,
-        content: content.trim(),
-        replyTo,
-        attachments: fileUrl || null
-      });
+      let message;
+      try {
+        message = await Message.create({
+          senderId,
+          groupId,
+          content: content.trim(),
+          replyTo,
+          attachments: fileUrl || null,
+          clientId
+        });
+      } catch (error) {
+        // 2 lần gửi cùng clientId đến gần như đồng thời
+        const duplicate = error.code === 11000 && clientId && await Message.findOne({ senderId, clientId });
+        if (duplicate) {
+          return updateStatus(ackOf(duplicate, true));
+        }
+        throw error;
+      }
+
+      resourceVersion.bump(resourceVersion.keys.group(groupId));
 
       // Populate sender info
       await message.populate("senderId", "username fullName avatar");
 
-      updateStatus({ success: true });
+      updateStatus(ackOf(message, false));
 
       // Gửi tới tất cả người trong group
       io.to(`group-${groupId}`).emit("receive-group-message", {
@@ -34,7 +64,8 @@ module.exports = (io, socket) => {
         content: message.content,
         replyTo,
         attachments: message.attachments,
-        createdAt: message.createdAt
+        createdAt: message.createdAt,
+        clientId
       });
 
     } catch (error) {
@@ -56,6 +87,7 @@ module.exports = (io, socket) => {
       );
 
       if (message) {
+        resourceVersion.bump(resourceVersion.keys.groupsOf(userId));
         io.to(`group-${groupId}`).emit("user-seen-message", {
           messageId,
           userId: userId.toString(),
@@ -67,6 +99,44 @@ module.exports = (io, socket) => {
     }
   });
 
+  // Đã đọc tới tin nhắn messageId trong group: đánh dấu mọi tin cũ hơn (của người khác) là đã xem
+  // bằng 1 lần cập nhật và chỉ phát 1 sự kiện cho cả nhóm, thay vì 1 sự kiện cho mỗi tin
+  socket.on("read-group-upto", async (data) => {
+    try {
+      const { groupId, messageId } = data || {};
+      const userId = socket.user._id;
+      if (!groupId || !messageId) return;
+
+      const isMember = await Group.exists({ _id: groupId, "members.userId": userId });
+      if (!isMember) return;
+
+      const upTo = await Message.findOne({ _id: messageId, groupId }).select("createdAt");
+      if (!upTo) return;
+
+      const result = await Message.updateMany(
+        {
+          groupId,
+          createdAt: { $lte: upTo.createdAt },
+          senderId: { $ne: userId },
+          seenBy: { $ne: userId }
+        },
+        { $addToSet: { seenBy: userId } }
+      );
+
+      if (result.modifiedCount > 0) {
+        resourceVersion.bump(resourceVersion.keys.groupsOf(userId));
+        io.to(`group-${groupId}`).emit("group-read-upto", {
+          groupId,
+          userId: userId.toString(),
+          messageId,
+          upToCreatedAt: upTo.createdAt
+        });
+      }
+    } catch (error) {
+      console.error("Error marking read watermark:", error);
+    }
+  });
+
   // User bắt đầu gõ trong group
   socket.on("group-typing-start", (data) => {
     const { groupId } = data;
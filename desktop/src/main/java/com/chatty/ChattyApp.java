@@ -1,17 +1,28 @@
 package com.chatty;
 
 import com.chatty.models.User;
+import com.chatty.services.AppExecutors;
+import com.chatty.services.BootTimer;
+import com.chatty.services.HttpRuntime;
 import com.chatty.services.ThemeService;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.layout.VBox;
+import javafx.geometry.Pos;
 import javafx.stage.Stage;
+import java.util.concurrent.CompletableFuture;
+import com.chatty.controllers.HomeController;
 import com.chatty.controllers.LoginController;
 import com.chatty.services.AuthService;
 
 public class ChattyApp extends Application {
     @Override
     public void start(Stage primaryStage) {
+        BootTimer boot = BootTimer.start("khởi động");
         AuthService authService = new AuthService();
-        User user = authService.checkAuth();    // lấy người dùng đã từng đăng nhập trước đó
 
         primaryStage.sceneProperty().addListener((observable, oldScene, newScene) -> {
             if (newScene != null) {
@@ -19,18 +30,68 @@ public class ChattyApp extends Application {
             }
         });
 
-        // kiểm tra xem người dùng đã được xác định (có token) chưa
-        if (user != null) {
-            // chuyển hướng vào trang chủ
-            new com.chatty.controllers.HomeController().show(primaryStage, user);
-        } else {
-            // chuyển hướng ra đăng nhập
+        // chưa từng đăng nhập -> vào thẳng trang đăng nhập
+        if (authService.getToken() == null || authService.getToken().isEmpty()) {
             new LoginController().show(primaryStage);
+            boot.mark("login");
+            boot.finish();
+            return;
         }
+
+        // xác thực phiên đăng nhập cũ trên luồng nền, song song với việc dựng trang chủ
+        CompletableFuture<User> auth = AppExecutors.supply(authService::checkAuth);
+        User lastUser = authService.getLastUser();
+        if (lastUser != null) {
+            // vẽ ngay trang chủ của người dùng đã lưu (tải người dùng/nhóm/online cùng lúc với /auth/me),
+            // đối chiếu hoặc chuyển ra đăng nhập khi xác thực xong
+            HomeController home = new HomeController();
+            home.show(primaryStage, lastUser);
+            auth.whenCompleteAsync((user, error) -> {
+                boot.mark("auth");
+                home.onAuthChecked(error == null ? user : null);
+            }, Platform::runLater);
+            return;
+        }
+
+        // chưa lưu người dùng nào -> hiện màn hình chờ tới khi xác thực xong
+        showSplash(primaryStage);
+        boot.mark("window");
+        auth.whenCompleteAsync((user, error) -> {
+            boot.mark("auth");
+            if (error == null && user != null) {
+                // chuyển hướng vào trang chủ (tiếp tục đo cho tới khi trang chủ tải xong)
+                new HomeController().show(primaryStage, user);
+            } else {
+                // chuyển hướng ra đăng nhập
+                new LoginController().show(primaryStage);
+                boot.finish();
+            }
+        }, Platform::runLater);
+    }
+
+    // màn hình chờ trong lúc xác thực phiên đăng nhập
+    private void showSplash(Stage primaryStage) {
+        ProgressIndicator progress = new ProgressIndicator();
+        Label label = new Label("Đang khởi động...");
+        label.getStyleClass().add("login-subtitle");
+        VBox splash = new VBox(15, progress, label);
+        splash.setAlignment(Pos.CENTER);
+        splash.getStyleClass().add("login-container");
+
+        primaryStage.setTitle("Kma Chatty");
+        primaryStage.setScene(new Scene(splash, 1200, 700));
+        primaryStage.centerOnScreen();
+        primaryStage.show();
+    }
+
+    // đóng các kết nối HTTP và luồng chạy nền dùng chung khi thoát ứng dụng
+    @Override
+    public void stop() {
+        HttpRuntime.shutdown();
+        AppExecutors.shutdown();
     }
 
     public static void main(String[] args) {
         launch(args);
     }
 }
-
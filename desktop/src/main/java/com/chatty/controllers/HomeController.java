@@ -2,19 +2,31 @@ package com.chatty.controllers;
 
 import com.chatty.models.*;
 import com.chatty.services.*;
+import com.google.gson.JsonObject;
+import javafx.animation.Animation;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import javafx.scene.shape.Circle;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
 import org.kordamp.ikonli.javafx.FontIcon;
 import java.io.File;
 import java.io.IOException;
@@ -23,6 +35,10 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 // trang chủ
@@ -32,28 +48,42 @@ public class HomeController {
     private final GroupService groupService;
     private final SocketService socketService;
     private final UserService userService;
-    private final User currentUser;
+    private User currentUser;
 
     // nhắn tin cá nhân
     private User selectedUser;
-    private List<User> allUsers;
+    // toàn bộ người dùng ở thanh bên, tra cứu theo id và sắp xếp theo tin nhắn gần nhất
+    private final ConversationRegistry<User> userRegistry = new ConversationRegistry<>(User::get_id);
     private List<User> currentDisplayedUsers;
     private List<User> latestSearchResults;
+    // gợi ý người dùng ngay khi gõ từ dữ liệu trên máy, chỉ hỏi server khi có ít hơn LOCAL_USER_RESULTS_ENOUGH kết quả
+    private static final int USER_SEARCH_LIMIT = 50;
+    private static final int LOCAL_USER_RESULTS_ENOUGH = 5;
+    private final ContactIndex contactIndex = new ContactIndex();
     private List<Message> messages;
 
     // nhắn tin nhóm
     private Group selectedGroup;
-    private List<Group> allGroups;
+    private final ConversationRegistry<Group> groupRegistry = new ConversationRegistry<>(Group::get_id);
     private List<GroupMessage> groupMessages;
+    // tra cứu tin nhắn nhóm đang hiển thị theo id (xử lý sự kiện đã xem)
+    private final MessageIndex<GroupMessage> groupMessageIndex = new MessageIndex<>(GroupMessage::get_id);
 
     private Set<String> onlineUserIds = new HashSet<>();
-    private Timer typingTimer;
-    private Timer groupTypingTimer;
-    private Timer searchDebounceTimer;
+    // thông báo đang soạn tin: "typing-start" nhiều nhất 1 lần mỗi TYPING_START_INTERVAL_MS khi gõ liên tục,
+    // "typing-stop" 1 lần sau khi ngừng gõ TYPING_STOP_DELAY_MS (gửi tin/đổi cuộc trò chuyện thì gửi ngay)
+    private static final int TYPING_START_INTERVAL_MS = 3000;
+    private static final int TYPING_STOP_DELAY_MS = 2000;
+    private final RateLimiter typingStart = new RateLimiter(TYPING_START_INTERVAL_MS, true, true, false, Runnable::run);
+    private final RateLimiter typingStop = RateLimiter.debounce(TYPING_STOP_DELAY_MS, Runnable::run);
+    private String typingTarget; // khóa cuộc trò chuyện đang báo soạn tin
+    // tìm kiếm trên server sau khi ngừng gõ
+    private final RateLimiter searchDebounce = RateLimiter.debounce(500, Platform::runLater);
 
     // các thành phần giao diện
-    private VBox messageContainer;
-    private ScrollPane messageScrollPane;
+    // khung hiển thị tin nhắn dạng danh sách ảo: chỉ tạo node cho các dòng đang hiện trên màn hình
+    private ListView<Object> messageListView;
+    private final ObservableList<Object> timelineItems = FXCollections.observableArrayList();
     private TextField messageInput;
     private ListView<User> userListView;
     private ListView<Group> groupListView;
@@ -68,6 +98,54 @@ public class HomeController {
     private Label userStatus;
     private Label typingIndicator;
 
+    // các lần tải đang chạy, bị hủy khi có lần tải mới thay thế
+    private CompletableFuture<?> conversationLoad;
+    private CompletableFuture<?> groupsLoad;
+    private CompletableFuture<?> searchLoad;
+
+    // phân trang danh sách chat (null = đã tải hết), các trang sau được tải khi cuộn gần cuối danh sách
+    private static final int USERS_PREFETCH_ROWS = 10;
+    // còn cách cuối danh sách thành viên nhóm bao nhiêu dòng thì tải trước trang tiếp theo
+    private static final int MEMBERS_PREFETCH_ROWS = 10;
+    private String usersCursor;
+    private CompletableFuture<?> usersLoad;
+    // người dùng đang hiện (từ trạng thái đã lưu) nhưng chưa có trong các trang đã tải,
+    // còn lại khi đã tải hết trang nghĩa là không còn trong danh sách chat -> bỏ khỏi thanh bên
+    private final Set<String> unconfirmedUserIds = new HashSet<>();
+
+    // phân trang lịch sử của cuộc trò chuyện đang mở (null = đã tải hết)
+    private static final int HISTORY_PREFETCH_ROWS = 15;
+    private String historyCursor;
+    private CompletableFuture<?> historyLoad;
+
+    // tin nhắn lưu trên máy của tài khoản đang đăng nhập
+    private MessageCache messageCache;
+    // khóa của cuộc trò chuyện đang mở đã đồng bộ xong với server (null nếu chưa),
+    // chỉ khi đó tin mới mới được ghi tiếp vào cache để cache không bị hổng đoạn giữa
+    private String cacheSyncedKey;
+
+    // tìm kiếm tin nhắn ngay trên máy (không hỏi server)
+    private static final int MESSAGE_SEARCH_LIMIT = 20;
+    private MessageSearchIndex searchIndex;
+    private VBox messageSearchPane;
+    private ListView<MessageSearchIndex.Hit> messageSearchView;
+    // kết quả tìm kiếm đang chờ cuộc trò chuyện tải xong để cuộn tới tin nhắn
+    private MessageSearchIndex.Hit pendingJump;
+
+    // đo thời gian khởi động trang chủ
+    private BootTimer boot;
+
+    // trạng thái thanh bên lưu trên máy: lưu lại nhiều nhất 1 lần mỗi SNAPSHOT_SAVE_INTERVAL_MS khi có thay đổi
+    // và khi đóng cửa sổ/đăng xuất
+    private static final int SNAPSHOT_SAVE_INTERVAL_MS = 30_000;
+    private SidebarSnapshot sidebarSnapshot;
+    private final RateLimiter snapshotSave = new RateLimiter(SNAPSHOT_SAVE_INTERVAL_MS, true, false, true, Platform::runLater);
+    private final EventHandler<WindowEvent> saveSnapshotOnClose = e -> {
+        if (sidebarSnapshot != null) {
+            sidebarSnapshot.saveNow(userRegistry.ordered(), groupRegistry.ordered());
+        }
+    };
+
     // biến theo dõi tab đang hiện trên giao diện
     private String currentTab = "users"; // "users" hoặc "groups"
 
@@ -79,15 +157,51 @@ public class HomeController {
         this.userService = new UserService();
         this.messages = new ArrayList<>();
         this.groupMessages = new ArrayList<>();
-        this.allUsers = new ArrayList<>();
-        this.allGroups = new ArrayList<>();
         this.currentDisplayedUsers = new ArrayList<>();
         this.latestSearchResults = new ArrayList<>();
-        this.currentUser = authService.getCurrentUser();
+
+        // thay đổi trong danh sách người dùng/nhóm -> vẽ lại thanh bên 1 lần ở nhịp giao diện kế tiếp
+        userRegistry.addListener((users, reordered) -> {
+            scheduleUserListRefresh(reordered);
+            snapshotSave.submit(this::saveSidebarSnapshot);
+        });
+        groupRegistry.addListener((groups, reordered) -> {
+            scheduleGroupListRefresh(reordered);
+            snapshotSave.submit(this::saveSidebarSnapshot);
+        });
     }
 
     public void show(Stage primaryStage, User user) {
         this.primaryStage = primaryStage;
+        // người dùng đã được xác thực qua /auth/me khi đăng nhập, hoặc là người dùng đã lưu khi khởi động
+        // (ChattyApp xác thực song song và gọi onAuthChecked khi xong)
+        this.currentUser = user;
+
+        // bắt đầu song song các phần cần tải (người dùng, nhóm, kết nối socket để nhận danh sách online)
+        // trước khi dựng giao diện, mỗi phần tự vẽ lên giao diện khi xong
+        boot = BootTimer.continueOrStart("trang chủ");
+        boolean restored = false;
+        if (currentUser != null) {
+            // vẽ thanh bên từ trạng thái đã lưu lần trước, dữ liệu server về sau sẽ được đối chiếu và cập nhật vào
+            sidebarSnapshot = new SidebarSnapshot(currentUser.get_id());
+            restored = restoreSidebarSnapshot();
+            primaryStage.addEventHandler(WindowEvent.WINDOW_CLOSE_REQUEST, saveSnapshotOnClose);
+        }
+        if (restored) {
+            boot.mark("snapshot");
+            boot.awaitInteractive("window", "snapshot");
+        } else {
+            boot.awaitInteractive("window", "users", "groups");
+        }
+        if (currentUser != null) {
+            messageCache = new MessageCache(currentUser.get_id());
+            searchIndex = new MessageSearchIndex(currentUser.get_id());
+            setupSocketListeners();
+            socketService.connect(currentUser.get_id());
+        }
+        loadUsers();
+        loadGroups();
+
         primaryStage.setTitle("Kma Chatty");
         primaryStage.setMinWidth(800);
         primaryStage.setMinHeight(600);
@@ -112,15 +226,6 @@ public class HomeController {
 
         mainContainer.setCenter(centerContent);
 
-        // tải người dùng và nhóm có liên quan
-        loadUsers();
-        loadGroups();
-
-        if (currentUser != null) {
-            setupSocketListeners();
-            socketService.connect(currentUser.get_id());
-        }
-
         scene = new Scene(mainContainer, 1200, 700);
         String themeStylesheet = ThemeService.getThemeStylesheet();
         scene.getStylesheets().add(getClass().getResource(themeStylesheet).toExternalForm());
@@ -128,216 +233,447 @@ public class HomeController {
         primaryStage.sizeToScene();
         primaryStage.centerOnScreen();
         primaryStage.show();
+        boot.mark("window");
 
         Platform.runLater(mainContainer::requestFocus);
     }
 
-    private void setupSocketListeners() {
-        // danh sách online
-        socketService.setOnOnlineListReceived(onlineIds -> {
-            Platform.runLater(() -> {
-                onlineUserIds.clear();
-                onlineUserIds.addAll(onlineIds);
-
-                if (allUsers != null) {
-                    for (User u : allUsers) {
-                        u.setOnline(onlineUserIds.contains(u.get_id()));
-                    }
+    // kết quả xác thực phiên đăng nhập cũ khi trang chủ đã được vẽ trước từ người dùng đã lưu (null = không hợp lệ)
+    public void onAuthChecked(User user) {
+        if (user == null) {
+            // phiên đăng nhập hết hạn -> chuyển ra đăng nhập
+            closeSession();
+            new LoginController().show(primaryStage);
+            boot.finish();
+            return;
+        }
+        if (!user.get_id().equals(currentUser.get_id())) {
+            // token thuộc về tài khoản khác với người dùng đã lưu -> dựng lại trang chủ cho đúng tài khoản
+            closeSession();
+            new HomeController().show(primaryStage, user);
+            return;
+        }
+        // cập nhật vào đối tượng đang dùng (các tin nhắn tạm của mình giữ tham chiếu tới nó)
+        currentUser.updateFrom(user);
+        currentUser.setToken(user.getToken());
+    }
 
-                    // vẽ giao diện để hiện danh sách người dùng
-                    updateListViewBasedOnFilterAndSearch();
+    // dừng các phần đang chạy của trang chủ (lưu thanh bên, socket, cache tin nhắn) trước khi rời trang
+    private void closeSession() {
+        snapshotSave.cancel();
+        primaryStage.removeEventHandler(WindowEvent.WINDOW_CLOSE_REQUEST, saveSnapshotOnClose);
+        saveSnapshotOnClose.handle(null);
+        sidebarSnapshot = null;
+        cancelLoad(usersLoad);
+        cancelLoad(groupsLoad);
+        socketService.disconnect();
+        if (messageCache != null) {
+            messageCache.shutdown();
+        }
+        if (searchIndex != null) {
+            searchIndex.shutdown();
+        }
+    }
 
-                    // cập nhật các nhãn người dùng có tin chưa đọc
-                    updateOnlineCountLabel();
-                }
-            });
+    // các listener nhận sự kiện theo lô (đã ở trên luồng FX), mỗi lô chỉ vẽ lại giao diện 1 lần
+    private void setupSocketListeners() {
+        // danh sách online (chỉ cần bản mới nhất trong lô)
+        socketService.setOnOnlineListReceived(lists -> {
+            boot.mark("online");
+            List<String> onlineIds = lists.get(lists.size() - 1);
+            onlineUserIds.clear();
+            onlineUserIds.addAll(onlineIds);
+
+            // danh sách đầy đủ -> dựng lại toàn bộ thanh bên
+            for (User u : userRegistry.ordered()) {
+                u.setOnline(onlineUserIds.contains(u.get_id()));
+            }
+            scheduleUserListRefresh(true);
         });
 
         // có người dùng online
-        socketService.setOnUserOnline(userId -> {
-            Platform.runLater(() -> {
-                onlineUserIds.add(userId);
-                if(selectedUser != null && userStatus != null){
-                    if (selectedUser.get_id().equals(userId)) userStatus.setText("Đang hoạt động");
-                }
-                if (allUsers != null) {
-                    allUsers.stream()
-                            .filter(u -> u.get_id().equals(userId))
-                            .findFirst()
-                            .ifPresent(u -> u.setOnline(true));
-
-                    // cập nhật giao diện
-                    updateListViewBasedOnFilterAndSearch();
-                    updateOnlineCountLabel();
-                }
-            });
-        });
+        socketService.setOnUserOnline(userIds -> applyPresence(userIds, true));
 
         // có người dùng offline
-        socketService.setOnUserOffline(userId -> {
-            Platform.runLater(() -> {
-                onlineUserIds.remove(userId);
-                if(selectedUser != null && userStatus != null){
-                    if (selectedUser.get_id().equals(userId)) userStatus.setText("Ngoại tuyến");
-                }
-                if (userListView.getItems() != null) {
-                    userListView.getItems().stream()
-                            .filter(u -> u.get_id().equals(userId))
-                            .findFirst()
-                            .ifPresent(u -> u.setOnline(false));
-
-                    // cập nhật giao diện
-                    updateListViewBasedOnFilterAndSearch();
-                    updateOnlineCountLabel();
-                }
-            });
-        });
+        socketService.setOnUserOffline(userIds -> applyPresence(userIds, false));
 
         // gửi thông báo đang soạn tin (bắt đầu/kết thúc soạn)
-        socketService.setOnTypingStart(senderId -> updateUserTypingStatus(senderId, true));
-        socketService.setOnTypingStop(senderId -> updateUserTypingStatus(senderId, false));
+        socketService.setOnTypingStart(senderIds -> senderIds.forEach(id -> updateUserTypingStatus(id, true)));
+        socketService.setOnTypingStop(senderIds -> senderIds.forEach(id -> updateUserTypingStatus(id, false)));
 
         // có tin nhắn mới đến
-        socketService.setOnNewMessage(message -> {
-            if (selectedUser != null && message.getSenderId().equals(selectedUser.get_id())) {
-                // nếu đang chat cùng mà có tin mới
-                messages.add(message);
-                Platform.runLater(() -> {
+        socketService.setOnNewMessage(batch -> {
+            indexMessages(batch);
+            List<Message> forSelected = new ArrayList<>();
+
+            for (Message message : batch) {
+                if (selectedUser != null && message.getSenderId().equals(selectedUser.get_id())) {
+                    // nếu đang chat cùng mà có tin mới
+                    messages.add(message);
+                    forSelected.add(message);
+                } else {
+                    // nếu đang không chat cùng mà có tin mới -> cập nhật số tin chưa đọc
+                    userRegistry.update(message.getSenderId(), u -> u.setUnreadCount(u.getUnreadCount() + 1));
+                }
 
-                    // vẽ lại giao diện chat để hiện tin mới
-                    renderMessages();
-                    socketService.emitSeenMessage(selectedUser.get_id()); // gửi thông báo đã xem tin nhắn
-                });
-            } else {
-                // nếu đang không chat cùng mà có tin mới
-                Platform.runLater(() -> {
-                    String senderId = message.getSenderId();
-                    this.allUsers.stream()
-                            .filter(u -> u.get_id().equals(senderId))
-                            .findFirst()
-                            .ifPresent(u -> {
-                                // cập nhật số tin chưa đọc và làm mới giao diện danh sách người dùng
-                                u.setUnreadCount(u.getUnreadCount() + 1);
-                                userListView.refresh();
-                            });
-                });
+                // cập nhật nội dung preview tin nhắn mới nhất (danh sách được vẽ lại 1 lần cho cả lô)
+                updateSidebarLastMessage(message);
             }
 
-            // trong trường hợp nào cũng vẽ lại giao diện để cập nhật nội dung preview tin nhắn mới nhất
-            updateSidebarLastMessage(message);
+            if (!forSelected.isEmpty()) {
+                cacheMessages(selectedUser.get_id(), forSelected);
+                // vẽ lại giao diện chat để hiện tin mới
+                renderMessages();
+                // gửi thông báo đã xem tới tin mới nhất (1 sự kiện cho cả lô)
+                socketService.emitSeenMessage(selectedUser.get_id(), forSelected.get(forSelected.size() - 1).get_id());
+            }
         });
 
         // khi người khác xem tin nhắn của mình lúc đang chat
-        socketService.setOnMessageSeen(data -> {
-            Platform.runLater(() -> {
-                String viewerId = data.get("viewerId").getAsString();
-                if (selectedUser != null && selectedUser.get_id().equals(viewerId)) {
-                    Label statusLabel = (Label) scene.lookup("#lastMessageStatus");
-                    if (statusLabel != null) {
-                        statusLabel.setText("Đã xem");
-                    }
+        socketService.setOnMessageSeen(batch -> {
+            if (selectedUser == null) return;
+            String viewerId = selectedUser.get_id();
+            // gộp các xác nhận của người này trong lô thành 1 mốc mới nhất (không có mốc = đã xem tất cả)
+            boolean seen = false;
+            Instant upTo = null;
+            for (SeenReceipt receipt : batch) {
+                if (!viewerId.equals(receipt.getViewerId())) continue;
+                Instant receiptUpTo = parseInstant(receipt.getUpToCreatedAt());
+                if (!seen) {
+                    upTo = receiptUpTo;
+                } else if (upTo != null) {
+                    upTo = receiptUpTo == null || receiptUpTo.isAfter(upTo) ? receiptUpTo : upTo;
                 }
-            });
+                seen = true;
+            }
+            if (!seen) return;
+
+            // server đánh dấu đã xem các tin mình gửi cho người này tới mốc upTo:
+            // đi ngược từ tin mới nhất, bỏ qua tin mới hơn mốc và dừng ở tin đã được xem từ trước,
+            // dòng đang hiện tự cập nhật nhãn trạng thái qua seenCountProperty
+            List<Message> changed = new ArrayList<>();
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                Message msg = messages.get(i);
+                if (!msg.getSenderId().equals(currentUser.get_id())) continue;
+                if (isAfter(msg.getCreatedAt(), upTo)) continue;
+                if (!msg.markSeenBy(viewerId)) break;
+                changed.add(msg);
+            }
+            cacheMessages(viewerId, changed);
         });
 
         // ===== GROUP LISTENERS =====
 
         // nhận tin nhắn mới của nhóm
-        socketService.setOnNewGroupMessage(message -> {
-            Platform.runLater(() -> {
-                // cập nhật danh sách nhóm
-                loadGroups();
-
-                // nếu đang mở giao diện chat của group, vẽ lại giao diện để hiện tin mới
+        socketService.setOnNewGroupMessage(batch -> {
+            indexGroupMessages(batch);
+            List<GroupMessage> forSelected = new ArrayList<>();
+            for (GroupMessage message : batch) {
                 if (selectedGroup != null && message.getGroupId().equals(selectedGroup.get_id())) {
-                    groupMessages.add(message);
-                    renderGroupMessages();
-                    socketService.emitSeenGroupMessage(message.get_id(), selectedGroup.get_id());
-                } else {
+                    // nếu đang mở giao diện chat của group (tin của chính mình thì thay tin tạm)
+                    if (!replaceLocalGroupMessage(message)) {
+                        groupMessages.add(message);
+                    }
+                    forSelected.add(message);
+                } else if (!message.getSenderId().equals(currentUser.get_id())) {
                     // nếu không chat với group, cập nhật số tin chưa đọc
-                    allGroups.stream()
-                            .filter(g -> g.get_id().equals(message.getGroupId()))
-                            .findFirst()
-                            .ifPresent(g -> {
-                                g.setUnreadCount(g.getUnreadCount() + 1);
-                                groupListView.refresh();
-                            });
+                    groupRegistry.update(message.getGroupId(), g -> g.setUnreadCount(g.getUnreadCount() + 1));
                 }
-            });
+                // cập nhật tin cuối và thứ tự của nhóm ngay từ dữ liệu sự kiện (không tải lại cả danh sách)
+                updateGroupSummary(message);
+            }
+
+            // vẽ lại giao diện 1 lần để hiện các tin mới
+            if (!forSelected.isEmpty()) {
+                cacheGroupMessages(selectedGroup.get_id(), forSelected);
+                renderGroupMessages();
+                emitGroupSeen(selectedGroup.get_id());
+            }
         });
 
-        // Group typing (chưa hoàn thiện)
-        socketService.setOnGroupTypingStart(senderName -> {
-            Platform.runLater(() -> {
-                if (typingIndicator != null && selectedGroup != null) {
-                    typingIndicator.setText(senderName + " đang soạn tin...");
-                    typingIndicator.setVisible(true);
-                }
-            });
+        // Group typing (chưa hoàn thiện) - chỉ cần sự kiện cuối cùng trong lô
+        socketService.setOnGroupTypingStart(senderNames -> {
+            if (typingIndicator != null && selectedGroup != null) {
+                typingIndicator.setText(senderNames.get(senderNames.size() - 1) + " đang soạn tin...");
+                typingIndicator.setVisible(true);
+            }
+        });
+
+        // senderIds có thể chứa id rỗng (server không gửi senderId), vẫn ẩn dòng đang soạn tin
+        socketService.setOnGroupTypingStop(senderIds -> {
+            if (typingIndicator != null) {
+                typingIndicator.setVisible(false);
+            }
         });
 
-        socketService.setOnGroupTypingStop(senderId -> {
-            Platform.runLater(() -> {
-                if (typingIndicator != null) {
-                    typingIndicator.setVisible(false);
+        // có người đã đọc nhóm tới 1 tin: mọi tin của người khác tới mốc đó được coi là người này đã xem
+        socketService.setOnGroupReadUpTo(batch -> {
+            if (selectedGroup == null) return;
+
+            List<GroupMessage> updated = new ArrayList<>();
+            for (SeenReceipt receipt : batch) {
+                if (!selectedGroup.get_id().equals(receipt.getGroupId())) continue;
+                String viewerId = receipt.getViewerId();
+                Instant upTo = parseInstant(receipt.getUpToCreatedAt());
+                if (upTo == null) continue;
+                // đi ngược từ tin mới nhất, bỏ qua tin mới hơn mốc và dừng ở tin người này đã xem từ trước
+                for (int i = groupMessages.size() - 1; i >= 0; i--) {
+                    GroupMessage msg = groupMessages.get(i);
+                    if (viewerId.equals(msg.getSenderId()) || isAfter(msg.getCreatedAt(), upTo)) continue;
+                    if (!msg.markSeenBy(viewerId)) break;
+                    updated.add(msg);
                 }
-            });
+            }
+            cacheGroupMessages(selectedGroup.get_id(), updated);
         });
 
-        // có người xem tin nhắn đã gửi trong nhóm
-        socketService.setOnGroupMessageSeen(data -> {
-            Platform.runLater(() -> {
-                try {
-                    String messageId = data.get("messageId").getAsString();
-                    String userId = data.get("userId").getAsString();
-
-                    // cập nhật các biến giao diện để hiện người đã xem
-                    boolean updated = false;
-                    for (GroupMessage msg : groupMessages) {
-                        if (msg.get_id().equals(messageId)) {
-                            if (msg.getSeenBy() == null) {
-                                msg.setSeenBy(new ArrayList<>());
-                            }
-                            if (!msg.getSeenBy().contains(userId)) {
-                                msg.getSeenBy().add(userId);
-                                updated = true;
-                            }
-                            break;
-                        }
-                    }
+        // có người xem 1 tin nhắn trong nhóm (sự kiện cũ theo từng tin, vẫn nhận từ client phiên bản trước)
+        socketService.setOnGroupMessageSeen(batch -> {
+            if (selectedGroup == null) return;
 
-                    if (updated) {
-                        // vẽ lại giao diện
-                        renderGroupMessages();
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
+            List<GroupMessage> updated = new ArrayList<>();
+            for (SeenReceipt receipt : batch) {
+                // tra cứu tin theo id, chỉ dòng của tin đó tự cập nhật nhãn "đã xem" (không vẽ lại cả khung chat)
+                GroupMessage msg = groupMessageIndex.get(groupMessages, receipt.getMessageId());
+                if (msg != null && msg.markSeenBy(receipt.getViewerId())) {
+                    updated.add(msg);
                 }
-            });
+            }
+            cacheGroupMessages(selectedGroup.get_id(), updated);
         });
 
-        // tải lại nhóm nếu có nhóm được tạo/bị xóa/bị kick
-        socketService.setOnGroupCreated(data -> {
-            Platform.runLater(this::loadGroups);
-        });
+        // tải lại nhóm nếu có nhóm được tạo/bị xóa/bị kick (các sự kiện dồn dập được gộp thành 1 lần tải)
+        socketService.setOnGroupCreated(batch -> scheduleGroupsReload());
 
-        socketService.setOnGroupDeleted(data -> {
-            Platform.runLater(() -> {
+        socketService.setOnGroupDeleted(batch -> {
+            for (JsonObject data : batch) {
                 String deletedGroupId = data.get("groupId").getAsString();
                 if (selectedGroup != null && selectedGroup.get_id().equals(deletedGroupId)) {
                     // Close group chat
                     selectedGroup = null;
                     showNoChatView();
                 }
-                loadGroups();
-            });
+            }
+            scheduleGroupsReload();
         });
 
-        socketService.setOnReloadGroups(v -> {
-            Platform.runLater(this::loadGroups);
+        socketService.setOnReloadGroups(this::scheduleGroupsReload);
+
+        // kết nối lại sau khi mất mạng -> tải bù các tin nhắn bị lỡ
+        socketService.setOnReconnected(this::syncMissedMessages);
+
+        // server đã lưu tin nhắn mình gửi -> cập nhật id/thời gian thật cho tin tạm
+        socketService.setOnMessageAcked(this::applyDeliveries);
+
+        // gửi lại nhiều lần vẫn thất bại
+        socketService.setOnMessageFailed(failed -> showAlert("Gửi tin nhắn thất bại",
+                "Không gửi được " + failed.size() + " tin nhắn, vui lòng kiểm tra kết nối và gửi lại.", Alert.AlertType.WARNING));
+    }
+
+    // cập nhật _id/createdAt thật cho các tin tạm theo clientId
+    private void applyDeliveries(List<OutboundMessageQueue.Delivery> deliveries) {
+        Map<String, OutboundMessageQueue.Delivery> byClientId = new HashMap<>();
+        for (OutboundMessageQueue.Delivery delivery : deliveries) {
+            byClientId.put(delivery.getClientId(), delivery);
+        }
+
+        List<Message> confirmed = new ArrayList<>();
+        for (Message message : messages) {
+            OutboundMessageQueue.Delivery delivery = message.getClientId() != null ? byClientId.get(message.getClientId()) : null;
+            if (delivery != null) {
+                message.set_id(delivery.getServerId());
+                message.setCreatedAt(delivery.getCreatedAt());
+                confirmed.add(message);
+            }
+        }
+        List<GroupMessage> confirmedGroup = new ArrayList<>();
+        for (GroupMessage message : groupMessages) {
+            OutboundMessageQueue.Delivery delivery = message.getClientId() != null ? byClientId.get(message.getClientId()) : null;
+            if (delivery != null) {
+                message.set_id(delivery.getServerId());
+                message.setCreatedAt(delivery.getCreatedAt());
+                groupMessageIndex.put(message);
+                confirmedGroup.add(message);
+            }
+        }
+
+        if (selectedUser != null) {
+            cacheMessages(selectedUser.get_id(), confirmed);
+        }
+        if (selectedGroup != null) {
+            cacheGroupMessages(selectedGroup.get_id(), confirmedGroup);
+        }
+    }
+
+    // thay tin nhắn nhóm tạm (cùng clientId) bằng tin thật server phát lại, trả về false nếu không có tin tạm
+    private boolean replaceLocalGroupMessage(GroupMessage message) {
+        if (message.getClientId() == null) return false;
+        for (int i = groupMessages.size() - 1; i >= 0; i--) {
+            if (message.getClientId().equals(groupMessages.get(i).getClientId())) {
+                groupMessages.set(i, message);
+                groupMessageIndex.put(message);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // tải bù các tin nhắn gửi đến trong lúc mất kết nối, chỉ với các cuộc trò chuyện đang mở/gần đây
+    private void syncMissedMessages(Map<String, String> highWaterMarks) {
+        if (highWaterMarks.isEmpty()) return;
+
+        AppExecutors.run(() -> {
+            for (Map.Entry<String, String> entry : highWaterMarks.entrySet()) {
+                String key = entry.getKey();
+                String targetId = ConversationSyncTracker.targetId(key);
+                try {
+                    if (ConversationSyncTracker.isGroupKey(key)) {
+                        List<GroupMessage> missed = groupService.getGroupMessagesAfter(targetId, entry.getValue());
+                        Platform.runLater(() -> mergeMissedGroupMessages(key, targetId, missed));
+                    } else {
+                        List<Message> missed = chatService.getMessagesAfter(targetId, entry.getValue());
+                        Platform.runLater(() -> mergeMissedMessages(key, targetId, missed));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
         });
     }
 
+    // gộp các tin nhắn cá nhân tải bù vào danh sách đang có (bỏ qua tin đã nhận qua socket)
+    private void mergeMissedMessages(String key, String friendId, List<Message> missed) {
+        ConversationSyncTracker tracker = socketService.getSyncTracker();
+        boolean isOpen = selectedUser != null && selectedUser.get_id().equals(friendId);
+        List<Message> added = new ArrayList<>();
+
+        for (Message message : missed) {
+            if (!tracker.record(key, message.get_id(), message.getCreatedAt())) continue;
+            added.add(message);
+
+            if (!isOpen && !message.getSenderId().equals(currentUser.get_id())) {
+                userRegistry.update(friendId, u -> u.setUnreadCount(u.getUnreadCount() + 1));
+            }
+        }
+
+        if (added.isEmpty()) return;
+        // chỉ tin mới nhất của lô mới được thay preview, và chỉ khi mới hơn tin cuối đang hiện
+        // (tin nhận qua socket trong lúc tải bù có thể mới hơn)
+        Message newest = newestOf(added, Message::getCreatedAt);
+        User friend = userRegistry.get(friendId);
+        if (friend == null || friend.getLastMessage() == null
+                || isNewer(newest.getCreatedAt(), friend.getLastMessage().getCreatedAt())) {
+            updateSidebarLastMessage(newest);
+        }
+        indexMessages(added);
+        if (isOpen) {
+            // tin nhận qua socket trong lúc tải bù có thể mới hơn các tin tải bù -> chèn đúng thứ tự thời gian
+            mergeNewer(messages, added, Message::get_id, Message::getCreatedAt, (current, fresh) -> {});
+            cacheMessages(friendId, added);
+            renderMessages();
+            socketService.emitSeenMessage(friendId, added.get(added.size() - 1).get_id());
+        }
+    }
+
+    // gộp các tin nhắn nhóm tải bù vào danh sách đang có (bỏ qua tin đã nhận qua socket)
+    private void mergeMissedGroupMessages(String key, String groupId, List<GroupMessage> missed) {
+        ConversationSyncTracker tracker = socketService.getSyncTracker();
+        boolean isOpen = selectedGroup != null && selectedGroup.get_id().equals(groupId);
+        List<GroupMessage> added = new ArrayList<>();
+
+        for (GroupMessage message : missed) {
+            if (!tracker.record(key, message.get_id(), message.getCreatedAt())) continue;
+            added.add(message);
+
+            if (!isOpen && !message.getSenderId().equals(currentUser.get_id())) {
+                groupRegistry.update(groupId, g -> g.setUnreadCount(g.getUnreadCount() + 1));
+            }
+        }
+
+        if (added.isEmpty()) return;
+        GroupMessage newest = newestOf(added, GroupMessage::getCreatedAt);
+        Group group = groupRegistry.get(groupId);
+        if (group == null || group.getLastMessage() == null
+                || isNewer(newest.getCreatedAt(), group.getLastMessage().getCreatedAt())) {
+            updateGroupSummary(newest);
+        }
+        indexGroupMessages(added);
+        if (isOpen) {
+            mergeNewer(groupMessages, added, GroupMessage::get_id, GroupMessage::getCreatedAt, (current, fresh) -> {});
+            cacheGroupMessages(groupId, added);
+            renderGroupMessages();
+            emitGroupSeen(groupId);
+        }
+    }
+
+    // tin có createdAt muộn nhất (tin không đọc được thời gian coi như cũ nhất)
+    private static <T> T newestOf(List<T> list, Function<T, String> createdAtOf) {
+        T newest = list.get(0);
+        for (T item : list) {
+            Instant newestAt = parseInstant(createdAtOf.apply(newest));
+            if (newestAt == null || isAfter(createdAtOf.apply(item), newestAt)) {
+                newest = item;
+            }
+        }
+        return newest;
+    }
+
+    // createdAt mới hơn current (current không đọc được thời gian thì coi như cũ hơn)
+    private static boolean isNewer(String createdAt, String current) {
+        Instant currentAt = parseInstant(current);
+        return currentAt == null || isAfter(createdAt, currentAt);
+    }
+
+    // cập nhật tin cuối của nhóm ở thanh bên và đưa nhóm lên đầu danh sách
+    private void updateGroupSummary(GroupMessage message) {
+        Group group = groupRegistry.get(message.getGroupId());
+        if (group == null) {
+            // nhóm chưa có trong danh sách (vừa được thêm vào nhóm) -> tải lại danh sách nhóm
+            scheduleGroupsReload();
+            return;
+        }
+
+        Group.LastMessage lastMsg = new Group.LastMessage();
+        lastMsg.setContent(message.getContent());
+        lastMsg.setCreatedAt(message.getCreatedAt());
+        lastMsg.setSenderName(message.getSenderName());
+        lastMsg.setIsMine(message.getSenderId().equals(currentUser.get_id()));
+        group.setLastMessage(lastMsg);
+
+        groupRegistry.moveToTop(group.get_id());
+    }
+
+    // gộp các yêu cầu tải lại danh sách nhóm đến dồn dập thành 1 lần tải sau GROUPS_RELOAD_DELAY_MS
+    private static final int GROUPS_RELOAD_DELAY_MS = 300;
+    private PauseTransition groupsReload;
+
+    private void scheduleGroupsReload() {
+        if (groupsReload == null) {
+            groupsReload = new PauseTransition(Duration.millis(GROUPS_RELOAD_DELAY_MS));
+            groupsReload.setOnFinished(e -> loadGroups());
+        }
+        if (groupsReload.getStatus() != Animation.Status.RUNNING) {
+            groupsReload.playFromStart();
+        }
+    }
+
+    // áp dụng 1 lô thay đổi trạng thái online/offline rồi vẽ lại danh sách 1 lần
+    private void applyPresence(List<String> userIds, boolean online) {
+        for (String userId : userIds) {
+            if (online) {
+                onlineUserIds.add(userId);
+            } else {
+                onlineUserIds.remove(userId);
+            }
+            if (selectedUser != null && userStatus != null && selectedUser.get_id().equals(userId)) {
+                userStatus.setText(online ? "Đang hoạt động" : "Ngoại tuyến");
+            }
+        }
+
+        // chỉ tra cứu những người thay đổi, listener của registry vẽ lại giao diện
+        userRegistry.updateAll(userIds, u -> u.setOnline(online));
+    }
+
     // tạo thanh điều hướng của ứng dụng (tên ứng dụng, nút cài đặt, nút xem profile, nút đăng xuất)
     private HBox createNavbar(Stage stage) {
         HBox navbar = new HBox(20);
@@ -380,8 +716,8 @@ public class HomeController {
         logoutIcon.setIconSize(18);
         logoutBtn.setGraphic(logoutIcon);
         logoutBtn.setOnAction(e -> {
+            closeSession();
             authService.logout();
-            socketService.disconnect();
             new LoginController().show(stage);
         });
 
@@ -434,36 +770,36 @@ public class HomeController {
         searchStatusLabel.setMaxWidth(Double.MAX_VALUE);
         searchStatusLabel.setVisible(false);
 
-        // logic tìm kiếm được gọi bất kì khi nào nhận thấy sự thay đổi trong trường nhập liệu
+        // logic tìm kiếm được gọi bất kì khi nào nhận thấy sự thay đổi trong trường nhập liệu:
+        // kết quả trên máy hiện ngay mỗi lần gõ, server chỉ được hỏi khi kết quả trên máy chưa đủ và đã ngừng gõ 500ms
         searchField.textProperty().addListener((obs, oldVal, newVal) -> {
-            if (searchDebounceTimer != null) {
-                searchDebounceTimer.cancel();
+            searchDebounce.cancel();
+
+            String searchTerm = newVal.trim();
+            boolean needsServer = false;
+            if (searchTerm.isEmpty()) {
+                cancelLoad(searchLoad);
+                latestSearchResults.clear();
+                if (currentTab.equals("users")) {
+                    updateListViewBasedOnFilterAndSearch();
+                } else {
+                    updateGroupListView();
+                }
+                searchStatusLabel.setVisible(false);
+            } else if (currentTab.equals("users")) {
+                needsServer = performSearch(searchTerm);
+                loadRemainingUsersIfFiltering();
+            } else {
+                performGroupSearch(searchTerm);
             }
+            updateMessageSearch(newVal);
 
-            searchDebounceTimer = new Timer();
-            searchDebounceTimer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    Platform.runLater(() -> {
-                        String searchTerm = searchField.getText().trim();
-                        if (searchTerm.isEmpty()) {
-                            latestSearchResults.clear();
-                            if (currentTab.equals("users")) {
-                                updateListViewBasedOnFilterAndSearch();
-                            } else {
-                                updateGroupListView();
-                            }
-                            searchStatusLabel.setVisible(false);
-                        } else {
-                            if (currentTab.equals("users")) {
-                                performSearch(searchTerm);
-                            } else {
-                                performGroupSearch(searchTerm);
-                            }
-                        }
-                    });
-                }
-            }, 500);
+            if (!needsServer) return;
+            searchDebounce.submit(() -> {
+                // từ khóa đã đổi trong lúc chờ
+                if (!searchField.getText().trim().equals(searchTerm)) return;
+                performServerSearch(searchTerm);
+            });
         });
 
         // logic hiện (ẩn) người dùng online khi checkbox được chọn (chỉ có bên tab người dùng)
@@ -471,6 +807,7 @@ public class HomeController {
         onlineOnlyCheck.getStyleClass().add("filter-checkbox");
         onlineOnlyCheck.selectedProperty().addListener((obs, oldVal, newVal) -> {
             updateListViewBasedOnFilterAndSearch();
+            loadRemainingUsersIfFiltering();
         });
 
         onlineCountLabel = new Label("(0 người online)");
@@ -500,6 +837,8 @@ public class HomeController {
                 selectUser(selected);
             }
         });
+        // cuộn gần tới cuối danh sách -> tải trước trang tiếp theo
+        prefetchNearEnd(userListView, USERS_PREFETCH_ROWS, this::loadMoreUsers);
 
         // danh sách nhóm
         groupListView = new ListView<>();
@@ -514,13 +853,36 @@ public class HomeController {
             }
         });
 
+        // thanh bên đã được khôi phục từ trạng thái đã lưu -> đưa ngay vào danh sách để có ở khung hình đầu tiên
+        // (lần vẽ lại do registry lên lịch chạy sau khi cửa sổ đã hiện)
+        currentDisplayedUsers.addAll(userRegistry.ordered());
+        userListView.getItems().setAll(currentDisplayedUsers);
+        groupListView.getItems().setAll(groupRegistry.ordered());
+
         // tạo khung chứa chung để thay phiên ẩn hiện danh sách người dùng/nhóm mỗi khi chuyển tab
         StackPane listStack = new StackPane();
         VBox.setVgrow(listStack, Priority.ALWAYS);
         StackPane.setAlignment(searchStatusLabel, Pos.CENTER);
         listStack.getChildren().addAll(userListView, groupListView, searchStatusLabel);
 
-        sidebar.getChildren().addAll(sidebarHeader, listStack);
+        // kết quả tìm kiếm tin nhắn (chỉ hiện khi có kết quả)
+        Label messageSearchTitle = new Label("Tin nhắn");
+        messageSearchTitle.getStyleClass().add("section-label");
+        messageSearchView = new ListView<>();
+        messageSearchView.setCellFactory(list -> new MessageSearchCell());
+        messageSearchView.getStyleClass().add("user-list");
+        messageSearchView.setPrefHeight(240);
+        messageSearchView.setOnMouseClicked(e -> {
+            MessageSearchIndex.Hit hit = messageSearchView.getSelectionModel().getSelectedItem();
+            if (hit != null) {
+                openSearchHit(hit);
+            }
+        });
+        messageSearchPane = new VBox(5, messageSearchTitle, messageSearchView);
+        messageSearchPane.setVisible(false);
+        messageSearchPane.managedProperty().bind(messageSearchPane.visibleProperty());
+
+        sidebar.getChildren().addAll(sidebarHeader, listStack, messageSearchPane);
 
         return sidebar;
     }
@@ -590,16 +952,23 @@ public class HomeController {
         chatHeader.setManaged(false);
         chatHeader.setId("chatHeader");
 
-        // khung giao diện chính hiển thị các tin nhắn
-        messageScrollPane = new ScrollPane();
-        messageScrollPane.setFitToWidth(true);
-        messageScrollPane.getStyleClass().add("message-scroll-pane");
-
-        messageContainer = new VBox(15);
-        messageContainer.setPadding(new Insets(20));
-        messageScrollPane.setContent(messageContainer);
-        messageContainer.heightProperty().addListener((obs, oldVal, newVal) -> {
-            messageScrollPane.setVvalue(1.0);
+        // khung giao diện chính hiển thị các tin nhắn (ListView tái sử dụng cell, chiều cao từng dòng tự co giãn)
+        messageListView = new ListView<>(timelineItems);
+        messageListView.getStyleClass().add("message-timeline");
+        messageListView.setFocusTraversable(false);
+        messageListView.setCellFactory(lv -> new MessageCell(lv));
+        messageListView.setPlaceholder(new Label());
+
+        // cuộn gần tới đầu danh sách -> tải trước trang tin nhắn cũ hơn
+        messageListView.skinProperty().addListener((obs, oldSkin, newSkin) -> {
+            VirtualFlow<?> flow = timelineFlow();
+            if (flow == null) return;
+            flow.positionProperty().addListener((o, oldPos, newPos) -> {
+                IndexedCell<?> first = flow.getFirstVisibleCell();
+                if (first != null && first.getIndex() < HISTORY_PREFETCH_ROWS) {
+                    loadOlderMessages();
+                }
+            });
         });
 
         // Typing indicator (chưa phát triển)
@@ -641,33 +1010,20 @@ public class HomeController {
 
         // logic thực hiện khi đang nhập tin
         messageInput.textProperty().addListener((obs, oldVal, newVal) -> {
-            if (selectedUser == null && selectedGroup == null) return;
-
-            if (!newVal.isEmpty()) {
-                if (selectedGroup != null) {
-                    socketService.emitGroupTypingStart(selectedGroup.get_id());
-
-                    if (groupTypingTimer != null) groupTypingTimer.cancel();
-                    groupTypingTimer = new Timer();
-                    groupTypingTimer.schedule(new TimerTask() {
-                        @Override
-                        public void run() {
-                            socketService.emitGroupTypingStop(selectedGroup.get_id());
-                        }
-                    }, 2000);
-                } else if (selectedUser != null) {
-                    socketService.emitStartTyping(selectedUser.get_id());
-
-                    if (typingTimer != null) typingTimer.cancel();
-                    typingTimer = new Timer();
-                    typingTimer.schedule(new TimerTask() {
-                        @Override
-                        public void run() {
-                            socketService.emitStopTyping(selectedUser.get_id());
-                        }
-                    }, 2000);
-                }
+            String key = currentConversationKey();
+            if (key == null || newVal.isEmpty()) return;
+
+            if (!key.equals(typingTarget)) {
+                // đổi cuộc trò chuyện: báo ngừng soạn ở cuộc trước ngay, cuộc mới được báo bắt đầu lại từ đầu
+                typingStop.flush();
+                typingStart.cancel();
+                typingTarget = key;
             }
+            typingStart.submit(() -> emitTyping(key, true));
+            typingStop.submit(() -> {
+                typingStart.cancel();
+                emitTyping(key, false);
+            });
         });
 
         // khi có sự kiện enter/bấm nút gửi ở thanh soạn tin -> gọi hàm gửi tin
@@ -679,8 +1035,8 @@ public class HomeController {
         messageInputContainer.setVisible(false);
         messageInputContainer.setManaged(false);
 
-        chatArea.getChildren().addAll(chatHeader, noChatView, messageScrollPane, typingIndicator, messageInputContainer);
-        VBox.setVgrow(messageScrollPane, Priority.ALWAYS);
+        chatArea.getChildren().addAll(chatHeader, noChatView, messageListView, typingIndicator, messageInputContainer);
+        VBox.setVgrow(messageListView, Priority.ALWAYS);
         VBox.setVgrow(noChatView, Priority.ALWAYS);
 
         return chatArea;
@@ -688,38 +1044,44 @@ public class HomeController {
 
     // ========== GROUP METHODS ==========
 
-    // tải danh sách nhóm liên quan
+    // tải danh sách nhóm liên quan (lần tải trước chưa xong sẽ bị hủy)
     private void loadGroups() {
-        new Thread(() -> {
-            try {
-                allGroups = groupService.getGroups();
-                Platform.runLater(() -> {
-                    // Join all group rooms
-                    for (Group g : allGroups) {
-                        socketService.joinGroup(g.get_id());
-                        g.updateStatusPreview();
-                    }
-                    updateGroupListView();
-                    searchStatusLabel.setVisible(false);
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-                Platform.runLater(() -> {
-                    showAlert("Lỗi", "Tải nhóm thất bại: " + e.getMessage(), Alert.AlertType.ERROR);
-                });
+        cancelLoad(groupsLoad);
+        CompletableFuture<List<Group>> load = groupService.getGroupsAsync();
+        groupsLoad = load;
+        load.whenCompleteAsync((groups, error) -> {
+            if (error != null) {
+                if (isCancellation(error)) return;
+                boot.mark("groups");
+                error.printStackTrace();
+                showAlert("Lỗi", "Tải nhóm thất bại: " + AppExecutors.unwrap(error).getMessage(), Alert.AlertType.ERROR);
+                return;
             }
-        }).start();
+
+            // Join all group rooms
+            for (Group g : groups) {
+                socketService.joinGroup(g.get_id());
+            }
+            // đối chiếu với danh sách đang hiện (có thể được vẽ từ trạng thái đã lưu)
+            for (Group g : groupRegistry.reconcile(groups, Group::updateFrom)) {
+                g.updateStatusPreview();
+            }
+            searchStatusLabel.setVisible(false);
+            boot.mark("groups");
+        }, Platform::runLater);
     }
 
     // cập nhật giao diện danh sách nhóm
     private void updateGroupListView() {
         Platform.runLater(() -> {
             String searchTerm = searchField != null ? searchField.getText().trim() : "";
-            List<Group> groupsToShow = new ArrayList<>(allGroups);
+            List<Group> groupsToShow = groupRegistry.ordered();
 
             if (!searchTerm.isEmpty()) {
+                // so khớp không phân biệt dấu ("nhom ban" tìm được "Nhóm bạn")
+                String folded = SearchText.fold(searchTerm);
                 groupsToShow = groupsToShow.stream()
-                        .filter(g -> g.getName().toLowerCase().contains(searchTerm.toLowerCase()))
+                        .filter(g -> SearchText.fold(g.getName()).contains(folded))
                         .collect(Collectors.toList());
             }
 
@@ -734,6 +1096,114 @@ public class HomeController {
         });
     }
 
+    // tìm trong các tin nhắn đã có trên máy, chỉ giữ kết quả thuộc cuộc trò chuyện đang có ở thanh bên
+    private void updateMessageSearch(String query) {
+        List<MessageSearchIndex.Hit> hits = new ArrayList<>();
+        if (searchIndex != null && !query.isBlank()) {
+            for (MessageSearchIndex.Hit hit : searchIndex.search(query, MESSAGE_SEARCH_LIMIT * 2)) {
+                if (conversationName(hit.getConversationKey()) == null) continue;
+                hits.add(hit);
+                if (hits.size() == MESSAGE_SEARCH_LIMIT) break;
+            }
+        }
+        messageSearchView.getItems().setAll(hits);
+        messageSearchPane.setVisible(!hits.isEmpty());
+    }
+
+    // tên hiển thị của cuộc trò chuyện theo khóa, null nếu không còn ở thanh bên
+    private String conversationName(String key) {
+        String targetId = ConversationSyncTracker.targetId(key);
+        if (ConversationSyncTracker.isGroupKey(key)) {
+            Group group = groupRegistry.get(targetId);
+            return group != null ? group.getName() : null;
+        }
+        User user = userRegistry.get(targetId);
+        return user != null ? user.getFullName() : null;
+    }
+
+    // mở cuộc trò chuyện chứa tin nhắn tìm được, cuộn tới tin nhắn khi tải xong
+    private void openSearchHit(MessageSearchIndex.Hit hit) {
+        pendingJump = hit;
+        String targetId = ConversationSyncTracker.targetId(hit.getConversationKey());
+        if (hit.getConversationKey().equals(currentConversationKey())) {
+            jumpToPendingMessage();
+        } else if (ConversationSyncTracker.isGroupKey(hit.getConversationKey())) {
+            Group group = groupRegistry.get(targetId);
+            if (group != null) selectGroup(group);
+        } else {
+            User user = userRegistry.get(targetId);
+            if (user != null) selectUser(user);
+        }
+    }
+
+    private String currentConversationKey() {
+        if (selectedUser != null) return ConversationSyncTracker.directKey(selectedUser.get_id());
+        if (selectedGroup != null) return ConversationSyncTracker.groupKey(selectedGroup.get_id());
+        return null;
+    }
+
+    // cuộn tới tin nhắn của kết quả tìm kiếm nếu nó đã có trong danh sách đang hiển thị
+    private void jumpToPendingMessage() {
+        if (pendingJump == null || !pendingJump.getConversationKey().equals(currentConversationKey())) return;
+
+        for (int i = 0; i < timelineItems.size(); i++) {
+            Object item = timelineItems.get(i);
+            String id = item instanceof GroupMessage ? ((GroupMessage) item).get_id() : ((Message) item).get_id();
+            if (pendingJump.getMessageId().equals(id)) {
+                messageListView.scrollTo(i);
+                pendingJump = null;
+                return;
+            }
+        }
+    }
+
+    // đưa thành viên nhóm vào chỉ mục gợi ý người dùng (cũng là nơi tra tên người đã xem tin nhắn nhóm)
+    private void indexGroupMembers(List<Group.GroupMember> groupMembers) {
+        List<User> members = new ArrayList<>();
+        for (Group.GroupMember member : groupMembers) {
+            if (member.getUser() != null) members.add(member.getUser());
+        }
+        contactIndex.addAll(members);
+    }
+
+    // thông tin nhóm không kèm thành viên: tải trang thành viên đầu tiên để hiện tên người đã xem tin nhắn
+    // (nhóm lớn hơn 1 trang thì tên còn lại được lấy từ người gửi các tin nhắn đã tải)
+    private void loadGroupMemberNames(String groupId) {
+        groupService.getGroupMembersPageAsync(groupId, null, null).whenCompleteAsync((page, error) -> {
+            if (error != null) {
+                if (!isCancellation(error)) error.printStackTrace();
+                return;
+            }
+            indexGroupMembers(page.getMembers());
+            if (selectedGroup != null && selectedGroup.get_id().equals(groupId)) {
+                messageListView.refresh();
+            }
+        }, Platform::runLater);
+    }
+
+    // tải id thành viên/admin của nhóm (nếu chưa có) rồi mới chạy action, dùng trước các thao tác cần kiểm tra quyền
+    private void withRoster(Group group, Runnable action) {
+        if (group.getRoster() != null) {
+            action.run();
+            return;
+        }
+        groupService.getRosterAsync(group.get_id()).whenCompleteAsync((roster, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                showAlert("Lỗi", "Không thể tải danh sách thành viên của nhóm: " + AppExecutors.unwrap(error).getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
+            group.setRoster(roster);
+            action.run();
+        }, Platform::runLater);
+    }
+
+    // cập nhật lại id thành viên/admin sau khi đổi vai trò hoặc xóa thành viên (gọi trên luồng nền)
+    private void refreshRoster(Group group) throws IOException {
+        GroupRoster roster = groupService.getRoster(group.get_id());
+        Platform.runLater(() -> group.setRoster(roster));
+    }
+
     // cập nhật giao diện khi tìm kiếm nhóm
     private void performGroupSearch(String searchTerm) {
         // Simple local filter for groups
@@ -746,15 +1216,11 @@ public class HomeController {
         this.selectedUser = null; // cập nhật biến người dùng đang chat về null
 
         groupFromList.setUnreadCount(0);
-        groupListView.refresh();
 
         showChatView();
-        messageContainer.getChildren().clear();
-        Label loadingLabel = new Label("Đang tải thông tin nhóm...");
-        loadingLabel.getStyleClass().add("no-chat-subtitle");
-        messageContainer.getChildren().add(loadingLabel);
+        showTimelinePlaceholder("Đang tải thông tin nhóm...");
 
-        HBox chatHeader = (HBox) ((VBox) messageScrollPane.getParent()).getChildren().get(0);
+        HBox chatHeader = (HBox) ((VBox) messageListView.getParent()).getChildren().get(0);
         chatHeader.setVisible(true);
         chatHeader.setManaged(true);
         chatHeader.getChildren().clear();
@@ -762,44 +1228,40 @@ public class HomeController {
         tempGroupName.getStyleClass().add("chat-header-name");
         chatHeader.getChildren().add(tempGroupName);
 
-        new Thread(() -> {
-            try {
-                // lấy thông tin chi tiết nhóm
-                Group detailedGroup = groupService.getGroupInfo(groupId);
+        // lấy thông tin chi tiết nhóm, hủy lần tải của cuộc trò chuyện trước (nếu chưa xong)
+        startConversationLoad(groupService.getGroupInfoAsync(groupId)).whenCompleteAsync((detailedGroup, error) -> {
+            if (error != null) {
+                if (isCancellation(error)) return;
+                error.printStackTrace();
+                showNoChatView();
+                showAlert("Lỗi", "Đã xảy ra lỗi khi tải dữ liệu nhóm: " + AppExecutors.unwrap(error).getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
 
-                // cập nhật UI ngay sau khi có dữ liệu
-                Platform.runLater(() -> {
-                    if (detailedGroup != null) {
-                        // render dữ liệu đầy đủ
-                        renderSelectedGroupUI(detailedGroup);
-                    } else {
-                        // lỗi
-                        showNoChatView();
-                        showAlert("Lỗi", "Không thể tải thông tin chi tiết của nhóm.", Alert.AlertType.ERROR);
-                    }
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-                Platform.runLater(() -> {
-                    showNoChatView();
-                    showAlert("Lỗi", "Đã xảy ra lỗi khi tải dữ liệu nhóm: " + e.getMessage(), Alert.AlertType.ERROR);
-                });
+            // cập nhật UI ngay sau khi có dữ liệu
+            if (detailedGroup != null) {
+                // render dữ liệu đầy đủ
+                renderSelectedGroupUI(detailedGroup);
+            } else {
+                // lỗi
+                showNoChatView();
+                showAlert("Lỗi", "Không thể tải thông tin chi tiết của nhóm.", Alert.AlertType.ERROR);
             }
-        }).start();
+        }, Platform::runLater);
     }
 
     // logic vẽ giao diện nhóm được chọn để chuẩn bị chat
     private void renderSelectedGroupUI(Group detailedGroup) {
         this.selectedGroup = detailedGroup; // Cập nhật biến instance bằng dữ liệu chi tiết
+        loadGroupMemberNames(detailedGroup.get_id());
 
         // reset số tin chưa đọc về 0
         detailedGroup.setUnreadCount(0);
-        groupListView.refresh();
 
         // tham giao vào phòng chat nhóm
         socketService.joinGroup(detailedGroup.get_id());
 
-        HBox chatHeader = (HBox) ((VBox) messageScrollPane.getParent()).getChildren().get(0);
+        HBox chatHeader = (HBox) ((VBox) messageListView.getParent()).getChildren().get(0);
         chatHeader.setVisible(true);
         chatHeader.setManaged(true);
 
@@ -819,7 +1281,7 @@ public class HomeController {
         menuIcon.setIconSize(20);
         groupMenuBtn.setGraphic(menuIcon);
         groupMenuBtn.getStyleClass().add("icon-button");
-        groupMenuBtn.setOnAction(e -> showGroupMenu(detailedGroup));
+        groupMenuBtn.setOnAction(e -> withRoster(detailedGroup, () -> showGroupMenu(detailedGroup)));
 
         Button closeBtn = new Button();
         FontIcon closeIcon = new FontIcon("mdi2c-close");
@@ -841,109 +1303,114 @@ public class HomeController {
         loadGroupMessages();
     }
 
-    // logic tải tin nhắn nhóm
+    // logic tải tin nhắn nhóm: hiện ngay các tin đã lưu trên máy rồi chỉ tải các tin mới hơn,
+    // nếu chưa có gì trên máy thì tải trang mới nhất từ server
     private void loadGroupMessages() {
         if (selectedGroup == null) return;
 
-        new Thread(() -> {
-            try {
-                groupMessages = groupService.getGroupMessages(selectedGroup.get_id());
-                Platform.runLater(() -> {
-                    // vẽ giao diện khi nhận được danh sách tin nhắn
-                    renderGroupMessages();
+        String groupId = selectedGroup.get_id();
+        String key = ConversationSyncTracker.groupKey(groupId);
+        startConversationLoad(loadCached(key, GroupMessage.class)).whenCompleteAsync((cached, error) -> {
+            if (error != null && isCancellation(error)) return;
+            if (selectedGroup == null || !selectedGroup.get_id().equals(groupId)) return;
 
-                    // cập nhật trạng thái đã xem tin nhắn nhóm
-                    for (GroupMessage msg : groupMessages) {
-                        if (!msg.getSenderId().equals(currentUser.get_id()) && !msg.isSeenBy(currentUser.get_id())) {
-                            socketService.emitSeenGroupMessage(msg.get_id(), selectedGroup.get_id());
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-                Platform.runLater(() -> {
-                    showAlert("Lỗi", "Tải tin nhắn thất bại: " + e.getMessage(), Alert.AlertType.ERROR);
-                });
+            if (error != null || cached.isEmpty()) {
+                if (error != null) error.printStackTrace();
+                loadLatestGroupMessages(groupId);
+                return;
             }
-        }).start();
-    }
-
-
-    // logic vẽ giao diện tin nhắn nhóm
-    private void renderGroupMessages() {
-        messageContainer.getChildren().clear();
-
-        for (GroupMessage msg : groupMessages) {
-            // lặp để vẽ từng tin nhắn
-            boolean isMyMessage = msg.getSenderId().equals(currentUser.get_id());
 
-            HBox messageBox = new HBox(10);
-            messageBox.getStyleClass().add(isMyMessage ? "message-box-right" : "message-box-left");
-
-            VBox messageContent = new VBox(5);
-            messageContent.setMaxWidth(400);
-            messageContent.setFillWidth(false);
+            groupMessages = new ArrayList<>(cached);
+            indexGroupMessages(cached);
+            GroupMessage oldest = cached.get(0);
+            historyCursor = oldest.getCreatedAt() + "_" + oldest.get_id();
+            recordSynced(key, groupMessages, GroupMessage::get_id, GroupMessage::getCreatedAt);
+            renderGroupMessages();
 
-            if (!isMyMessage) {
-                Label senderName = new Label(msg.getSenderName());
-                senderName.getStyleClass().add("message-sender");
-                messageContent.getChildren().add(senderName);
-            }
+            String after = cached.get(cached.size() - 1).getCreatedAt();
+            CompletableFuture<List<GroupMessage>> load = groupService.getGroupMessagesAfterAsync(groupId, after);
+            conversationLoad = load;
+            load.whenCompleteAsync((newer, loadError) -> {
+                if (loadError != null) {
+                    // vẫn hiện các tin đã lưu khi không tải được (ví dụ mất mạng)
+                    if (!isCancellation(loadError)) loadError.printStackTrace();
+                    return;
+                }
+                if (selectedGroup == null || !selectedGroup.get_id().equals(groupId)) return;
+
+                mergeNewer(groupMessages, newer, GroupMessage::get_id, GroupMessage::getCreatedAt,
+                        (current, fresh) -> current.setSeenBy(fresh.getSeenBy()));
+                recordSynced(key, newer, GroupMessage::get_id, GroupMessage::getCreatedAt);
+                cacheSyncedKey = key;
+                cacheGroupMessages(groupId, notIn(groupMessages, cached, newer, GroupMessage::get_id));
+                renderGroupMessages();
+                emitGroupSeen(groupId);
+            }, Platform::runLater);
+        }, Platform::runLater);
+    }
 
-            if (msg.getContent() != null && !msg.getContent().isEmpty()) {
-                Label messageText = new Label(msg.getContent());
-                messageText.getStyleClass().add("message-text");
-                messageText.setWrapText(true);
-                messageContent.getChildren().add(messageText);
+    // tải trang tin nhắn nhóm mới nhất, các trang cũ hơn được tải khi cuộn lên
+    private void loadLatestGroupMessages(String groupId) {
+        startConversationLoad(groupService.getGroupMessagesPageAsync(groupId, null)).whenCompleteAsync((page, error) -> {
+            if (error != null) {
+                if (isCancellation(error)) return;
+                error.printStackTrace();
+                showAlert("Lỗi", "Tải tin nhắn thất bại: " + AppExecutors.unwrap(error).getMessage(), Alert.AlertType.ERROR);
+                return;
             }
+            // người dùng đã chuyển sang cuộc trò chuyện khác
+            if (selectedGroup == null || !selectedGroup.get_id().equals(groupId)) return;
 
-            Label timeLabel = new Label(formatTime(msg.getCreatedAt()));
-            timeLabel.getStyleClass().add("message-time");
-            messageContent.getChildren().add(timeLabel);
-
-            if (isMyMessage) {
-                Node myAvatar = createAvatarNode(currentUser.getAvatar(), 40, 24);
+            groupMessages = new ArrayList<>(page.getMessages());
+            setHistoryCursor(page);
 
-                VBox contentWithStatus = new VBox(2);
-                contentWithStatus.setAlignment(Pos.BOTTOM_RIGHT);
-                contentWithStatus.getChildren().add(messageContent);
+            // cập nhật mốc đồng bộ của nhóm
+            String key = ConversationSyncTracker.groupKey(groupId);
+            recordSynced(key, groupMessages, GroupMessage::get_id, GroupMessage::getCreatedAt);
+            cacheSyncedKey = key;
+            cacheGroupMessages(groupId, groupMessages);
 
-                // kiểm tra trạng thái đã xem các tin
-                if (msg.getSeenBy() != null && !msg.getSeenBy().isEmpty()) {
-                    List<String> seenNames = new ArrayList<>();
-                    for (String id : msg.getSeenBy()) {
-                        if (!id.equals(currentUser.get_id())) {
-                            seenNames.add(getUserNameById(id));
-                        }
-                    }
-
-                    if (!seenNames.isEmpty()) {
-                        String text = String.join(", ", seenNames);
-                        Label seenLabel = new Label(text + " đã xem");
-                        seenLabel.getStyleClass().add("message-status");
-                        seenLabel.setStyle("-fx-font-size: 10px;");
-                        contentWithStatus.getChildren().add(seenLabel);
-                    } else {
-                        Label sentLabel = new Label("Đã gửi");
-                        sentLabel.getStyleClass().add("message-status");
-                        contentWithStatus.getChildren().add(sentLabel);
-                    }
-                } else {
-                    Label sentLabel = new Label("Đã gửi");
-                    sentLabel.getStyleClass().add("message-status");
-                    contentWithStatus.getChildren().add(sentLabel);
-                }
+            // vẽ giao diện khi nhận được danh sách tin nhắn
+            renderGroupMessages();
+            emitGroupSeen(groupId);
+        }, Platform::runLater);
+    }
 
-                messageBox.getChildren().addAll(contentWithStatus, myAvatar);
-            } else {
-                Node senderAvatar = createAvatarNode(msg.getSenderAvatar(), 40, 24);
-                messageBox.getChildren().addAll(senderAvatar, messageContent);
+    // cập nhật trạng thái đã xem tin nhắn nhóm: nếu còn tin của người khác chưa xem thì gửi 1 mốc
+    // "đã đọc tới tin mới nhất", server đánh dấu cả khoảng và phát lại 1 sự kiện cho cả nhóm
+    private void emitGroupSeen(String groupId) {
+        String me = currentUser.get_id();
+        String newestId = null;
+        boolean unseen = false;
+        for (int i = groupMessages.size() - 1; i >= 0; i--) {
+            GroupMessage msg = groupMessages.get(i);
+            // tin tạm chưa có ack thì chưa có id trên server
+            if (newestId == null && msg.get_id() != null && !msg.get_id().equals(msg.getClientId())) {
+                newestId = msg.get_id();
             }
-
-            messageContainer.getChildren().add(messageBox);
+            if (!msg.getSenderId().equals(me)) {
+                // mốc đã đọc chỉ tăng dần: gặp tin đã xem thì các tin cũ hơn cũng đã xem
+                if (msg.isSeenBy(me)) break;
+                unseen = true;
+            }
+            if (unseen && newestId != null) break;
+        }
+        if (unseen && newestId != null) {
+            socketService.emitGroupReadUpTo(groupId, newestId);
         }
+    }
 
-        messageScrollPane.setVvalue(1.0);
+    // createdAt mới hơn mốc (thiếu thời gian thì coi như không mới hơn)
+    private static boolean isAfter(String createdAt, Instant upTo) {
+        if (upTo == null) return false;
+        Instant time = parseInstant(createdAt);
+        return time != null && time.isAfter(upTo);
+    }
+
+
+    // logic vẽ giao diện tin nhắn nhóm
+    private void renderGroupMessages() {
+        syncTimeline(groupMessages);
     }
 
     // mở giao diện tạo nhóm (gọi khi nút tạo nhóm được ấn)
@@ -1007,31 +1474,28 @@ public class HomeController {
             }
         });
 
-        // logic thanh tìm kiếm người thêm vào nhóm
+        // logic thanh tìm kiếm người thêm vào nhóm (tìm trên server sau khi ngừng gõ 500ms)
+        RateLimiter memberSearch = RateLimiter.debounce(500, AppExecutors.io());
         memberSearchField.textProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal.trim().isEmpty()) {
+                memberSearch.cancel();
                 searchResultsView.getItems().clear();
                 return;
             }
 
-            if (searchDebounceTimer != null) searchDebounceTimer.cancel();
-            searchDebounceTimer = new Timer();
-            searchDebounceTimer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    try {
-                        List<User> results = chatService.searchUser(newVal.trim());
+            memberSearch.submit(() -> {
+                try {
+                    List<User> results = chatService.searchUser(newVal.trim());
 
-                        // lọc những người đã chọn và chính mình sau khi lấy kết quả tìm kiếm
-                        List<User> filteredResults = results.stream()
-                                .filter(u -> !selectedMembers.contains(u) && !u.get_id().equals(currentUser.get_id()))
-                                .collect(Collectors.toList());
-                        Platform.runLater(() -> searchResultsView.getItems().setAll(filteredResults));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+                    // lọc những người đã chọn và chính mình sau khi lấy kết quả tìm kiếm
+                    List<User> filteredResults = results.stream()
+                            .filter(u -> !selectedMembers.contains(u) && !u.get_id().equals(currentUser.get_id()))
+                            .collect(Collectors.toList());
+                    Platform.runLater(() -> searchResultsView.getItems().setAll(filteredResults));
+                } catch (Exception e) {
+                    e.printStackTrace();
                 }
-            }, 500);
+            });
         });
 
         memberSection.getChildren().addAll(membersLabel, memberSearchField, searchResultsView, selectedMembersScrollPane);
@@ -1051,7 +1515,7 @@ public class HomeController {
         // logic thực hiện khi người dùng nhấn ok (để tạo nhóm) hoặc thoát (để hủy tạo nhóm)
         dialog.setResultConverter(dialogButton -> {
             if (dialogButton == ButtonType.OK) {
-                new Thread(() -> {
+                AppExecutors.run(() -> {
                     try {
                         List<String> memberIds = selectedMembers.stream().map(User::get_id).collect(Collectors.toList());
                         groupService.createGroup(nameField.getText().trim(), descriptionArea.getText().trim(), memberIds);
@@ -1061,7 +1525,7 @@ public class HomeController {
                     } catch (Exception e) {
                         Platform.runLater(() -> showAlert("Lỗi tạo nhóm", e.getMessage(), Alert.AlertType.ERROR));
                     }
-                }).start();
+                });
             }
             return null;
         });
@@ -1136,7 +1600,7 @@ public class HomeController {
         // kiểm tra ownerId không phải null TRƯỚC KHI gọi .equals()
         boolean isOwner = group.isUserOwner(currentUserId);
 
-        // hàm isUserAdmin đã an toàn vì nó xử lý danh sách members
+        // quyền admin được kiểm tra qua id thành viên/admin đã tải trước khi mở menu
         boolean isAdmin = group.isUserAdmin(currentUserId);
 
         // nút sửa thông tin (dành cho Admin hoặc Owner)
@@ -1144,7 +1608,7 @@ public class HomeController {
             Button editGroupBtn = new Button("Chỉnh sửa");
             editGroupBtn.setOnAction(e -> {
                 // khi nhấn nút sửa, lấy thông tin đầy đủ và gọi hàm vẽ giao diện
-                new Thread(() -> {
+                AppExecutors.run(() -> {
                     try {
                         Group detailedGroup = groupService.getGroupInfo(group.get_id());
                         Platform.runLater(() -> {
@@ -1156,7 +1620,7 @@ public class HomeController {
                     } catch (Exception ex) {
                         Platform.runLater(() -> showAlert("Lỗi", "Không thể lấy thông tin chi tiết của nhóm.", Alert.AlertType.ERROR));
                     }
-                }).start();
+                });
             });
             actionButtons.getChildren().add(editGroupBtn);
         }
@@ -1176,7 +1640,7 @@ public class HomeController {
             Alert confirmation = new Alert(Alert.AlertType.CONFIRMATION, confirmationText, ButtonType.YES, ButtonType.NO);
             confirmation.showAndWait().ifPresent(response -> {
                 if (response == ButtonType.YES) {
-                    new Thread(() -> {
+                    AppExecutors.run(() -> {
                         try {
                             groupService.deleteGroup(group.get_id());
                             Platform.runLater(() -> {
@@ -1187,7 +1651,7 @@ public class HomeController {
                         } catch (Exception ex) {
                             Platform.runLater(() -> showAlert("Lỗi", "Không thể thực hiện hành động này: " + ex.getMessage(), Alert.AlertType.ERROR));
                         }
-                    }).start();
+                    });
                 }
             });
         });
@@ -1211,27 +1675,26 @@ public class HomeController {
         Label headerLabel = new Label("Danh sách thành viên");
         headerLabel.getStyleClass().add("section-label");
 
+        TextField memberSearch = new TextField();
+        memberSearch.setPromptText("Tìm thành viên...");
+        memberSearch.getStyleClass().add("search-box");
+
         ListView<Group.GroupMember> membersListView = new ListView<>();
         membersListView.setCellFactory(lv -> new GroupMemberCell(group));
         membersListView.getStyleClass().add("group-member-list");
+        membersListView.setPlaceholder(new Label("Không có thành viên phù hợp"));
 
-        // lấy danh sách thành viên chi tiết và gọi hàm vẽ giao diện
-        new Thread(() -> {
-            try {
-                // ta cần thông tin chi tiết của User trong GroupMember
-                Group detailedGroup = groupService.getGroupInfo(group.get_id());
-                Platform.runLater(() -> {
-                    membersListView.getItems().setAll(detailedGroup.getMembers());
-                    group.setMembers(detailedGroup.getMembers());
-                });
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }).start();
+        // thành viên được tải theo trang (cuộn gần cuối thì tải tiếp), tìm kiếm do server lọc
+        GroupMemberPager pager = new GroupMemberPager(group.get_id(), membersListView);
+        prefetchNearEnd(membersListView, MEMBERS_PREFETCH_ROWS, pager::loadMore);
+        RateLimiter memberSearchDebounce = RateLimiter.debounce(300, Platform::runLater);
+        memberSearch.textProperty().addListener((obs, oldVal, newVal) ->
+                memberSearchDebounce.submit(() -> pager.reload(newVal)));
+        pager.reload(null);
 
         HBox memberActions = new HBox(10);
 
-        content.getChildren().addAll(addMemberBtn, headerLabel, membersListView, memberActions);
+        content.getChildren().addAll(addMemberBtn, headerLabel, memberSearch, membersListView, memberActions);
         VBox.setVgrow(membersListView, Priority.ALWAYS);
         return content;
     }
@@ -1281,8 +1744,7 @@ public class HomeController {
 
                     nameLabel.setText(user.getFullName());
 
-                    boolean isMember = group.getMembers().stream()
-                            .anyMatch(m -> m.getUser() != null && m.getUser().get_id().equals(user.get_id()));
+                    boolean isMember = group.isMember(user.get_id());
 
                     checkBox.setOnAction(null); // Clear old listener
 
@@ -1311,14 +1773,14 @@ public class HomeController {
         // lắng nghe sự thay đổi nội dung nhập liệu của thanh tìm kiếm để vẽ lại danh sách người dùng
         searchField.textProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal.length() >= 1) {
-                new Thread(() -> {
+                AppExecutors.run(() -> {
                     try {
                         List<User> results = chatService.searchUser(newVal);
                         Platform.runLater(() -> userListView.getItems().setAll(results));
                     } catch (IOException e) {
                         e.printStackTrace();
                     }
-                }).start();
+                });
             } else {
                 userListView.getItems().clear();
             }
@@ -1334,7 +1796,7 @@ public class HomeController {
                 return;
             }
 
-            new Thread(() -> {
+            AppExecutors.run(() -> {
                 try {
                     List<String> idsObj = new ArrayList<>(selectedUserIds);
                     boolean success = groupService.addMembers(group.get_id(), idsObj);
@@ -1359,7 +1821,7 @@ public class HomeController {
                     Platform.runLater(() -> showAlert("Lỗi", "Thêm thành viên thất bại: " + ex.getMessage(),
                             Alert.AlertType.ERROR));
                 }
-            }).start();
+            });
         });
 
         content.getChildren().addAll(searchLabel, searchField, userListView, confirmBtn);
@@ -1425,7 +1887,7 @@ public class HomeController {
 
         try {
             if (initialAvatarUrl != null && !initialAvatarUrl.isEmpty() && initialAvatarUrl.startsWith("http")) {
-                avatarPreview.setImage(new Image(initialAvatarUrl, true));
+                setCachedImage(avatarPreview, initialAvatarUrl, 120);
             } else {
                 throw new Exception("Avatar URL không hợp lệ hoặc rỗng.");
             }
@@ -1501,7 +1963,7 @@ public class HomeController {
 
     // logic upload và cập nhật thông tin nhóm trên một luồng riêng
     private void handleUpdateGroup(Group group, String newName, String newDesc, File newAvatarFile) {
-        new Thread(() -> {
+        AppExecutors.run(() -> {
             try {
                 String finalAvatarUrl = group.getAvatar();
 
@@ -1528,7 +1990,7 @@ public class HomeController {
                 ex.printStackTrace();
                 Platform.runLater(() -> showAlert("Lỗi", "Cập nhật thất bại: " + ex.getMessage(), Alert.AlertType.ERROR));
             }
-        }).start();
+        });
     }
 
     // hàm hiển thị giao diện no chat view (không có người dùng/nhóm được chọn)
@@ -1552,7 +2014,7 @@ public class HomeController {
         if (typingIndicator != null) {
             typingIndicator.setVisible(false);
         }
-        messageContainer.getChildren().clear();
+        timelineItems.clear();
     }
 
     // hàm hiển thị giao diện chat view (có người dùng/nhóm được chọn)
@@ -1576,34 +2038,139 @@ public class HomeController {
     }
 
     // hàm tải người dùng
+    // tải trang đầu của danh sách chat (mới hoạt động nhất), các trang sau được tải khi cuộn tới
     private void loadUsers() {
-        new Thread(() -> {
-            try {
-                allUsers = chatService.getUsers();
-                Platform.runLater(() -> {
-                    // lặp qua từng người cập nhật trạng thái onl/off
-                    for (User u : allUsers) {
-                        if (onlineUserIds.contains(u.get_id())) {
-                            u.setOnline(true);
-                        }
-                        u.updateStatusPreview();
+        cancelLoad(usersLoad);
+        CompletableFuture<ConversationPage> load = chatService.getUsersPageAsync(null);
+        usersLoad = load;
+        load.whenCompleteAsync((page, error) -> {
+            if (error != null) {
+                if (isCancellation(error)) return;
+                boot.mark("users");
+                error.printStackTrace();
+                showAlert("Lỗi", "Tải người dùng thất bại: " + AppExecutors.unwrap(error).getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
+
+            // đối chiếu với danh sách đang hiện (có thể được vẽ từ trạng thái đã lưu):
+            // người đã có giữ nguyên đối tượng và chỉ được cập nhật dữ liệu, listener của registry vẽ lại danh sách 1 lần
+            // nếu còn trang sau thì những người chưa tải tới vẫn được giữ ở cuối danh sách cho tới khi cuộn tới
+            List<User> fresh = new ArrayList<>(page.getUsers());
+            unconfirmedUserIds.clear();
+            if (page.hasMore()) {
+                Set<String> loaded = page.getUsers().stream().map(User::get_id).collect(Collectors.toSet());
+                for (User u : userRegistry.ordered()) {
+                    if (!loaded.contains(u.get_id())) {
+                        fresh.add(u);
+                        unconfirmedUserIds.add(u.get_id());
                     }
+                }
+            }
+            List<User> merged = userRegistry.reconcile(fresh, User::updateFrom);
+            usersCursor = page.hasMore() ? page.getNextCursor() : null;
+
+            prepareLoadedUsers(merged);
+            searchStatusLabel.setVisible(false);
+            boot.mark("users");
+            loadRemainingUsersIfFiltering();
+        }, Platform::runLater);
+    }
 
-                    userListView.getItems().clear();
-                    userListView.getItems().addAll(allUsers);
+    // gọi loadMore khi dòng cuối đang hiện cách cuối danh sách không quá rows dòng,
+    // kiểm tra cả khi cuộn lẫn sau mỗi lần sắp xếp lại giao diện (trang đầu chưa đủ lấp đầy danh sách thì không cuộn được)
+    private static void prefetchNearEnd(ListView<?> list, int rows, Runnable loadMore) {
+        list.skinProperty().addListener((obs, oldSkin, newSkin) -> {
+            Node node = list.lookup(".virtual-flow");
+            if (!(node instanceof VirtualFlow)) return;
+            VirtualFlow<?> flow = (VirtualFlow<?>) node;
+            Runnable check = () -> {
+                IndexedCell<?> last = flow.getLastVisibleCell();
+                if (last != null && last.getIndex() >= list.getItems().size() - rows) {
+                    loadMore.run();
+                }
+            };
+            flow.positionProperty().addListener((o, oldPos, newPos) -> check.run());
+            flow.needsLayoutProperty().addListener((o, wasNeeded, needed) -> {
+                if (!needed) check.run();
+            });
+        });
+    }
 
-                    // vẽ lại toàn bộ danh sách người dùng sau khi chuẩn bị
-                    updateListViewBasedOnFilterAndSearch();
-                    updateOnlineCountLabel();
-                    searchStatusLabel.setVisible(false);
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-                Platform.runLater(() -> {
-                    showAlert("Lỗi", "Tải người dùng thất bại: " + e.getMessage(), Alert.AlertType.ERROR);
-                });
+    // lọc chỉ người online hoặc tìm trên máy chỉ thấy các trang đã tải (danh sách có thể không đủ dài để cuộn):
+    // tải tiếp các trang sau cho tới hết khi đang lọc/tìm
+    private void loadRemainingUsersIfFiltering() {
+        boolean onlineOnly = onlineOnlyCheck != null && onlineOnlyCheck.isSelected();
+        boolean searching = searchField != null && !searchField.getText().trim().isEmpty();
+        if (onlineOnly || searching) loadMoreUsers();
+    }
+
+    // tải trang tiếp theo của danh sách chat khi người dùng cuộn gần tới cuối
+    private void loadMoreUsers() {
+        if (usersCursor == null || (usersLoad != null && !usersLoad.isDone())) return;
+
+        CompletableFuture<ConversationPage> load = chatService.getUsersPageAsync(usersCursor);
+        usersLoad = load;
+        load.whenCompleteAsync((page, error) -> {
+            if (error != null) {
+                if (!isCancellation(error)) error.printStackTrace();
+                return;
             }
-        }).start();
+            prepareLoadedUsers(userRegistry.appendAll(page.getUsers(), User::updateFrom));
+            for (User u : page.getUsers()) {
+                unconfirmedUserIds.remove(u.get_id());
+            }
+            usersCursor = page.hasMore() ? page.getNextCursor() : null;
+
+            // đã tải hết: người còn lại từ trạng thái đã lưu không còn trong danh sách chat
+            if (usersCursor == null) {
+                for (String id : unconfirmedUserIds) {
+                    userRegistry.remove(id);
+                }
+                unconfirmedUserIds.clear();
+            }
+
+            // đang tìm: thêm người vừa tải khớp từ khóa vào kết quả đang hiện (không có ai mới thì giữ nguyên,
+            // tránh báo "không tìm thấy" khi server vẫn đang tìm)
+            String searchTerm = searchField != null ? searchField.getText().trim() : "";
+            if (!searchTerm.isEmpty() && currentTab.equals("users")) {
+                List<User> found = ContactIndex.merge(contactIndex.search(searchTerm, USER_SEARCH_LIMIT), latestSearchResults);
+                if (found.size() > latestSearchResults.size()) showUserSearchResults(found);
+            }
+            loadRemainingUsersIfFiltering();
+        }, Platform::runLater);
+    }
+
+    // cập nhật trạng thái onl/off và đưa vào chỉ mục tìm kiếm các người dùng vừa tải
+    private void prepareLoadedUsers(List<User> users) {
+        for (User u : users) {
+            u.setOnline(onlineUserIds.contains(u.get_id()));
+            u.updateStatusPreview();
+        }
+        contactIndex.addAll(users);
+    }
+
+    // vẽ thanh bên từ trạng thái đã lưu, trả về false nếu chưa có gì được lưu
+    private boolean restoreSidebarSnapshot() {
+        SidebarSnapshot.Data data = sidebarSnapshot.load();
+        if (data == null || (data.getUsers().isEmpty() && data.getGroups().isEmpty())) return false;
+
+        // trạng thái online lấy từ socket, không dùng dữ liệu cũ
+        for (User u : data.getUsers()) {
+            u.updateStatusPreview();
+        }
+        for (Group g : data.getGroups()) {
+            g.updateStatusPreview();
+        }
+        userRegistry.setAll(data.getUsers());
+        groupRegistry.setAll(data.getGroups());
+        contactIndex.addAll(data.getUsers());
+        return true;
+    }
+
+    private void saveSidebarSnapshot() {
+        if (sidebarSnapshot != null) {
+            sidebarSnapshot.save(userRegistry.ordered(), groupRegistry.ordered());
+        }
     }
 
     // logic hàm trợ giúp vẽ lại danh sách sau khi tải hoặc tìm kiếm người dùng
@@ -1615,7 +2182,7 @@ public class HomeController {
             if (!currentSearchTerm.isEmpty() && !latestSearchResults.isEmpty()) {
                 usersToFilter = new ArrayList<>(latestSearchResults);
             } else if (currentSearchTerm.isEmpty()) {
-                usersToFilter = new ArrayList<>(this.allUsers);
+                usersToFilter = userRegistry.ordered();
             } else {
                 userListView.getItems().clear();
                 searchStatusLabel.setText("Không tìm thấy người dùng.");
@@ -1653,31 +2220,67 @@ public class HomeController {
         });
     }
 
-    // hàm thực thi tìm kiếm và quản lý giao diện liên quan
-    private void performSearch(String searchTearm) {
-        userListView.getItems().clear();
-        userListView.refresh();
-        searchStatusLabel.setText("Đang tìm kiếm...");
-        searchStatusLabel.setVisible(true);
+    // hiện ngay kết quả tìm người dùng từ dữ liệu trên máy (người đã chat, thành viên nhóm, kết quả tìm trước đó
+    // và kết quả server đã lưu của từ khóa/tiền tố của nó), trả về true nếu vẫn cần hỏi server
+    private boolean performSearch(String searchTerm) {
+        // kết quả server của từ khóa cũ không còn cần nữa
+        cancelLoad(searchLoad);
+
+        List<User> local = contactIndex.search(searchTerm, USER_SEARCH_LIMIT);
+        local.removeIf(u -> currentUser != null && u.get_id().equals(currentUser.get_id()));
+        List<User> cached = contactIndex.cachedServerResults(searchTerm);
+        if (cached != null) {
+            showUserSearchResults(ContactIndex.merge(local, cached));
+            return false;
+        }
+        if (local.size() >= LOCAL_USER_RESULTS_ENOUGH) {
+            showUserSearchResults(local);
+            return false;
+        }
 
-        new Thread(() -> {
-            try {
-                List<User> searchResults = chatService.searchUser(searchTearm);
-                Platform.runLater(() -> {
-                    latestSearchResults.clear();
-                    latestSearchResults.addAll(searchResults);
-                    updateListViewBasedOnFilterAndSearch();
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-                Platform.runLater(() -> {
-                    userListView.getItems().clear();
-                    latestSearchResults.clear();
+        if (local.isEmpty()) {
+            latestSearchResults.clear();
+            userListView.getItems().clear();
+            searchStatusLabel.setText("Đang tìm kiếm...");
+            searchStatusLabel.setVisible(true);
+        } else {
+            showUserSearchResults(local);
+        }
+        return true;
+    }
+
+    // hỏi server khi kết quả trên máy chưa đủ, gộp kết quả server vào sau kết quả trên máy
+    private void performServerSearch(String searchTerm) {
+        cancelLoad(searchLoad);
+        CompletableFuture<List<User>> load = chatService.searchUserAsync(searchTerm);
+        searchLoad = load;
+        load.whenCompleteAsync((searchResults, error) -> {
+            if (error != null) {
+                if (isCancellation(error)) return;
+                error.printStackTrace();
+                // vẫn giữ kết quả trên máy nếu có
+                if (latestSearchResults.isEmpty()) {
                     searchStatusLabel.setText("Lỗi khi tìm kiếm!");
                     searchStatusLabel.setVisible(true);
-                });
+                }
+                return;
             }
-        }).start();
+
+            contactIndex.putServerResults(searchTerm, searchResults);
+            if (!searchField.getText().trim().equals(searchTerm)) return;
+            showUserSearchResults(ContactIndex.merge(contactIndex.search(searchTerm, USER_SEARCH_LIMIT), searchResults));
+        }, Platform::runLater);
+    }
+
+    // hiện danh sách kết quả tìm người dùng, dùng đối tượng đang có ở thanh bên (nếu có) để giữ trạng thái online/chưa đọc
+    private void showUserSearchResults(List<User> results) {
+        latestSearchResults.clear();
+        for (User user : results) {
+            if (currentUser != null && user.get_id().equals(currentUser.get_id())) continue;
+            User known = userRegistry.get(user.get_id());
+            latestSearchResults.add(known != null ? known : user);
+        }
+        updateListViewBasedOnFilterAndSearch();
     }
 
     // logic thực hiện khi chọn người dùng
@@ -1686,7 +2289,6 @@ public class HomeController {
         this.selectedGroup = null; // cập nhật biến nhóm đã chọn về null
 
         user.setUnreadCount(0);
-        userListView.refresh();
         socketService.emitSeenMessage(user.get_id());
 
         // vẽ giao diện chat
@@ -1724,96 +2326,338 @@ public class HomeController {
         });
     }
 
-    // logic tải tin nhắn cá nhân
+    // logic tải tin nhắn cá nhân: hiện ngay các tin đã lưu trên máy rồi chỉ tải các tin mới hơn,
+    // nếu chưa có gì trên máy thì tải trang mới nhất từ server
     private void loadMessages() {
         if (selectedUser == null) return;
 
-        new Thread(() -> {
-            try {
-                messages = chatService.getMessages(selectedUser.get_id());
-                Platform.runLater(this::renderMessages);
-            } catch (Exception e) {
-                e.printStackTrace();
-                Platform.runLater(() -> showAlert("Lỗi", "Tải tin nhắn thất bại: " + e.getMessage(), Alert.AlertType.ERROR));
+        String friendId = selectedUser.get_id();
+        String key = ConversationSyncTracker.directKey(friendId);
+        showTimelinePlaceholder("Đang tải tin nhắn...");
+        startConversationLoad(loadCached(key, Message.class)).whenCompleteAsync((cached, error) -> {
+            if (error != null && isCancellation(error)) return;
+            if (selectedUser == null || !selectedUser.get_id().equals(friendId)) return;
+
+            if (error != null || cached.isEmpty()) {
+                if (error != null) error.printStackTrace();
+                loadLatestMessages(friendId);
+                return;
+            }
+
+            messages = new ArrayList<>(cached);
+            indexMessages(cached);
+            Message oldest = cached.get(0);
+            historyCursor = oldest.getCreatedAt() + "_" + oldest.get_id();
+            recordSynced(key, messages, Message::get_id, Message::getCreatedAt);
+            renderMessages();
+
+            String after = cached.get(cached.size() - 1).getCreatedAt();
+            CompletableFuture<List<Message>> load = chatService.getMessagesAfterAsync(friendId, after);
+            conversationLoad = load;
+            load.whenCompleteAsync((newer, loadError) -> {
+                if (loadError != null) {
+                    // vẫn hiện các tin đã lưu khi không tải được (ví dụ mất mạng)
+                    if (!isCancellation(loadError)) loadError.printStackTrace();
+                    return;
+                }
+                if (selectedUser == null || !selectedUser.get_id().equals(friendId)) return;
+
+                mergeNewer(messages, newer, Message::get_id, Message::getCreatedAt,
+                        (current, fresh) -> current.setSeenBy(fresh.getSeenBy()));
+                recordSynced(key, newer, Message::get_id, Message::getCreatedAt);
+                cacheSyncedKey = key;
+                cacheMessages(friendId, notIn(messages, cached, newer, Message::get_id));
+                renderMessages();
+            }, Platform::runLater);
+        }, Platform::runLater);
+    }
+
+    // tải trang tin nhắn mới nhất, các trang cũ hơn được tải khi cuộn lên
+    private void loadLatestMessages(String friendId) {
+        startConversationLoad(chatService.getMessagesPageAsync(friendId, null)).whenCompleteAsync((page, error) -> {
+            if (error != null) {
+                if (isCancellation(error)) return;
+                error.printStackTrace();
+                showAlert("Lỗi", "Tải tin nhắn thất bại: " + AppExecutors.unwrap(error).getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
+            // người dùng đã chuyển sang cuộc trò chuyện khác
+            if (selectedUser == null || !selectedUser.get_id().equals(friendId)) return;
+
+            messages = new ArrayList<>(page.getMessages());
+            setHistoryCursor(page);
+
+            // cập nhật mốc đồng bộ của cuộc trò chuyện
+            String key = ConversationSyncTracker.directKey(friendId);
+            recordSynced(key, messages, Message::get_id, Message::getCreatedAt);
+            cacheSyncedKey = key;
+            cacheMessages(friendId, messages);
+
+            renderMessages();
+        }, Platform::runLater);
+    }
+
+    private <T> CompletableFuture<List<T>> loadCached(String key, Class<T> type) {
+        if (messageCache == null) return CompletableFuture.completedFuture(new ArrayList<>());
+        return messageCache.load(key, type);
+    }
+
+    // cập nhật mốc đồng bộ của cuộc trò chuyện theo các tin đã có
+    private <T> void recordSynced(String key, List<T> list, Function<T, String> idOf, Function<T, String> createdAtOf) {
+        ConversationSyncTracker tracker = socketService.getSyncTracker();
+        tracker.touch(key);
+        for (T msg : list) {
+            tracker.record(key, idOf.apply(msg), createdAtOf.apply(msg));
+        }
+    }
+
+    // gộp các tin mới tải về vào danh sách đang hiển thị: tin đã có thì cập nhật, tin chưa có thì thêm vào,
+    // sau đó sắp xếp lại theo thời gian (tin nhận qua socket trong lúc chờ tải có thể mới hơn tin tải về)
+    private static <T> void mergeNewer(List<T> current, List<T> newer, Function<T, String> idOf,
+                                       Function<T, String> createdAtOf, BiConsumer<T, T> update) {
+        Map<String, T> byId = new HashMap<>();
+        for (T msg : current) {
+            byId.put(idOf.apply(msg), msg);
+        }
+
+        boolean added = false;
+        for (T msg : newer) {
+            T existing = byId.get(idOf.apply(msg));
+            if (existing != null) {
+                update.accept(existing, msg);
+            } else {
+                current.add(msg);
+                added = true;
+            }
+        }
+        if (added) {
+            current.sort(Comparator.comparing(msg -> parseInstant(createdAtOf.apply(msg)),
+                    Comparator.nullsLast(Comparator.naturalOrder())));
+        }
+    }
+
+    // các tin cần ghi thêm vào cache sau khi đồng bộ: tin vừa tải về và các tin chưa có trong cache
+    private static <T> List<T> notIn(List<T> current, List<T> cached, List<T> newer, Function<T, String> idOf) {
+        Set<String> cachedIds = new HashSet<>();
+        for (T msg : cached) {
+            cachedIds.add(idOf.apply(msg));
+        }
+        List<T> result = new ArrayList<>(newer);
+        for (T msg : current) {
+            if (!cachedIds.contains(idOf.apply(msg))) {
+                result.add(msg);
+            }
+        }
+        return result;
+    }
+
+    private static Instant parseInstant(String createdAt) {
+        if (createdAt == null) return null;
+        try {
+            return Instant.parse(createdAt);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // ghi các tin đã được server xác nhận của cuộc trò chuyện đang mở vào cache (bỏ qua tin tạm chưa có ack)
+    private void cacheMessages(String friendId, List<Message> list) {
+        indexMessages(list);
+        String key = ConversationSyncTracker.directKey(friendId);
+        if (messageCache == null || !key.equals(cacheSyncedKey)) return;
+
+        List<Message> confirmed = new ArrayList<>();
+        for (Message msg : list) {
+            if (msg.get_id() != null && !msg.get_id().equals(msg.getClientId())) {
+                confirmed.add(msg);
             }
-        }).start();
+        }
+        messageCache.append(key, confirmed);
+    }
+
+    private void cacheGroupMessages(String groupId, List<GroupMessage> list) {
+        indexGroupMessages(list);
+        String key = ConversationSyncTracker.groupKey(groupId);
+        if (messageCache == null || !key.equals(cacheSyncedKey)) return;
+
+        List<GroupMessage> confirmed = new ArrayList<>();
+        for (GroupMessage msg : list) {
+            if (msg.get_id() != null && !msg.get_id().equals(msg.getClientId())) {
+                confirmed.add(msg);
+            }
+        }
+        messageCache.append(key, confirmed);
+    }
+
+    // đưa tin nhắn vào chỉ mục tìm kiếm trên máy (tin tạm và tin đã có cùng nội dung được bỏ qua)
+    private void indexMessages(List<Message> list) {
+        if (searchIndex != null) searchIndex.addMessages(list);
+    }
+
+    private void indexGroupMessages(List<GroupMessage> list) {
+        if (searchIndex != null) searchIndex.addGroupMessages(list);
+    }
+
+    // bắt đầu tải dữ liệu của cuộc trò chuyện mới, hủy lần tải của cuộc trò chuyện trước (nếu chưa xong)
+    private <T> CompletableFuture<T> startConversationLoad(CompletableFuture<T> load) {
+        cancelLoad(conversationLoad);
+        cancelLoad(historyLoad);
+        historyCursor = null;
+        cacheSyncedKey = null;
+        conversationLoad = load;
+        return load;
+    }
+
+    private void setHistoryCursor(MessagePage<?> page) {
+        historyCursor = page.hasMore() ? page.getNextCursor() : null;
+    }
+
+    // tải trước trang tin nhắn cũ hơn khi người dùng cuộn gần tới đầu cuộc trò chuyện
+    private void loadOlderMessages() {
+        if (historyCursor == null || (historyLoad != null && !historyLoad.isDone())) return;
+
+        if (selectedUser != null) {
+            String friendId = selectedUser.get_id();
+            CompletableFuture<MessagePage<Message>> load = chatService.getMessagesPageAsync(friendId, historyCursor);
+            historyLoad = load;
+            load.whenCompleteAsync((page, error) -> {
+                if (error != null) {
+                    if (!isCancellation(error)) error.printStackTrace();
+                    return;
+                }
+                if (selectedUser == null || !selectedUser.get_id().equals(friendId)) return;
+
+                messages.addAll(0, page.getMessages());
+                prependTimeline(page.getMessages());
+                setHistoryCursor(page);
+                cacheMessages(friendId, page.getMessages());
+            }, Platform::runLater);
+        } else if (selectedGroup != null) {
+            String groupId = selectedGroup.get_id();
+            CompletableFuture<MessagePage<GroupMessage>> load = groupService.getGroupMessagesPageAsync(groupId, historyCursor);
+            historyLoad = load;
+            load.whenCompleteAsync((page, error) -> {
+                if (error != null) {
+                    if (!isCancellation(error)) error.printStackTrace();
+                    return;
+                }
+                if (selectedGroup == null || !selectedGroup.get_id().equals(groupId)) return;
+
+                groupMessages.addAll(0, page.getMessages());
+                prependTimeline(page.getMessages());
+                setHistoryCursor(page);
+                cacheGroupMessages(groupId, page.getMessages());
+            }, Platform::runLater);
+        }
+    }
+
+    private static void cancelLoad(CompletableFuture<?> load) {
+        if (load != null && !load.isDone()) {
+            load.cancel(true);
+        }
+    }
+
+    // lỗi do lần tải bị hủy (không cần báo cho người dùng)
+    private static boolean isCancellation(Throwable error) {
+        return AppExecutors.unwrap(error) instanceof CancellationException;
     }
 
     // logic render tin nhắn lên giao diện chat
     private void renderMessages() {
-        messageContainer.getChildren().clear();
-
-        for (int i = 0; i < messages.size(); i++) {
-            Message message = messages.get(i);
-            boolean isMyMessage = message.getSenderId().equals(currentUser.get_id());
+        syncTimeline(messages);
+    }
 
-            HBox messageBox = new HBox(10);
-            messageBox.getStyleClass().add(isMyMessage ? "message-box-right" : "message-box-left");
+    // đồng bộ danh sách tin nhắn đang hiển thị với dữ liệu:
+    // nếu chỉ có tin mới nối vào cuối thì chỉ thêm phần đuôi, ngược lại thay toàn bộ danh sách
+    // ListView chỉ tạo/cập nhật cell cho các dòng đang hiển thị nên chi phí không phụ thuộc độ dài lịch sử
+    private void syncTimeline(List<?> source) {
+        messageListView.setPlaceholder(new Label());
+        boolean stickToBottom = isTimelineAtBottom();
+        int shown = timelineItems.size();
+
+        boolean appendOnly = shown > 0 && shown <= source.size()
+                && timelineItems.get(0) == source.get(0)
+                && timelineItems.get(shown - 1) == source.get(shown - 1);
+        if (appendOnly) {
+            if (source.size() > shown) {
+                timelineItems.addAll(source.subList(shown, source.size()));
+            }
+            // trạng thái (đã gửi/đã xem) của các dòng đang hiện có thể đã đổi
+            messageListView.refresh();
+        } else {
+            timelineItems.setAll(source);
+            stickToBottom = true;
+        }
 
-            VBox messageContent = new VBox(5);
-            messageContent.setMaxWidth(400);
-            messageContent.setFillWidth(false);
+        if (stickToBottom && !timelineItems.isEmpty()) {
+            messageListView.scrollTo(timelineItems.size() - 1);
+        }
+        jumpToPendingMessage();
+    }
 
-            if (message.getContent() != null && !message.getContent().isEmpty()) {
-                Label messageText = new Label(message.getContent());
-                messageText.getStyleClass().add("message-text");
-                messageText.setWrapText(true);
-                messageContent.getChildren().add(messageText);
-            }
+    // chèn các tin cũ hơn lên đầu danh sách, giữ nguyên dòng người dùng đang xem
+    private void prependTimeline(List<?> older) {
+        if (older.isEmpty()) return;
 
-            Label timeLabel = new Label(formatTime(message.getCreatedAt()));
-            timeLabel.getStyleClass().add("message-time");
-            HBox statusContainer = new HBox(2);
-            statusContainer.getChildren().add(timeLabel);
-            messageContent.getChildren().add(statusContainer);
+        VirtualFlow<?> flow = timelineFlow();
+        IndexedCell<?> first = flow != null ? flow.getFirstVisibleCell() : null;
+        int anchor = first != null ? first.getIndex() : 0;
 
-            if (isMyMessage) {
-                messageContent.setAlignment(Pos.BOTTOM_RIGHT);
-                statusContainer.setAlignment(Pos.BOTTOM_RIGHT);
-                Node myAvatar = createAvatarNode(currentUser.getAvatar(), 40, 24);
+        timelineItems.addAll(0, older);
+        if (flow != null) {
+            flow.scrollToTop(anchor + older.size());
+        }
+    }
 
-                if (i == messages.size() - 1) {
-                    Label statusLabel = new Label("Đã gửi");
-                    statusLabel.getStyleClass().add("message-status");
-                    statusLabel.setId("lastMessageStatus");
+    private VirtualFlow<?> timelineFlow() {
+        Node flow = messageListView.lookup(".virtual-flow");
+        return flow instanceof VirtualFlow ? (VirtualFlow<?>) flow : null;
+    }
 
-                    if (selectedUser != null && message.isSeenBy(selectedUser.get_id())) {
-                        statusLabel.setText("Đã xem");
-                    }
-                    statusContainer.getChildren().add(statusLabel);
+    // người dùng đang xem cuối cuộc trò chuyện (khi đó tin mới sẽ tự cuộn xuống)
+    private boolean isTimelineAtBottom() {
+        for (Node node : messageListView.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar) {
+                ScrollBar bar = (ScrollBar) node;
+                if (bar.getOrientation() == Orientation.VERTICAL) {
+                    return !bar.isVisible() || bar.getValue() >= bar.getMax() - 0.01;
                 }
-
-                messageBox.getChildren().addAll(messageContent, myAvatar);
-            } else {
-                Node receiverAvatar = createAvatarNode(selectedUser.getAvatar(), 40, 24);
-                messageBox.getChildren().addAll(receiverAvatar, messageContent);
             }
-
-            messageContainer.getChildren().add(messageBox);
         }
-        messageScrollPane.setVvalue(1.0);
+        return true;
+    }
+
+    // xóa danh sách tin nhắn và hiện thông báo (đang tải...)
+    private void showTimelinePlaceholder(String text) {
+        Label placeholder = new Label(text);
+        placeholder.getStyleClass().add("no-chat-subtitle");
+        messageListView.setPlaceholder(placeholder);
+        timelineItems.clear();
     }
 
     // logic gửi tin nhắn chung
     private void sendMessage() {
         String content = messageInput.getText().trim();
         if (content.isEmpty()) return;
+        // tin đã gửi -> báo ngừng soạn ngay thay vì đợi hết thời gian chờ
+        typingStop.flush();
 
         if (selectedGroup != null) {
-            // gửi tin nhắn nhóm
-            groupService.sendGroupMessage(selectedGroup.get_id(), content);
+            // gửi tin nhắn nhóm, hiện ngay tin tạm rồi thay bằng tin thật khi server phát lại
+            GroupMessage localMsg = groupService.sendGroupMessage(selectedGroup.get_id(), content);
+            if (localMsg != null) {
+                localMsg.setSender(currentUser);
+                groupMessages.add(localMsg);
+                // tin cuối và thứ tự của nhóm đổi ngay khi gửi (không đợi server phát lại)
+                updateGroupSummary(localMsg);
+            }
             renderGroupMessages();
         } else if (selectedUser != null) {
-            // gửi tin nhắn cá nhân
-            chatService.sendMessage(currentUser.get_id(), selectedUser.get_id(), content);
-
-            // tạo 1 tin nhắn tạm để cập nhật ngay lên giao diện
-            Message localMsg = new Message();
-            localMsg.setSenderId(currentUser.get_id());
-            localMsg.setReceiverId(selectedUser.get_id());
-            localMsg.setContent(content);
-            localMsg.setCreatedAt(Instant.now().toString());
-            messages.add(localMsg);
+            // gửi tin nhắn cá nhân, tin tạm được cập nhật _id/createdAt khi server xác nhận
+            Message localMsg = chatService.sendMessage(currentUser.get_id(), selectedUser.get_id(), content);
+            if (localMsg != null) {
+                messages.add(localMsg);
+            }
             renderMessages();
         }
 
@@ -1822,45 +2666,103 @@ public class HomeController {
     }
 
     // cập nhật các tin nhắn cuối cùng ở vùng cạnh bên (chứa danh sách người dùng/nhóm)
+    // chỉ cập nhật dữ liệu, việc vẽ lại danh sách do nơi gọi thực hiện 1 lần cho cả lô
     private void updateSidebarLastMessage(Message message) {
+        String myId = currentUser.get_id();
+        String otherUserId = message.getSenderId().equals(myId)
+                ? message.getReceiverId()
+                : message.getSenderId();
+
+        User user = userRegistry.get(otherUserId);
+        if (user == null) return;
+        unconfirmedUserIds.remove(otherUserId); // vừa có tin nhắn -> chắc chắn vẫn trong danh sách chat
+
+        User.LastMessage lastMsg = new User.LastMessage();
+        lastMsg.setContent(message.getContent());
+        lastMsg.setCreatedAt(message.getCreatedAt());
+        lastMsg.setIsMine(message.getSenderId().equals(myId));
+        user.setLastMessage(lastMsg);
+
+        // đưa cuộc trò chuyện lên đầu thanh bên
+        userRegistry.moveToTop(otherUserId);
+    }
+
+    // gộp các thay đổi của danh sách người dùng trong cùng 1 nhịp giao diện thành 1 lần vẽ lại:
+    // chỉ dựng lại danh sách khi đổi thứ tự (hoặc đang lọc chỉ người online)
+    private boolean userListRefreshPending;
+    private boolean userListRebuildPending;
+
+    private void scheduleUserListRefresh(boolean reordered) {
+        if (reordered || (onlineOnlyCheck != null && onlineOnlyCheck.isSelected())) {
+            userListRebuildPending = true;
+        }
+        if (userListRefreshPending) return;
+        userListRefreshPending = true;
+
         Platform.runLater(() -> {
-            String otherUserId = message.getSenderId().equals(authService.getCurrentUser().get_id())
-                    ? message.getReceiverId()
-                    : message.getSenderId();
-
-            this.allUsers.stream()
-                    .filter(u -> u.get_id().equals(otherUserId))
-                    .findFirst()
-                    .ifPresent(user -> {
-                        User.LastMessage lastMsg = new User.LastMessage();
-                        lastMsg.setContent(message.getContent());
-                        lastMsg.setCreatedAt(message.getCreatedAt());
-                        lastMsg.setIsMine(message.getSenderId().equals(authService.getCurrentUser().get_id()));
-                        user.setLastMessage(lastMsg);
-
-                        this.allUsers.remove(user);
-                        this.allUsers.add(0, user);
-                        updateListViewBasedOnFilterAndSearch();
-                        if (selectedUser != null && userListView.getSelectionModel().getSelectedItems() != null) {
-                            userListView.getSelectionModel().select(selectedUser);
-                        }
-                    });
+            userListRefreshPending = false;
+            if (userListView == null) return;
+            if (userListRebuildPending) {
+                userListRebuildPending = false;
+                updateListViewBasedOnFilterAndSearch();
+                if (selectedUser != null) {
+                    userListView.getSelectionModel().select(selectedUser);
+                }
+            }
+            // các thay đổi còn lại (online, số tin chưa đọc...) được các ô tự cập nhật qua property
+            updateOnlineCountLabel();
+        });
+    }
+
+    private boolean groupListRefreshPending;
+    private boolean groupListRebuildPending;
+
+    private void scheduleGroupListRefresh(boolean reordered) {
+        if (reordered) {
+            groupListRebuildPending = true;
+        }
+        if (groupListRefreshPending) return;
+        groupListRefreshPending = true;
+
+        Platform.runLater(() -> {
+            groupListRefreshPending = false;
+            if (groupListView == null) return;
+            if (groupListRebuildPending) {
+                groupListRebuildPending = false;
+                updateGroupListView();
+            }
         });
     }
 
     // logic cập nhật trạng thái đang soạn tin
     private void updateUserTypingStatus(String senderId, boolean isTyping) {
-        if (allUsers == null) return;
-        allUsers.stream()
-                .filter(u -> u.get_id().equals(senderId))
-                .findFirst()
-                .ifPresent(u -> u.setTyping(isTyping));
+        // dòng trong danh sách tự cập nhật theo property isTyping, không cần vẽ lại
+        User user = userRegistry.get(senderId);
+        if (user != null) {
+            user.setTyping(isTyping);
+        }
+    }
+
+    // gửi sự kiện bắt đầu/ngừng soạn tin tới người dùng hoặc nhóm theo khóa cuộc trò chuyện
+    private void emitTyping(String key, boolean typing) {
+        String targetId = ConversationSyncTracker.targetId(key);
+        if (ConversationSyncTracker.isGroupKey(key)) {
+            if (typing) {
+                socketService.emitGroupTypingStart(targetId);
+            } else {
+                socketService.emitGroupTypingStop(targetId);
+            }
+        } else if (typing) {
+            socketService.emitStartTyping(targetId);
+        } else {
+            socketService.emitStopTyping(targetId);
+        }
     }
 
     // logic cập nhật số người online
     private void updateOnlineCountLabel() {
         Platform.runLater(() -> {
-            if (allUsers == null || onlineCountLabel == null) return;
+            if (onlineCountLabel == null) return;
             long count = userListView.getItems().stream().filter(User::isOnline).count();
             onlineCountLabel.setText("(" + count + " người)");
         });
@@ -2065,7 +2967,7 @@ public class HomeController {
             return;
         }
 
-        new Thread(() -> {
+        AppExecutors.run(() -> {
             try {
                 userService.changePassword(oldPass, newPass);
                 Platform.runLater(() -> {
@@ -2098,7 +3000,7 @@ public class HomeController {
                     showAlert("Lỗi", displayMsg, Alert.AlertType.ERROR);
                 });
             }
-        }).start();
+        });
     }
 
     // hàm chuyển hướng sang trang cài đặt
@@ -2169,10 +3071,15 @@ public class HomeController {
     // ========== HELPERS ==========
 
     private String getUserNameById(String userId) {
-        if (selectedGroup != null && selectedGroup.getMembers() != null) {
-            for (Group.GroupMember member : selectedGroup.getMembers()) {
-                if (member.getUser() != null && member.getUser().get_id().equals(userId)) {
-                    return member.getUser().getFullName();
+        User known = contactIndex.get(userId);
+        if (known != null && known.getFullName() != null) {
+            return known.getFullName();
+        }
+        if (selectedGroup != null) {
+            for (GroupMessage msg : groupMessages) {
+                User sender = msg.getSender();
+                if (sender != null && userId.equals(sender.get_id()) && sender.getFullName() != null) {
+                    return sender.getFullName();
                 }
             }
         }
@@ -2203,15 +3110,33 @@ public class HomeController {
     }
 
     // hàm hỗ trợ hiển thị avatar
+    // gắn ảnh từ cache dùng chung: có sẵn thì gắn ngay, chưa có thì gắn khi tải xong
+    // (userData giữ url đang chờ, để ô được dùng lại cho phần tử khác không bị gắn nhầm ảnh tải xong muộn)
+    private static void setCachedImage(ImageView view, String url, double size) {
+        view.setUserData(url);
+        Image cached = ImageCache.get().getIfLoaded(url, size);
+        if (cached != null) {
+            view.setImage(cached);
+            return;
+        }
+        ImageCache.get().load(url, size).whenCompleteAsync((image, error) -> {
+            if (!url.equals(view.getUserData())) return;
+            if (image != null) {
+                view.setImage(image);
+            } else {
+                System.err.println("Không tải được ảnh " + url + ": " + AppExecutors.unwrap(error).getMessage());
+            }
+        }, Platform::runLater);
+    }
+
     private Node createAvatarNode(String photoUrl, double avatarNodeSize, int iconSize) {
         if (photoUrl != null && !photoUrl.isEmpty()) {
-            try {
-                ImageView avatar = new ImageView(new Image(photoUrl, true));
-                avatar.setFitWidth(avatarNodeSize);
-                avatar.setFitHeight(avatarNodeSize);
-                avatar.getStyleClass().add("message-avatar");
-                return avatar;
-            } catch (Exception e) { /* fallback to default */ }
+            ImageView avatar = new ImageView();
+            avatar.setFitWidth(avatarNodeSize);
+            avatar.setFitHeight(avatarNodeSize);
+            avatar.getStyleClass().add("message-avatar");
+            setCachedImage(avatar, photoUrl, avatarNodeSize);
+            return avatar;
         }
         FontIcon defaultIcon = new FontIcon("mdi2a-account");
         defaultIcon.setIconSize(iconSize);
@@ -2225,100 +3150,450 @@ public class HomeController {
 
     // ========== CÁC LỚP LISTCELL (CẤU HÌNH CHO TỪNG ITEM HAY ĐƯỢC SỬ DỤNG TRONG CÁC DANH SÁCH) ==========
 
-    private class UserListCell extends ListCell<User> {
+    // 1 dòng tin nhắn (cá nhân hoặc nhóm) trong khung chat
+    private class MessageCell extends ListCell<Object> {
+        private final StackPane row = new StackPane();
+        // property "đã xem" của tin nhắn đang hiện trong dòng, gỡ listener khi dòng được dùng lại cho tin khác
+        private ReadOnlyIntegerProperty watchedSeenCount;
+        private InvalidationListener seenListener;
+
+        MessageCell(ListView<Object> listView) {
+            // cho dòng rộng bằng khung chat để căn trái/phải theo người gửi
+            row.prefWidthProperty().bind(listView.widthProperty().subtract(60));
+            row.setMaxWidth(Region.USE_PREF_SIZE);
+            setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+        }
+
         @Override
-        protected void updateItem(User user, boolean empty) {
-            super.updateItem(user, empty);
-            if (empty || user == null) {
+        protected void updateItem(Object item, boolean empty) {
+            super.updateItem(item, empty);
+            unwatchSeen();
+            if (empty || item == null) {
                 setGraphic(null);
+                return;
+            }
+
+            HBox messageBox;
+            if (item instanceof GroupMessage) {
+                messageBox = buildGroupMessageBox((GroupMessage) item);
             } else {
-                HBox cell = new HBox(15);
-                cell.setPadding(new Insets(10));
-                cell.setAlignment(Pos.CENTER_LEFT);
-
-                Node avatarNode = createAvatarNode(user.getAvatar(), 40, 24);
-
-                VBox userInfo = new VBox(2);
-                HBox nameRow = new HBox(6);
-                nameRow.setAlignment(Pos.CENTER_LEFT);
-                Label userName = new Label(user.getFullName());
-                userName.getStyleClass().add("user-name");
-                Circle onlineDot = new Circle(4);
-                onlineDot.getStyleClass().add("online-dot");
-                onlineDot.visibleProperty().bind(user.isOnlineProperty());
-                nameRow.getChildren().addAll(userName, onlineDot);
+                boolean isLast = getIndex() == getListView().getItems().size() - 1;
+                messageBox = buildMessageBox((Message) item, isLast);
+            }
+            row.getChildren().setAll(messageBox);
+            setGraphic(row);
+        }
 
-                Label statusLabel = new Label();
-                statusLabel.getStyleClass().add("last-message-preview");
-                statusLabel.setMaxWidth(180);
-                statusLabel.textProperty().bind(user.statusPreviewProperty());
+        private void watchSeen(ReadOnlyIntegerProperty seenCount, Runnable update) {
+            watchedSeenCount = seenCount;
+            seenListener = obs -> update.run();
+            seenCount.addListener(seenListener);
+        }
 
-                user.isTypingProperty().addListener((obs, wasTyping, isTyping) -> {
-                    if (isTyping) {
-                        statusLabel.setStyle("-fx-text-fill: #31a24c; -fx-font-style: italic;");
-                    } else {
-                        statusLabel.setStyle("");
-                    }
-                });
+        private void unwatchSeen() {
+            if (watchedSeenCount != null) {
+                watchedSeenCount.removeListener(seenListener);
+                watchedSeenCount = null;
+                seenListener = null;
+            }
+        }
+
+        private HBox buildMessageBox(Message message, boolean isLast) {
+            boolean isMyMessage = message.getSenderId().equals(currentUser.get_id());
 
-                userInfo.getChildren().addAll(nameRow, statusLabel);
+            HBox messageBox = new HBox(10);
+            messageBox.getStyleClass().add(isMyMessage ? "message-box-right" : "message-box-left");
 
-                if (user.getUnreadCount() > 0) {
-                    Label badge = new Label(String.valueOf(user.getUnreadCount()));
-                    badge.getStyleClass().add("unread-badge");
-                    HBox.setHgrow(userInfo, Priority.ALWAYS);
-                    cell.getChildren().addAll(avatarNode, userInfo, badge);
-                } else {
-                    cell.getChildren().addAll(avatarNode, userInfo);
+            VBox messageContent = new VBox(5);
+            messageContent.setMaxWidth(400);
+            messageContent.setFillWidth(false);
+
+            if (message.getContent() != null && !message.getContent().isEmpty()) {
+                Label messageText = new Label(message.getContent());
+                messageText.getStyleClass().add("message-text");
+                messageText.setWrapText(true);
+                messageContent.getChildren().add(messageText);
+            }
+
+            Label timeLabel = new Label(formatTime(message.getCreatedAt()));
+            timeLabel.getStyleClass().add("message-time");
+            HBox statusContainer = new HBox(2);
+            statusContainer.getChildren().add(timeLabel);
+            messageContent.getChildren().add(statusContainer);
+
+            if (isMyMessage) {
+                messageContent.setAlignment(Pos.BOTTOM_RIGHT);
+                statusContainer.setAlignment(Pos.BOTTOM_RIGHT);
+                Node myAvatar = createAvatarNode(currentUser.getAvatar(), 40, 24);
+
+                if (isLast) {
+                    Label statusLabel = new Label();
+                    statusLabel.getStyleClass().add("message-status");
+                    Runnable updateStatus = () -> statusLabel.setText(
+                            selectedUser != null && message.isSeenBy(selectedUser.get_id()) ? "Đã xem" : "Đã gửi");
+                    updateStatus.run();
+                    watchSeen(message.seenCountProperty(), updateStatus);
+                    statusContainer.getChildren().add(statusLabel);
+                }
+
+                messageBox.getChildren().addAll(messageContent, myAvatar);
+            } else {
+                Node receiverAvatar = createAvatarNode(selectedUser != null ? selectedUser.getAvatar() : null, 40, 24);
+                messageBox.getChildren().addAll(receiverAvatar, messageContent);
+            }
+            return messageBox;
+        }
+
+        private HBox buildGroupMessageBox(GroupMessage msg) {
+            boolean isMyMessage = msg.getSenderId().equals(currentUser.get_id());
+
+            HBox messageBox = new HBox(10);
+            messageBox.getStyleClass().add(isMyMessage ? "message-box-right" : "message-box-left");
+
+            VBox messageContent = new VBox(5);
+            messageContent.setMaxWidth(400);
+            messageContent.setFillWidth(false);
+
+            if (!isMyMessage) {
+                Label senderName = new Label(msg.getSenderName());
+                senderName.getStyleClass().add("message-sender");
+                messageContent.getChildren().add(senderName);
+            }
+
+            if (msg.getContent() != null && !msg.getContent().isEmpty()) {
+                Label messageText = new Label(msg.getContent());
+                messageText.getStyleClass().add("message-text");
+                messageText.setWrapText(true);
+                messageContent.getChildren().add(messageText);
+            }
+
+            Label timeLabel = new Label(formatTime(msg.getCreatedAt()));
+            timeLabel.getStyleClass().add("message-time");
+            messageContent.getChildren().add(timeLabel);
+
+            if (isMyMessage) {
+                Node myAvatar = createAvatarNode(currentUser.getAvatar(), 40, 24);
+
+                VBox contentWithStatus = new VBox(2);
+                contentWithStatus.setAlignment(Pos.BOTTOM_RIGHT);
+                contentWithStatus.getChildren().add(messageContent);
+
+                // trạng thái đã xem, tự cập nhật khi có người xem thêm
+                Label statusLabel = new Label();
+                statusLabel.getStyleClass().add("message-status");
+                Runnable updateStatus = () -> updateGroupSeenLabel(statusLabel, msg);
+                updateStatus.run();
+                watchSeen(msg.seenCountProperty(), updateStatus);
+                contentWithStatus.getChildren().add(statusLabel);
+
+                messageBox.getChildren().addAll(contentWithStatus, myAvatar);
+            } else {
+                Node senderAvatar = createAvatarNode(msg.getSenderAvatar(), 40, 24);
+                messageBox.getChildren().addAll(senderAvatar, messageContent);
+            }
+            return messageBox;
+        }
+    }
+
+    // nhãn "Đã gửi" hoặc danh sách người đã xem của tin nhắn nhóm
+    private void updateGroupSeenLabel(Label statusLabel, GroupMessage msg) {
+        List<String> seenNames = new ArrayList<>();
+        if (msg.getSeenBy() != null) {
+            for (String id : msg.getSeenBy()) {
+                if (!id.equals(currentUser.get_id())) {
+                    seenNames.add(getUserNameById(id));
                 }
-                setGraphic(cell);
             }
         }
+
+        statusLabel.setText(seenNames.isEmpty() ? "Đã gửi" : String.join(", ", seenNames) + " đã xem");
+        statusLabel.setStyle(seenNames.isEmpty() ? "" : "-fx-font-size: 10px;");
+    }
+
+    // ô avatar dùng lại được: giữ sẵn 1 ImageView và 1 icon mặc định, chỉ đổi ảnh/ẩn hiện khi đổi dữ liệu
+    private static class AvatarSlot extends StackPane {
+        private final ImageView image = new ImageView();
+        private final StackPane placeholder;
+        private final double size;
+
+        AvatarSlot(double size, int iconSize) {
+            this.size = size;
+            image.setFitWidth(size);
+            image.setFitHeight(size);
+            image.getStyleClass().add("message-avatar");
+
+            FontIcon defaultIcon = new FontIcon("mdi2a-account");
+            defaultIcon.setIconSize(iconSize);
+            defaultIcon.getStyleClass().add("avatar-icon");
+            placeholder = new StackPane(defaultIcon);
+            placeholder.setPrefSize(size, size);
+            placeholder.setMinSize(size, size);
+            placeholder.getStyleClass().add("default-avatar-container");
+
+            getChildren().addAll(image, placeholder);
+        }
+
+        void show(String url) {
+            boolean hasPhoto = url != null && !url.isEmpty();
+            image.setVisible(hasPhoto);
+            image.setManaged(hasPhoto);
+            placeholder.setVisible(!hasPhoto);
+            placeholder.setManaged(!hasPhoto);
+
+            if (!hasPhoto) {
+                image.setUserData(null);
+                image.setImage(null);
+            } else if (!url.equals(image.getUserData())) {
+                image.setImage(null);
+                setCachedImage(image, url, size);
+            }
+        }
+    }
+
+    // các ô của thanh bên dựng sẵn cây node 1 lần, updateItem chỉ gắn lại dữ liệu và các property của phần tử mới
+    // (online, tin cuối/đang soạn, số tin chưa đọc) nên cuộn danh sách gần như không tạo đối tượng mới,
+    // và thay đổi của 1 người/nhóm chỉ vẽ lại đúng ô đó
+    private class UserListCell extends ListCell<User> {
+        private final HBox cell = new HBox(15);
+        private final AvatarSlot avatar = new AvatarSlot(40, 24);
+        private final Label userName = new Label();
+        private final Circle onlineDot = new Circle(4);
+        private final Label statusLabel = new Label();
+        private final Label badge = new Label();
+        private final ChangeListener<Boolean> typingListener = (obs, wasTyping, isTyping) -> applyTypingStyle(isTyping);
+        private User bound;
+
+        UserListCell() {
+            cell.setPadding(new Insets(10));
+            cell.setAlignment(Pos.CENTER_LEFT);
+
+            VBox userInfo = new VBox(2);
+            HBox nameRow = new HBox(6);
+            nameRow.setAlignment(Pos.CENTER_LEFT);
+            userName.getStyleClass().add("user-name");
+            onlineDot.getStyleClass().add("online-dot");
+            nameRow.getChildren().addAll(userName, onlineDot);
+
+            statusLabel.getStyleClass().add("last-message-preview");
+            statusLabel.setMaxWidth(180);
+            userInfo.getChildren().addAll(nameRow, statusLabel);
+            HBox.setHgrow(userInfo, Priority.ALWAYS);
+
+            badge.getStyleClass().add("unread-badge");
+            badge.managedProperty().bind(badge.visibleProperty());
+
+            cell.getChildren().addAll(avatar, userInfo, badge);
+        }
+
+        @Override
+        protected void updateItem(User user, boolean empty) {
+            super.updateItem(user, empty);
+            unbind();
+            if (empty || user == null) {
+                setGraphic(null);
+                return;
+            }
+
+            bound = user;
+            avatar.show(user.getAvatar());
+            userName.setText(user.getFullName());
+            onlineDot.visibleProperty().bind(user.isOnlineProperty());
+            statusLabel.textProperty().bind(user.statusPreviewProperty());
+            user.isTypingProperty().addListener(typingListener);
+            applyTypingStyle(user.isTypingProperty().get());
+            badge.textProperty().bind(user.unreadCountProperty().asString());
+            badge.visibleProperty().bind(user.unreadCountProperty().greaterThan(0));
+            setGraphic(cell);
+        }
+
+        private void unbind() {
+            if (bound == null) return;
+            onlineDot.visibleProperty().unbind();
+            statusLabel.textProperty().unbind();
+            bound.isTypingProperty().removeListener(typingListener);
+            badge.textProperty().unbind();
+            badge.visibleProperty().unbind();
+            bound = null;
+        }
+
+        private void applyTypingStyle(boolean isTyping) {
+            statusLabel.setStyle(isTyping ? "-fx-text-fill: #31a24c; -fx-font-style: italic;" : "");
+        }
     }
 
     private class GroupListCell extends ListCell<Group> {
+        private final HBox cell = new HBox(15);
+        private final AvatarSlot avatar = new AvatarSlot(40, 24);
+        private final Label groupName = new Label();
+        private final Label statusLabel = new Label();
+        private final Label badge = new Label();
+        private Group bound;
+
+        GroupListCell() {
+            cell.setPadding(new Insets(10));
+            cell.setAlignment(Pos.CENTER_LEFT);
+
+            VBox groupInfo = new VBox(2);
+            groupName.getStyleClass().add("user-name");
+            statusLabel.getStyleClass().add("last-message-preview");
+            statusLabel.setMaxWidth(180);
+            groupInfo.getChildren().addAll(groupName, statusLabel);
+            HBox.setHgrow(groupInfo, Priority.ALWAYS);
+
+            badge.getStyleClass().add("unread-badge");
+            badge.managedProperty().bind(badge.visibleProperty());
+
+            cell.getChildren().addAll(avatar, groupInfo, badge);
+        }
+
         @Override
         protected void updateItem(Group group, boolean empty) {
             super.updateItem(group, empty);
+            unbind();
             if (empty || group == null) {
                 setGraphic(null);
-            } else {
-                HBox cell = new HBox(15);
-                cell.setPadding(new Insets(10));
-                cell.setAlignment(Pos.CENTER_LEFT);
+                return;
+            }
 
-                Node avatarNode = createAvatarNode(group.getAvatar(), 40, 24);
+            bound = group;
+            avatar.show(group.getAvatar());
+            groupName.setText(group.getName());
+            statusLabel.textProperty().bind(group.statusPreviewProperty());
+            badge.textProperty().bind(group.unreadCountProperty().asString());
+            badge.visibleProperty().bind(group.unreadCountProperty().greaterThan(0));
+            setGraphic(cell);
+        }
 
-                VBox groupInfo = new VBox(2);
-                Label groupName = new Label(group.getName());
-                groupName.getStyleClass().add("user-name");
+        private void unbind() {
+            if (bound == null) return;
+            statusLabel.textProperty().unbind();
+            badge.textProperty().unbind();
+            badge.visibleProperty().unbind();
+            bound = null;
+        }
+    }
 
-                Label statusLabel = new Label();
-                statusLabel.getStyleClass().add("last-message-preview");
-                statusLabel.setMaxWidth(180);
-                statusLabel.textProperty().bind(group.statusPreviewProperty());
+    // 1 kết quả tìm kiếm tin nhắn: tên cuộc trò chuyện và nội dung tin nhắn
+    private class MessageSearchCell extends ListCell<MessageSearchIndex.Hit> {
+        private final VBox cell = new VBox(2);
+        private final Label conversationLabel = new Label();
+        private final Label contentLabel = new Label();
+
+        MessageSearchCell() {
+            cell.setPadding(new Insets(8, 10, 8, 10));
+            conversationLabel.getStyleClass().add("user-name");
+            contentLabel.getStyleClass().add("last-message-preview");
+            contentLabel.setMaxWidth(240);
+            cell.getChildren().addAll(conversationLabel, contentLabel);
+        }
+
+        @Override
+        protected void updateItem(MessageSearchIndex.Hit hit, boolean empty) {
+            super.updateItem(hit, empty);
+            if (empty || hit == null) {
+                setGraphic(null);
+                return;
+            }
+
+            String name = conversationName(hit.getConversationKey());
+            conversationLabel.setText(name != null ? name : "");
+            boolean mine = currentUser != null && currentUser.get_id().equals(hit.getSenderId());
+            contentLabel.setText((mine ? "Bạn: " : "") + hit.getContent());
+            setGraphic(cell);
+        }
+    }
+
+    // tải dần danh sách thành viên nhóm theo trang, đổi từ khóa tìm kiếm thì tải lại từ đầu
+    private class GroupMemberPager {
+        private final String groupId;
+        private final ListView<Group.GroupMember> listView;
+        private String query;
+        private String cursor; // null: đã tải hết
+        private CompletableFuture<GroupMemberPage> load;
+
+        GroupMemberPager(String groupId, ListView<Group.GroupMember> listView) {
+            this.groupId = groupId;
+            this.listView = listView;
+        }
+
+        void reload(String newQuery) {
+            cancelLoad(load);
+            query = newQuery;
+            cursor = null;
+            fetch(null);
+        }
 
-                groupInfo.getChildren().addAll(groupName, statusLabel);
+        void loadMore() {
+            if (cursor == null || (load != null && !load.isDone())) return;
+            fetch(cursor);
+        }
 
-                if (group.getUnreadCount() > 0) {
-                    Label badge = new Label(String.valueOf(group.getUnreadCount()));
-                    badge.getStyleClass().add("unread-badge");
-                    HBox.setHgrow(groupInfo, Priority.ALWAYS);
-                    cell.getChildren().addAll(avatarNode, groupInfo, badge);
+        private void fetch(String before) {
+            CompletableFuture<GroupMemberPage> current = groupService.getGroupMembersPageAsync(groupId, query, before);
+            load = current;
+            current.whenCompleteAsync((page, error) -> {
+                if (load != current) return; // đã có lần tải mới hơn (đổi từ khóa)
+                if (error != null) {
+                    if (!isCancellation(error)) error.printStackTrace();
+                    return;
+                }
+                if (before == null) {
+                    listView.getItems().setAll(page.getMembers());
                 } else {
-                    cell.getChildren().addAll(avatarNode, groupInfo);
+                    listView.getItems().addAll(page.getMembers());
                 }
-
-                setGraphic(cell);
-            }
+                cursor = page.hasMore() ? page.getNextCursor() : null;
+                indexGroupMembers(page.getMembers());
+            }, Platform::runLater);
         }
     }
 
     private class GroupMemberCell extends ListCell<Group.GroupMember> {
         private final Group groupContext;
 
+        // cây node dựng 1 lần, mỗi lần updateItem chỉ đổi nội dung và ẩn/hiện các phần theo quyền
+        private final HBox cell = new HBox(10);
+        private final AvatarSlot avatar = new AvatarSlot(40, 24);
+        private final Label nameLabel = new Label();
+        private final Label roleLabel = new Label();
+        private final ComboBox<String> roleComboBox = new ComboBox<>();
+        private final Button deleteBtn = new Button();
+        // đang gán giá trị cho ComboBox từ dữ liệu (không phải người dùng chọn)
+        private boolean updating;
+
         public GroupMemberCell(Group group) {
             this.groupContext = group;
+
+            cell.setAlignment(Pos.CENTER_LEFT);
+            VBox info = new VBox(2);
+            nameLabel.getStyleClass().add("user-name");
+            roleLabel.getStyleClass().add("last-message-preview");
+            roleLabel.managedProperty().bind(roleLabel.visibleProperty());
+
+            roleComboBox.getItems().addAll("Quản trị viên", "Thành viên");
+            roleComboBox.getStyleClass().add("role-combo-box");
+            roleComboBox.managedProperty().bind(roleComboBox.visibleProperty());
+            roleComboBox.setOnAction(e -> {
+                if (updating || getItem() == null) return;
+                String selectedRole = roleComboBox.getValue();
+                String newRoleApi = "Quản trị viên".equals(selectedRole) ? "admin" : "member";
+                handleChangeRole(getItem(), newRoleApi);
+            });
+            info.getChildren().addAll(nameLabel, roleComboBox, roleLabel);
+            HBox.setHgrow(info, Priority.ALWAYS);
+
+            FontIcon deleteIcon = new FontIcon("mdi2t-trash-can-outline");
+            deleteIcon.setIconColor(javafx.scene.paint.Color.RED);
+            deleteIcon.setIconSize(20);
+            deleteBtn.setGraphic(deleteIcon);
+            deleteBtn.getStyleClass().add("icon-button");
+            deleteBtn.setTooltip(new Tooltip("Xóa thành viên khỏi nhóm"));
+            deleteBtn.managedProperty().bind(deleteBtn.visibleProperty());
+            deleteBtn.setOnAction(e -> {
+                if (getItem() != null) handleDeleteMember(getItem());
+            });
+
+            cell.getChildren().addAll(avatar, info, deleteBtn);
         }
 
         @Override
@@ -2326,80 +3601,45 @@ public class HomeController {
             super.updateItem(member, empty);
             if (empty || member == null || member.getUser() == null || groupContext == null) {
                 setGraphic(null);
-            } else {
-                HBox cell = new HBox(10);
-                cell.setAlignment(Pos.CENTER_LEFT);
-                Node avatar = createAvatarNode(member.getUser().getAvatar(), 40, 24);
-
-                VBox info = new VBox(2);
-                Label nameLabel = new Label(member.getUser().getFullName());
-                nameLabel.getStyleClass().add("user-name");
-                info.getChildren().add(nameLabel);
-
-                boolean isCurrentUserOwner = groupContext.isUserOwner(currentUser.get_id());
-                boolean isThisMemberTheOwner = groupContext.isUserOwner(member.getUser().get_id());
-
-                // --- LOGIC UI HIỂN THỊ VAI TRÒ ---
-                // nếu người dùng hiện tại là owner, hiển thị ComboBox để đổi vai trò
-                if (isCurrentUserOwner && !isThisMemberTheOwner) {
-                    ComboBox<String> roleComboBox = new ComboBox<>();
-                    roleComboBox.getItems().addAll("Quản trị viên", "Thành viên");
-                    roleComboBox.setValue(member.isAdmin() ? "Quản trị viên" : "Thành viên");
-                    roleComboBox.getStyleClass().add("role-combo-box");
-
-                    roleComboBox.setOnAction(e -> {
-                        String selectedRole = roleComboBox.getValue();
-                        String newRoleApi = "Quản trị viên".equals(selectedRole) ? "admin" : "member";
-                        handleChangeRole(member, newRoleApi);
-                    });
-
-                    info.getChildren().add(roleComboBox);
-
-                } else {
-                    // ngược lại, chỉ hiển thị label
-                    String roleText;
-                    if (isThisMemberTheOwner) {
-                        roleText = "Chủ nhóm";
-                    } else if (member.isAdmin()) {
-                        roleText = "Quản trị viên";
-                    } else {
-                        roleText = "Thành viên";
-                    }
-                    Label roleLabel = new Label(roleText);
-                    roleLabel.getStyleClass().add("last-message-preview");
-                    info.getChildren().add(roleLabel);
-                }
-
-                HBox.setHgrow(info, Priority.ALWAYS);
-                cell.getChildren().addAll(avatar, info);
-
-                // --- NÚT XÓA THÀNH VIÊN ---
-                // quyền xóa: owner hoặc admin
-                boolean isCurrentUserAdmin = groupContext.isUserAdmin(currentUser.get_id());
-                boolean isMe = currentUser.get_id().equals(member.getUser().get_id());
-                boolean canDelete = (isCurrentUserOwner || isCurrentUserAdmin) && !isMe && !isThisMemberTheOwner;
-
-                // admin không thể xóa admin khác (chỉ owner làm được)
-                if (isCurrentUserAdmin && !isCurrentUserOwner && member.isAdmin()) {
-                    canDelete = false;
-                }
-
-                if (canDelete) {
-                    Button deleteBtn = new Button();
-                    FontIcon deleteIcon = new FontIcon("mdi2t-trash-can-outline");
-                    deleteIcon.setIconColor(javafx.scene.paint.Color.RED);
-                    deleteIcon.setIconSize(20);
-                    deleteBtn.setGraphic(deleteIcon);
-                    deleteBtn.getStyleClass().add("icon-button");
-                    deleteBtn.setTooltip(new Tooltip("Xóa thành viên khỏi nhóm"));
+                return;
+            }
 
-                    deleteBtn.setOnAction(e -> handleDeleteMember(member));
+            avatar.show(member.getUser().getAvatar());
+            nameLabel.setText(member.getUser().getFullName());
+
+            boolean isCurrentUserOwner = groupContext.isUserOwner(currentUser.get_id());
+            boolean isThisMemberTheOwner = groupContext.isUserOwner(member.getUser().get_id());
+
+            // --- LOGIC UI HIỂN THỊ VAI TRÒ ---
+            // nếu người dùng hiện tại là owner, hiển thị ComboBox để đổi vai trò, ngược lại chỉ hiển thị label
+            boolean canChangeRole = isCurrentUserOwner && !isThisMemberTheOwner;
+            roleComboBox.setVisible(canChangeRole);
+            roleLabel.setVisible(!canChangeRole);
+            if (canChangeRole) {
+                updating = true;
+                roleComboBox.setValue(member.isAdmin() ? "Quản trị viên" : "Thành viên");
+                updating = false;
+            } else if (isThisMemberTheOwner) {
+                roleLabel.setText("Chủ nhóm");
+            } else if (member.isAdmin()) {
+                roleLabel.setText("Quản trị viên");
+            } else {
+                roleLabel.setText("Thành viên");
+            }
 
-                    cell.getChildren().add(deleteBtn);
-                }
+            // --- NÚT XÓA THÀNH VIÊN ---
+            // quyền xóa: owner hoặc admin
+            boolean isCurrentUserAdmin = groupContext.isUserAdmin(currentUser.get_id());
+            boolean isMe = currentUser.get_id().equals(member.getUser().get_id());
+            boolean canDelete = (isCurrentUserOwner || isCurrentUserAdmin) && !isMe && !isThisMemberTheOwner;
 
-                setGraphic(cell);
+            // admin không thể xóa admin khác (chỉ owner làm được)
+            if (isCurrentUserAdmin && !isCurrentUserOwner && member.isAdmin()) {
+                canDelete = false;
             }
+            deleteBtn.setVisible(canDelete);
+
+            setGraphic(cell);
         }
 
         // logic xử lý đổi vai trò cho thành viên
@@ -2411,25 +3651,23 @@ public class HomeController {
             ThemeService.styleDialog(confirmation);
             confirmation.showAndWait().ifPresent(response -> {
                 if (response == ButtonType.YES) {
-                    new Thread(() -> {
+                    AppExecutors.run(() -> {
                         try {
                             groupService.changeRole(groupContext.get_id(), member.getUser().get_id(), newRole);
-                            // lấy lại thông tin mới
-                            Group updatedGroup = groupService.getGroupInfo(groupContext.get_id());
+                            // lấy lại id admin mới (không tải lại cả danh sách thành viên)
+                            refreshRoster(groupContext);
 
                             Platform.runLater(() -> {
                                 showAlert("Thành công", "Đã cập nhật vai trò thành công.", Alert.AlertType.INFORMATION);
 
-                                // cập nhật lại danh sách thành viên với quyền mới
-                                groupContext.setMembers(updatedGroup.getMembers());
-
-                                // hiển thị lại danh sách thành viên
-                                getListView().getItems().setAll(updatedGroup.getMembers());
+                                // cập nhật vai trò của thành viên này và vẽ lại các dòng đang hiện
+                                member.setRole(newRole);
+                                getListView().refresh();
                             });
                         } catch (Exception ex) {
                             Platform.runLater(() -> showAlert("Lỗi", "Không thể đổi vai trò: " + ex.getMessage(), Alert.AlertType.ERROR));
                         }
-                    }).start();
+                    });
                 } else {
                     // nếu người dùng chọn NO, reset lại ComboBox
                     getListView().refresh();
@@ -2445,18 +3683,18 @@ public class HomeController {
 
             alert.showAndWait().ifPresent(type -> {
                 if (type == ButtonType.YES) {
-                    new Thread(() -> {
+                    AppExecutors.run(() -> {
                         try {
                             boolean success = groupService.removeMember(groupContext.get_id(),
                                     member.getUser().get_id());
                             if (success) {
-                                // lấy lại dữ liệu nhóm với danh sách thành viên mới
+                                // lấy lại thông tin nhóm (số thành viên) và id thành viên mới
                                 Group updatedGroup = groupService.getGroupInfo(groupContext.get_id());
+                                refreshRoster(groupContext);
 
                                 Platform.runLater(() -> {
                                     // xóa thành viên khỏi danh sách hiện tại
                                     getListView().getItems().remove(member);
-                                    groupContext.setMembers(updatedGroup.getMembers());
 
                                     // cập nhật lại header để hiển thị đúng số thành viên nhóm
                                     renderSelectedGroupUI(updatedGroup);
@@ -2469,7 +3707,7 @@ public class HomeController {
                             Platform.runLater(() -> showAlert("Lỗi", "Xóa thành viên thất bại: " + ex.getMessage(),
                                     Alert.AlertType.ERROR));
                         }
-                    }).start();
+                    });
                 }
             });
         }
@@ -1,6 +1,7 @@
 package com.chatty.controllers;
 
 import com.chatty.models.User;
+import com.chatty.services.AppExecutors;
 import com.chatty.services.AuthService;
 import com.chatty.services.ThemeService;
 import javafx.geometry.Insets;
@@ -161,7 +162,7 @@ public class LoginController {
             loginButton.setText("Đang tải...");
             mainContainer.requestFocus();
             
-            new Thread(() -> {
+            AppExecutors.run(() -> {
                 try {
                     User loginUser = authService.login(username, password);
                     Platform.runLater(() -> {
@@ -175,7 +176,7 @@ public class LoginController {
                         loginButton.setText("Đăng nhập");
                     });
                 }
-            }).start();
+            });
         });
 
         // xử lý khi người dùng ẩn chuyển sang trang đăng ký
@@ -1,6 +1,7 @@
 package com.chatty.controllers;
 
 import com.chatty.models.User;
+import com.chatty.services.AppExecutors;
 import com.chatty.services.AuthService;
 import com.chatty.services.ThemeService;
 import javafx.geometry.Insets;
@@ -207,7 +208,7 @@ public class SignUpController {
             signupButton.setDisable(true);
             signupButton.setText("Đang tải...");
 
-            new Thread(() -> {
+            AppExecutors.run(() -> {
                 try {
                     authService.signup(username, fullName, email, password);
 
@@ -232,7 +233,7 @@ public class SignUpController {
                         signupButton.setText("Đăng ký");
                     });
                 }
-            }).start();
+            });
         });
 
         // xử lý khi người dùng nhấn vào link chuyển sang đăng nhập
@@ -0,0 +1,31 @@
+package com.chatty.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 1 trang danh sách chat (người dùng đã nhắn tin), sắp xếp theo hoạt động gần nhất trước
+public class ConversationPage {
+    private List<User> users = new ArrayList<>();
+    private boolean hasMore;      // còn cuộc trò chuyện cũ hơn chưa tải
+    private String nextCursor;    // truyền vào tham số "before" để tải trang tiếp theo
+
+    public ConversationPage() {}
+
+    public ConversationPage(List<User> users, boolean hasMore, String nextCursor) {
+        this.users = users;
+        this.hasMore = hasMore;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
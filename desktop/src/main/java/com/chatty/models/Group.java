@@ -13,8 +13,10 @@ public class Group {
     private String description;
     private String avatar;
     private JsonElement owner;
-    private List<GroupMember> members = new ArrayList<>();
+    private List<GroupMember> members = new ArrayList<>(); // chỉ có khi tạo nhóm, danh sách nhóm/thông tin nhóm không kèm thành viên
+    private int memberCount;
     private int unreadCount; // Sửa từ IntegerProperty thành int
+    private transient SimpleIntegerProperty unreadCountProperty;
     private LastMessage lastMessage;
 
     // các property này là "transient" - GSON sẽ bỏ qua chúng
@@ -24,6 +26,9 @@ public class Group {
     // property cho trạng thái đang soạn tin
     private final transient BooleanProperty isTyping = new SimpleBooleanProperty(false);
 
+    // id thành viên/admin, chỉ tải khi cần kiểm tra quyền (không lưu vào trạng thái thanh bên)
+    private transient GroupRoster roster;
+
     // lớp dung để hứng dữ liệu danh sách thành viên nhóm từ backend
     public static class GroupMember {
         @SerializedName("userId")
@@ -124,6 +129,7 @@ public class Group {
 
     // Check if current user is admin
     public boolean isUserAdmin(String userId) {
+        if (roster != null) return roster.isAdmin(userId);
         return members.stream()
                 .anyMatch(m -> m.getUser() != null
                         && m.getUser().get_id().equals(userId)
@@ -206,7 +212,28 @@ public class Group {
     }
 
     public int getMemberCount() {
-        return members != null ? members.size() : 0;
+        if (roster != null) return roster.getMemberCount();
+        if (members != null && !members.isEmpty()) return members.size();
+        return memberCount;
+    }
+
+    public void setMemberCount(int memberCount) {
+        this.memberCount = memberCount;
+    }
+
+    public GroupRoster getRoster() {
+        return roster;
+    }
+
+    public void setRoster(GroupRoster roster) {
+        this.roster = roster;
+    }
+
+    // đã là thành viên của nhóm chưa (cần roster, hoặc danh sách thành viên đầy đủ)
+    public boolean isMember(String userId) {
+        if (roster != null) return roster.isMember(userId);
+        return members != null && members.stream()
+                .anyMatch(m -> m.getUser() != null && m.getUser().get_id().equals(userId));
     }
 
     // JavaFX Properties
@@ -233,6 +260,17 @@ public class Group {
 
     public void setUnreadCount(int unreadCount) {
         this.unreadCount = unreadCount;
+        if (unreadCountProperty != null) {
+            unreadCountProperty.set(unreadCount);
+        }
+    }
+
+    // số tin chưa đọc dạng property cho giao diện (tạo khi cần, giá trị gốc vẫn là trường int để Gson đọc/ghi)
+    public ReadOnlyIntegerProperty unreadCountProperty() {
+        if (unreadCountProperty == null) {
+            unreadCountProperty = new SimpleIntegerProperty(unreadCount);
+        }
+        return unreadCountProperty;
     }
 
     public LastMessage getLastMessage() {
@@ -241,12 +279,25 @@ public class Group {
 
     public void setLastMessage(LastMessage lastMessage) {
         this.lastMessage = lastMessage;
+        updateStatusPreview();
     }
 
     public String getStatusPreview() {
         return statusPreview.get();
     }
 
+    // chép dữ liệu mới từ server vào đối tượng đang hiển thị (giữ nguyên các property đang được giao diện dùng)
+    public void updateFrom(Group other) {
+        this.name = other.name;
+        this.description = other.description;
+        this.avatar = other.avatar;
+        this.owner = other.owner;
+        this.members = other.members;
+        this.memberCount = other.memberCount;
+        setUnreadCount(other.unreadCount);
+        setLastMessage(other.lastMessage);
+    }
+
     public boolean isIsTyping() {
         return isTyping.get();
     }
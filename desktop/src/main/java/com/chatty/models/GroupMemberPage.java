@@ -0,0 +1,31 @@
+package com.chatty.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 1 trang thành viên nhóm (người mới tham gia trước), có thể đã được lọc theo từ khóa
+public class GroupMemberPage {
+    private List<Group.GroupMember> members = new ArrayList<>();
+    private boolean hasMore;      // còn thành viên chưa tải
+    private String nextCursor;    // truyền vào tham số "before" để tải trang tiếp theo
+
+    public GroupMemberPage() {}
+
+    public GroupMemberPage(List<Group.GroupMember> members, boolean hasMore, String nextCursor) {
+        this.members = members;
+        this.hasMore = hasMore;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Group.GroupMember> getMembers() {
+        return members;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -1,9 +1,12 @@
 package com.chatty.models;
 
 import com.google.gson.annotations.SerializedName;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class GroupMessage {
     private String _id;
@@ -23,7 +26,10 @@ public class GroupMessage {
     private String replyTo;
     private String createdAt;
     private String updatedAt;
-    private List<String> seenBy = new ArrayList<>();
+    private Set<String> seenBy = new LinkedHashSet<>(); // Set: kiểm tra/đánh dấu đã xem O(1) với nhóm đông người
+    // số người đã xem, để dòng tin nhắn đang hiện tự cập nhật nhãn trạng thái (tạo khi cần, không ghi ra JSON)
+    private transient SimpleIntegerProperty seenCount;
+    private String clientId; // id do client tạo khi gửi, dùng để khớp tin nhắn tạm với tin nhắn thật
 
     public GroupMessage() {}
 
@@ -119,11 +125,42 @@ public class GroupMessage {
         this.updatedAt = updatedAt;
     }
 
-    public List<String> getSeenBy() {
+    public Set<String> getSeenBy() {
         return seenBy;
     }
 
-    public void setSeenBy(List<String> seenBy) {
-        this.seenBy = seenBy;
+    // chép sang tập riêng của tin nhắn này (không dùng chung tập với tin nhắn khác)
+    public void setSeenBy(Collection<String> seenBy) {
+        this.seenBy = seenBy != null ? new LinkedHashSet<>(seenBy) : new LinkedHashSet<>();
+        if (seenCount != null) {
+            seenCount.set(this.seenBy.size());
+        }
+    }
+
+    // đánh dấu đã được userId xem, trả về false nếu đã đánh dấu trước đó
+    public boolean markSeenBy(String userId) {
+        if (seenBy == null) {
+            seenBy = new LinkedHashSet<>();
+        }
+        if (!seenBy.add(userId)) return false;
+        if (seenCount != null) {
+            seenCount.set(seenBy.size());
+        }
+        return true;
+    }
+
+    public ReadOnlyIntegerProperty seenCountProperty() {
+        if (seenCount == null) {
+            seenCount = new SimpleIntegerProperty(seenBy != null ? seenBy.size() : 0);
+        }
+        return seenCount;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
     }
-}
\ No newline at end of file
+}
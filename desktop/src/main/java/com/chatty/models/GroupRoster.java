@@ -0,0 +1,30 @@
+package com.chatty.models;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// id của các thành viên và admin trong nhóm (không kèm thông tin người dùng),
+// dùng để kiểm tra quyền hoặc "đã là thành viên chưa" mà không phải tải toàn bộ danh sách thành viên
+public class GroupRoster {
+    private String owner;
+    private Set<String> memberIds = new HashSet<>();
+    private Set<String> adminIds = new HashSet<>();
+
+    public GroupRoster() {}
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public boolean isMember(String userId) {
+        return memberIds != null && memberIds.contains(userId);
+    }
+
+    public boolean isAdmin(String userId) {
+        return adminIds != null && adminIds.contains(userId);
+    }
+
+    public int getMemberCount() {
+        return memberIds != null ? memberIds.size() : 0;
+    }
+}
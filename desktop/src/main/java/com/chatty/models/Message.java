@@ -1,7 +1,11 @@
 package com.chatty.models;
 
-import java.util.ArrayList;
-import java.util.List;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 // hứng dữ liệu tin nhắn và phục vụ gửi nhận tin nhắn
 public class Message {
@@ -11,7 +15,10 @@ public class Message {
     private String content;
     private String image; // gửi nhận tin nhắn chứa ảnh (chưa phát triển)
     private String createdAt;
-    private List<String> seenBy = new ArrayList<>();
+    private Set<String> seenBy = new LinkedHashSet<>(); // Set: kiểm tra/đánh dấu đã xem O(1) với nhóm đông người
+    // số người đã xem, để dòng tin nhắn đang hiện tự cập nhật nhãn trạng thái (tạo khi cần, không ghi ra JSON)
+    private transient SimpleIntegerProperty seenCount;
+    private String clientId; // id do client tạo khi gửi, dùng để khớp tin nhắn tạm với tin nhắn thật
 
     public Message() {}
 
@@ -63,16 +70,46 @@ public class Message {
         this.createdAt = createdAt;
     }
 
-    public List<String> getSeenBy() {
+    public Set<String> getSeenBy() {
         return seenBy;
     }
 
-    public void setSeenBy(List<String> seenBy) {
-        this.seenBy = seenBy;
+    // chép sang tập riêng của tin nhắn này (không dùng chung tập với tin nhắn khác)
+    public void setSeenBy(Collection<String> seenBy) {
+        this.seenBy = seenBy != null ? new LinkedHashSet<>(seenBy) : new LinkedHashSet<>();
+        if (seenCount != null) {
+            seenCount.set(this.seenBy.size());
+        }
+    }
+
+    // đánh dấu đã được userId xem, trả về false nếu đã đánh dấu trước đó
+    public boolean markSeenBy(String userId) {
+        if (seenBy == null) {
+            seenBy = new LinkedHashSet<>();
+        }
+        if (!seenBy.add(userId)) return false;
+        if (seenCount != null) {
+            seenCount.set(seenBy.size());
+        }
+        return true;
+    }
+
+    public ReadOnlyIntegerProperty seenCountProperty() {
+        if (seenCount == null) {
+            seenCount = new SimpleIntegerProperty(seenBy != null ? seenBy.size() : 0);
+        }
+        return seenCount;
     }
 
     public boolean isSeenBy(String userId){
         return seenBy != null && seenBy.contains(userId);
     }
-}
 
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+}
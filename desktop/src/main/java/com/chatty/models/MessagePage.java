@@ -0,0 +1,31 @@
+package com.chatty.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 1 trang lịch sử tin nhắn (cá nhân hoặc nhóm), sắp xếp từ cũ đến mới
+public class MessagePage<T> {
+    private List<T> messages = new ArrayList<>();
+    private boolean hasMore;      // còn tin cũ hơn chưa tải
+    private String nextCursor;    // truyền vào tham số "before" để tải trang cũ hơn
+
+    public MessagePage() {}
+
+    public MessagePage(List<T> messages, boolean hasMore, String nextCursor) {
+        this.messages = messages;
+        this.hasMore = hasMore;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getMessages() {
+        return messages;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,64 @@
+package com.chatty.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// thông báo đã xem tin nhắn nhận qua socket (cá nhân: "seen-message", nhóm: "group-read-upto", "user-seen-message")
+public class SeenReceipt {
+    private String viewerId;   // người đã xem
+    private String messageId;  // chỉ có với tin nhắn nhóm
+    private String groupId;    // chỉ có với mốc đã đọc của nhóm
+    private String seenAt;
+    private String upToCreatedAt; // mốc đã đọc: mọi tin tới thời điểm này đã được xem (không có = tất cả)
+    private List<String> seenBy = new ArrayList<>(); // danh sách người đã xem (tin nhắn nhóm)
+
+    public SeenReceipt() {}
+
+    public String getViewerId() {
+        return viewerId;
+    }
+
+    public void setViewerId(String viewerId) {
+        this.viewerId = viewerId;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public void setGroupId(String groupId) {
+        this.groupId = groupId;
+    }
+
+    public String getUpToCreatedAt() {
+        return upToCreatedAt;
+    }
+
+    public void setUpToCreatedAt(String upToCreatedAt) {
+        this.upToCreatedAt = upToCreatedAt;
+    }
+
+    public String getSeenAt() {
+        return seenAt;
+    }
+
+    public void setSeenAt(String seenAt) {
+        this.seenAt = seenAt;
+    }
+
+    public List<String> getSeenBy() {
+        return seenBy;
+    }
+
+    public void setSeenBy(List<String> seenBy) {
+        this.seenBy = seenBy;
+    }
+}
@@ -1,7 +1,9 @@
 package com.chatty.models;
 
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
@@ -14,17 +16,18 @@ public class User {
     private String avatar;
     private String token;
 
-    // các property khi nhắn tin cá nhân
+    // các property khi nhắn tin cá nhân (transient: chỉ dùng cho giao diện, không ghi ra JSON)
 
     // property báo online
-    private final BooleanProperty isOnline = new SimpleBooleanProperty(false);
+    private final transient BooleanProperty isOnline = new SimpleBooleanProperty(false);
     // property báo đang nhập
-    private final BooleanProperty isTyping = new SimpleBooleanProperty(false);
+    private final transient BooleanProperty isTyping = new SimpleBooleanProperty(false);
     // property báo trạng thái tin nhắn (đã xem/ đã gửi)
-    private final StringProperty statusPreview = new SimpleStringProperty("");
+    private final transient StringProperty statusPreview = new SimpleStringProperty("");
 
     // đếm số tin chưa đọc
     private int unreadCount;
+    private transient SimpleIntegerProperty unreadCountProperty;
     // chứa dữ liệu về tin nhắn cuối cùng trong cuộc trò chuyện
     private LastMessage lastMessage;
 
@@ -168,6 +171,17 @@ public class User {
 
     public void setUnreadCount(int unreadCount) {
         this.unreadCount = unreadCount;
+        if (unreadCountProperty != null) {
+            unreadCountProperty.set(unreadCount);
+        }
+    }
+
+    // số tin chưa đọc dạng property cho giao diện (tạo khi cần, giá trị gốc vẫn là trường int để Gson đọc/ghi)
+    public ReadOnlyIntegerProperty unreadCountProperty() {
+        if (unreadCountProperty == null) {
+            unreadCountProperty = new SimpleIntegerProperty(unreadCount);
+        }
+        return unreadCountProperty;
     }
 
     public LastMessage getLastMessage() {
@@ -178,4 +192,14 @@ public class User {
         this.lastMessage = lastMessage;
         updateStatusPreview();
     }
+
+    // chép dữ liệu mới từ server vào đối tượng đang hiển thị (giữ nguyên các property đang được giao diện dùng)
+    public void updateFrom(User other) {
+        this.username = other.username;
+        this.fullName = other.fullName;
+        this.email = other.email;
+        this.avatar = other.avatar;
+        setUnreadCount(other.unreadCount);
+        setLastMessage(other.lastMessage);
+    }
 }
\ No newline at end of file
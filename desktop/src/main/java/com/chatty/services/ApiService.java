@@ -1,41 +1,42 @@
 package com.chatty.services;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import okhttp3.*;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 // lớp đóng vai trò trung gian giao tiếp với backend
 public class ApiService {
     private static final String BASE_URL = "http://localhost:3000";
-    private final OkHttpClient client;
     private final Gson gson;
-    private final CookieJar cookieJar;
     public static String authToken = null;
 
     public ApiService() {
-        this.cookieJar = new MemoryCookieJar();
-        this.client = new OkHttpClient.Builder()
-                .cookieJar(cookieJar)
-                .build();
-        this.gson = new Gson();
+        this(HttpRuntime.get().gson());
     }
 
-    private static class MemoryCookieJar implements CookieJar {
-        private final ConcurrentHashMap<String, List<Cookie>> cookieStore = new ConcurrentHashMap<>();
-
-        @Override
-        public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
-            cookieStore.put(url.host(), cookies);
-        }
+    // dùng Gson riêng khi service cần deserializer tùy biến (ví dụ MessageDeserializer)
+    public ApiService(Gson gson) {
+        this.gson = gson;
+    }
 
-        @Override
-        public List<Cookie> loadForRequest(HttpUrl url) {
-            List<Cookie> cookies = cookieStore.get(url.host());
-            return cookies != null ? cookies : new ArrayList<>();
-        }
+    // client dùng chung của ứng dụng (lấy mỗi lần gọi vì runtime được tạo lại sau khi đăng xuất)
+    private OkHttpClient client() {
+        return HttpRuntime.get().client();
     }
 
     // GET
@@ -43,7 +44,13 @@ public class ApiService {
         return get(endpoint, responseClass, null);
     }
 
+    // các GET giống hệt nhau chạy cùng lúc dùng chung 1 request (xem SingleFlight); chỉ nội dung phản hồi được dùng chung,
+    // mỗi người gọi tự giải mã ra đối tượng riêng nên có thể sửa kết quả của mình mà không ảnh hưởng người khác
     public <T> T get(String endpoint, Class<T> responseClass, String cookie) throws IOException {
+        return parse(flights().sync(flightKey(endpoint), () -> fetch(endpoint)), responseClass);
+    }
+
+    private String fetch(String endpoint) throws IOException {
         Request.Builder requestBuilder = new Request.Builder()
                 .url(BASE_URL + endpoint)
                 .get();
@@ -52,16 +59,12 @@ public class ApiService {
             requestBuilder.addHeader("Authorization", "Bearer " + authToken);
         }
 
-        try (Response response = client.newCall(requestBuilder.build()).execute()) {
+        try (Response response = client().newCall(requestBuilder.build()).execute()) {
             if (!response.isSuccessful()) {
                 String errorBody = response.body() != null ? response.body().string() : "";
                 throw new IOException("Unexpected code " + response + ": " + errorBody);
             }
-            String json = response.body().string();
-            if (responseClass == String.class) {
-                return (T) json;
-            }
-            return gson.fromJson(json, responseClass);
+            return response.body() != null ? response.body().string() : "";
         }
     }
 
@@ -81,7 +84,7 @@ public class ApiService {
 
         Request request = requestBuilder.build();
 
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = client().newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 String errorBody = response.body().string();
                 throw new IOException("Request failed: " + errorBody);
@@ -107,7 +110,7 @@ public class ApiService {
 
         Request request = requestBuilder.build();
 
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = client().newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 String errorBody = response.body() != null ? response.body().string() : "";
                 throw new IOException("PUT request failed: " + response + " - " + errorBody);
@@ -137,7 +140,7 @@ public class ApiService {
 
         Request request = requestBuilder.build();
 
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = client().newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 String errorBody = response.body() != null ? response.body().string() : "";
                 throw new IOException("PATCH request failed: " + response + " - " + errorBody);
@@ -173,7 +176,7 @@ public class ApiService {
 
         Request request = requestBuilder.build();
 
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = client().newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 String errorBody = response.body() != null ? response.body().string() : "";
                 throw new IOException("Multipart POST request failed: " + response + " - " + errorBody);
@@ -196,7 +199,7 @@ public class ApiService {
 
         Request request = requestBuilder.build();
 
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = client().newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 String errorBody = response.body() != null ? response.body().string() : "";
                 throw new IOException("DELETE request failed: " + response + " - " + errorBody);
@@ -224,7 +227,7 @@ public class ApiService {
                 .addHeader("Cookie", cookie)
                 .build();
 
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = client().newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 String errorBody = response.body().string();
                 throw new IOException("Request failed: " + errorBody);
@@ -234,8 +237,240 @@ public class ApiService {
         }
     }
 
+    // ================= ASYNC =================
+    // các phiên bản không chặn luồng gọi, dùng enqueue của OkHttp
+    // hủy future (cancel) sẽ hủy luôn request đang chạy
+
+    public <T> CompletableFuture<T> getAsync(String endpoint, Class<T> responseClass) {
+        return decodeShared(getBodyAsync(endpoint), body -> parse(body, responseClass));
+    }
+
+    public <T> CompletableFuture<T> postAsync(String endpoint, Object body, Class<T> responseClass) {
+        return enqueue(newRequest(endpoint).post(jsonBody(body)).build(), responseClass);
+    }
+
+    public <T> CompletableFuture<T> putAsync(String endpoint, Object body, Class<T> responseClass) {
+        return enqueue(newRequest(endpoint).put(jsonBody(body)).build(), responseClass);
+    }
+
+    public <T> CompletableFuture<T> patchAsync(String endpoint, Object body, Class<T> responseClass) {
+        return enqueue(newRequest(endpoint).patch(jsonBody(body)).build(), responseClass);
+    }
+
+    public <T> CompletableFuture<T> deleteAsync(String endpoint, Class<T> responseClass) {
+        return enqueue(newRequest(endpoint).delete().build(), responseClass);
+    }
+
+    // ================= STREAMING =================
+    // các phản hồi dạng danh sách ({"messages": [...], "hasMore": ...}) được đọc bằng JsonReader:
+    // mỗi phần tử của mảng được giải mã thành đối tượng ngay khi đọc xong, không dựng cây JsonObject cho cả phản hồi
+    // (có onItem thì đọc thẳng từ luồng byte, ngược lại đọc từ nội dung phản hồi dùng chung giữa các lần gọi)
+
+    // kết quả đọc 1 danh sách: các phần tử đã giải mã và các trường còn lại của phản hồi
+    public static class ListResponse<T> {
+        private final List<T> items;
+        private final JsonObject fields;
+
+        ListResponse(List<T> items, JsonObject fields) {
+            this.items = items;
+            this.fields = fields;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public boolean getBoolean(String name) {
+            JsonElement value = fields.get(name);
+            return value != null && value.isJsonPrimitive() && value.getAsBoolean();
+        }
+
+        public String getString(String name) {
+            JsonElement value = fields.get(name);
+            return value != null && !value.isJsonNull() ? value.getAsString() : null;
+        }
+    }
+
+    public <T> ListResponse<T> getList(String endpoint, String field, Type itemType) throws IOException {
+        String body = flights().sync(flightKey(endpoint), () -> fetch(endpoint));
+        return readList(new StringReader(body), field, itemType, null);
+    }
+
+    public <T> CompletableFuture<ListResponse<T>> getListAsync(String endpoint, String field, Type itemType) {
+        return getListAsync(endpoint, field, itemType, null);
+    }
+
+    // onItem (nếu có) được gọi trên luồng của OkHttp ngay khi giải mã xong từng phần tử,
+    // cho phép hiển thị dần các danh sách lớn trước khi tải xong toàn bộ phản hồi
+    // (khi đó request không được gộp với lần gọi khác vì mỗi người gọi cần nhận từng phần tử)
+    public <T> CompletableFuture<ListResponse<T>> getListAsync(String endpoint, String field, Type itemType,
+                                                             Consumer<? super T> onItem) {
+        if (onItem != null) {
+            return enqueue(newRequest(endpoint).get().build(), response -> response.body() != null
+                    ? readList(response.body().charStream(), field, itemType, onItem)
+                    : new ListResponse<>(new ArrayList<>(), new JsonObject()));
+        }
+        return decodeShared(getBodyAsync(endpoint), body -> {
+            try {
+                return readList(new StringReader(body), field, itemType, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // nội dung phản hồi của 1 GET, dùng chung giữa các lần gọi giống hệt nhau
+    private CompletableFuture<String> getBodyAsync(String endpoint) {
+        return flights().async(flightKey(endpoint), () -> enqueue(newRequest(endpoint).get().build(),
+                response -> response.body() != null ? response.body().string() : ""));
+    }
+
+    // giải mã riêng cho từng người gọi trên luồng nền (kết quả dùng lại có thể đã xong sẵn khi gọi từ luồng FX)
+    private static <R> CompletableFuture<R> decodeShared(CompletableFuture<String> body, Function<String, R> decode) {
+        CompletableFuture<R> decoded = body.thenApplyAsync(decode, AppExecutors.io());
+        decoded.whenComplete((result, error) -> {
+            if (decoded.isCancelled()) {
+                body.cancel(true);
+            }
+        });
+        return decoded;
+    }
+
+    private <T> ListResponse<T> readList(Reader source, String field, Type itemType,
+                                         Consumer<? super T> onItem) throws IOException {
+        List<T> items = new ArrayList<>();
+        JsonObject fields = new JsonObject();
+
+        try (JsonReader reader = new JsonReader(source)) {
+            JsonToken first;
+            try {
+                first = reader.peek();
+            } catch (EOFException e) {
+                return new ListResponse<>(items, fields); // phản hồi rỗng
+            }
+
+            if (first == JsonToken.BEGIN_ARRAY) {
+                // phản hồi là mảng trần
+                readItems(reader, itemType, items, onItem);
+            } else {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (name.equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        readItems(reader, itemType, items, onItem);
+                    } else {
+                        fields.add(name, JsonParser.parseReader(reader));
+                    }
+                }
+                reader.endObject();
+            }
+        }
+        return new ListResponse<>(items, fields);
+    }
+
+    private <T> void readItems(JsonReader reader, Type itemType, List<T> items, Consumer<? super T> onItem) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            T item = gson.fromJson(reader, itemType);
+            items.add(item);
+            if (onItem != null) {
+                onItem.accept(item);
+            }
+        }
+        reader.endArray();
+    }
+
+    // chuyển đổi kết quả của 1 request bất đồng bộ, hủy future kết quả cũng hủy request gốc
+    public static <T, R> CompletableFuture<R> mapResponse(CompletableFuture<T> source, Function<? super T, ? extends R> mapper) {
+        CompletableFuture<R> mapped = source.thenApply(mapper);
+        mapped.whenComplete((result, error) -> {
+            if (mapped.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return mapped;
+    }
+
+    private static SingleFlight flights() {
+        return HttpRuntime.get().getFlights();
+    }
+
+    // 2 GET chỉ được gộp khi cùng endpoint và cùng phiên đăng nhập (mỗi người gọi tự giải mã nên không cần cùng kiểu kết quả)
+    // endpoint luôn đứng đầu key (xem invalidate)
+    private List<Object> flightKey(String endpoint) {
+        return List.of(endpoint, String.valueOf(authToken));
+    }
+
+    // dữ liệu của các endpoint bắt đầu bằng prefix vừa thay đổi (ví dụ nhận được sự kiện socket tương ứng):
+    // bỏ kết quả GET đang giữ trong bộ nhớ, lần tải sau hỏi lại server (server trả 304 nếu thực ra chưa đổi)
+    public static void invalidate(String prefix) {
+        flights().invalidate(key -> key instanceof List && String.valueOf(((List<?>) key).get(0)).startsWith(prefix));
+    }
+
+    private Request.Builder newRequest(String endpoint) {
+        Request.Builder requestBuilder = new Request.Builder().url(BASE_URL + endpoint);
+        if (authToken != null) {
+            requestBuilder.addHeader("Authorization", "Bearer " + authToken);
+        }
+        return requestBuilder;
+    }
+
+    private RequestBody jsonBody(Object body) {
+        return RequestBody.create(gson.toJson(body), MediaType.get("application/json; charset=utf-8"));
+    }
+
+    private <T> CompletableFuture<T> enqueue(Request request, Class<T> responseClass) {
+        return enqueue(request, response -> parse(response.body() != null ? response.body().string() : "", responseClass));
+    }
+
+    // đọc nội dung phản hồi thành công (chạy trên luồng của OkHttp)
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(Response response) throws IOException;
+    }
+
+    private <T> CompletableFuture<T> enqueue(Request request, ResponseReader<T> reader) {
+        Call call = client().newCall(request);
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        // hủy future -> hủy request
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        String errorBody = response.body() != null ? response.body().string() : "";
+                        throw new IOException(request.method() + " request failed: " + response + " - " + errorBody);
+                    }
+                    future.complete(reader.read(response));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T parse(String responseJson, Class<T> responseClass) {
+        if (responseClass == Void.class || responseJson.isEmpty()) return null;
+        if (responseClass == String.class) return (T) responseJson;
+        return gson.fromJson(responseJson, responseClass);
+    }
+
     public OkHttpClient getClient() {
-        return client;
+        return client();
     }
 
     public Gson getGson() {
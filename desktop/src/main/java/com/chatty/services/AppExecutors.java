@@ -0,0 +1,177 @@
+package com.chatty.services;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// các luồng chạy nền dùng chung của ứng dụng, thay cho việc tạo "new Thread" mỗi lần gọi API
+// giới hạn số luồng và độ dài hàng đợi, dùng virtual thread khi chạy trên Java 21+
+public final class AppExecutors {
+    private static final int IO_THREADS = intProperty("chatty.io.threads", 16);
+    private static final int IO_QUEUE_CAPACITY = intProperty("chatty.io.queueCapacity", 1024);
+
+    private static final InstrumentedExecutor IO = new InstrumentedExecutor("chatty-io", IO_THREADS, IO_QUEUE_CAPACITY);
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    private AppExecutors() {}
+
+    // executor cho các tác vụ chặn (gọi API, đọc/ghi file)
+    public static InstrumentedExecutor io() {
+        return IO;
+    }
+
+    // 1 luồng hẹn giờ dùng chung (debounce/throttle, hết hạn...) thay cho việc tạo java.util.Timer mỗi lần,
+    // tác vụ hẹn giờ phải ngắn, việc chặn (gọi API...) cần chuyển sang io()
+    public static ScheduledExecutorService scheduler() {
+        return SCHEDULER;
+    }
+
+    // chạy tác vụ có kết quả trên executor io, lỗi được trả về qua future thay vì ném ra
+    public static <T> CompletableFuture<T> supply(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            IO.execute(() -> {
+                if (future.isCancelled()) return; // đã bị hủy khi còn trong hàng đợi
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // chạy tác vụ không có kết quả trên executor io
+    public static CompletableFuture<Void> run(ThrowingRunnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // lấy lỗi gốc từ CompletionException
+    public static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    public static void shutdown() {
+        System.out.println(IO.stats());
+        IO.shutdown();
+        SCHEDULER.shutdownNow();
+    }
+
+    @FunctionalInterface
+    public interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    // ThreadPoolExecutor có đếm số tác vụ (đã gửi/hoàn thành/lỗi/bị từ chối) và thời gian chạy
+    public static class InstrumentedExecutor extends ThreadPoolExecutor {
+        private final String name;
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalRunNanos = new AtomicLong();
+        private final AtomicLong maxRunNanos = new AtomicLong();
+        private final ThreadLocal<Long> startedAt = new ThreadLocal<>();
+
+        InstrumentedExecutor(String name, int threads, int queueCapacity) {
+            super(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity), threadFactory(name));
+            this.name = name;
+            allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.incrementAndGet();
+            try {
+                super.execute(command);
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            startedAt.set(System.nanoTime());
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            long elapsed = System.nanoTime() - startedAt.get();
+            totalRunNanos.addAndGet(elapsed);
+            maxRunNanos.accumulateAndGet(elapsed, Math::max);
+            if (t != null) {
+                failed.incrementAndGet();
+            }
+        }
+
+        // thông số hiện tại, phục vụ debug hiệu năng
+        public String stats() {
+            long completed = getCompletedTaskCount();
+            long avgMillis = completed > 0 ? TimeUnit.NANOSECONDS.toMillis(totalRunNanos.get() / completed) : 0;
+            return String.format("[%s] active=%d queued=%d submitted=%d completed=%d failed=%d rejected=%d avg=%dms max=%dms",
+                    name, getActiveCount(), getQueue().size(), submitted.get(), completed, failed.get(),
+                    rejected.get(), avgMillis, TimeUnit.NANOSECONDS.toMillis(maxRunNanos.get()));
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "chatty-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        // tác vụ bị hủy (debounce bị gọi lại) được bỏ khỏi hàng đợi ngay thay vì nằm chờ tới hạn
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    // virtual thread nếu JVM hỗ trợ (Java 21+), nếu không thì luồng thường dạng daemon
+    private static ThreadFactory threadFactory(String name) {
+        ThreadFactory virtual = virtualThreadFactory(name);
+        if (virtual != null) return virtual;
+
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // Thread.ofVirtual().name(name + "-", 1).factory(), gọi qua reflection để vẫn biên dịch được với Java 17
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            builder = nameMethod.invoke(builder, name + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
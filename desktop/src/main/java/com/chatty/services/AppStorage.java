@@ -0,0 +1,49 @@
+package com.chatty.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+// vị trí lưu dữ liệu cục bộ của ứng dụng (~/.chatty)
+public class AppStorage {
+    private static final Path ROOT = Paths.get(System.getProperty("user.home"), ".chatty");
+
+    private AppStorage() {}
+
+    // thư mục dữ liệu chung của ứng dụng
+    public static Path rootDir() {
+        return ensureDir(ROOT);
+    }
+
+    // thư mục dữ liệu riêng của từng tài khoản
+    public static Path userDir(String userId) {
+        return ensureDir(ROOT.resolve("users").resolve(userId));
+    }
+
+    // ghi file theo kiểu ghi ra file tạm rồi đổi tên, tránh hỏng file nếu ứng dụng tắt giữa chừng
+    public static void writeAtomically(Path file, String content) throws IOException {
+        writeAtomically(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void writeAtomically(Path file, byte[] content) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, content);
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Path ensureDir(Path dir) {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            System.err.println("Không tạo được thư mục dữ liệu: " + dir);
+        }
+        return dir;
+    }
+}
@@ -9,10 +9,16 @@ import okhttp3.HttpUrl;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
 public class AuthService {
+    // người dùng đăng nhập lần gần nhất, để khi còn phiên đăng nhập thì vẽ trang chủ ngay trong lúc chờ /auth/me
+    private static final String LAST_USER_FILE = "last-user.json";
+
     private final ApiService apiService;
     private final UserService userService;
     private String sessionCookie; // chưa phát triển
@@ -38,6 +44,7 @@ public class AuthService {
                 user.setToken(ApiService.authToken);
 
                 this.currentUser = user;
+                saveLastUser(user);
 
                 return user;
             }
@@ -76,6 +83,7 @@ public class AuthService {
 
         user.setToken(token);
         this.currentUser = user;
+        saveLastUser(user);
         saveSessionCookie();
 
         return user;
@@ -104,6 +112,11 @@ public class AuthService {
         this.currentUser = null;
         this.sessionCookie = null;
         clearSessionCookie();
+        clearLastUser();
+
+        // đóng các kết nối, xóa cookie và các phản hồi đã lưu của phiên cũ
+        HttpRuntime.clearCache();
+        HttpRuntime.shutdown();
     }
 
     public void setCurrentUser(User currentUser) {
@@ -132,6 +145,44 @@ public class AuthService {
         apiService.patch("/users/change-password", data, JsonObject.class);
     }
 
+    // người dùng đã lưu của lần đăng nhập trước (chưa xác thực lại), null nếu chưa có hoặc file bị hỏng
+    public User getLastUser() {
+        Path file = lastUserFile();
+        if (!Files.exists(file)) return null;
+        try {
+            User user = HttpRuntime.get().gson().fromJson(Files.readString(file, StandardCharsets.UTF_8), User.class);
+            if (user == null || user.get_id() == null) return null;
+            user.setToken(ApiService.authToken);
+            return user;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Không đọc được người dùng đã lưu: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // không ghi token đăng nhập xuống file
+    private void saveLastUser(User user) {
+        JsonObject json = HttpRuntime.get().gson().toJsonTree(user).getAsJsonObject();
+        json.remove("token");
+        try {
+            AppStorage.writeAtomically(lastUserFile(), json.toString());
+        } catch (IOException e) {
+            System.err.println("Không lưu được người dùng đã đăng nhập: " + e.getMessage());
+        }
+    }
+
+    private void clearLastUser() {
+        try {
+            Files.deleteIfExists(lastUserFile());
+        } catch (IOException e) {
+            System.err.println("Không xóa được người dùng đã lưu: " + e.getMessage());
+        }
+    }
+
+    private static Path lastUserFile() {
+        return AppStorage.rootDir().resolve(LAST_USER_FILE);
+    }
+
     private void saveSessionCookie() {
         // In a real app, save cookie to persistent storage
     }
@@ -0,0 +1,101 @@
+package com.chatty.services;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// đo thời gian các bước khởi động (hiện cửa sổ, xác thực, tải người dùng/nhóm, danh sách online...)
+// và thời điểm người dùng bắt đầu thao tác được (time-to-interactive), in ra console 1 lần khi đủ các bước cần chờ
+// các bước xong sau thời điểm đó vẫn được in riêng để biết phần nào còn chậm
+public final class BootTimer {
+    private static BootTimer current;
+    private static boolean started;
+
+    private final String name;
+    private final boolean coldStart; // lần đo đầu tiên kể từ khi mở ứng dụng
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Set<String> awaiting = new HashSet<>();
+    private boolean finished;
+
+    private BootTimer(String name, boolean coldStart) {
+        this.name = name;
+        this.coldStart = coldStart;
+    }
+
+    // bắt đầu đo 1 lần khởi động mới
+    public static synchronized BootTimer start(String name) {
+        current = new BootTimer(name, !started);
+        started = true;
+        return current;
+    }
+
+    // tiếp tục lần đo đang chạy (ví dụ mở thẳng trang chủ khi còn phiên đăng nhập),
+    // hoặc bắt đầu lần mới nếu lần trước đã kết thúc (ví dụ vào trang chủ sau khi đăng nhập)
+    public static synchronized BootTimer continueOrStart(String name) {
+        if (current == null || current.isFinished()) {
+            return start(name);
+        }
+        return current;
+    }
+
+    // các bước phải xong thì mới coi là thao tác được
+    public synchronized void awaitInteractive(String... phaseNames) {
+        awaiting.addAll(Arrays.asList(phaseNames));
+        awaiting.removeAll(phases.keySet());
+        if (awaiting.isEmpty()) finish();
+    }
+
+    // ghi nhận 1 bước vừa xong (chỉ lần đầu được tính, các lần tải lại sau đó bỏ qua)
+    public synchronized void mark(String phase) {
+        if (phases.containsKey(phase)) return;
+        long elapsed = System.nanoTime() - startNanos;
+        phases.put(phase, elapsed);
+
+        if (finished) {
+            System.out.printf("[boot] %s: %s xong sau %d ms (sau khi đã thao tác được)%n", name, phase, millis(elapsed));
+            return;
+        }
+        if (awaiting.remove(phase) && awaiting.isEmpty()) {
+            finish();
+        }
+    }
+
+    // kết thúc lần đo: in thời gian tới lúc thao tác được và từng bước đã xong
+    public synchronized void finish() {
+        if (finished) return;
+        finished = true;
+
+        long interactive = System.nanoTime() - startNanos;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("[boot] %s: thao tác được sau %d ms", name, millis(interactive)));
+        long sinceJvmStart = coldStart ? sinceJvmStartMillis() : -1;
+        if (sinceJvmStart >= 0) {
+            report.append(String.format(" (%d ms kể từ khi JVM khởi chạy)", sinceJvmStart));
+        }
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            report.append(String.format(" | %s %d ms", phase.getKey(), millis(phase.getValue())));
+        }
+        System.out.println(report);
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long sinceJvmStartMillis() {
+        try {
+            return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        } catch (RuntimeException | LinkageError e) {
+            return -1;
+        }
+    }
+}
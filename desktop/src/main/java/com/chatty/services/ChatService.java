@@ -1,69 +1,91 @@
 package com.chatty.services;
 
+import com.chatty.models.ConversationPage;
 import com.chatty.models.Message;
+import com.chatty.models.MessagePage;
 import com.chatty.models.User;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 // phục vụ nhắn tin giữa các cá nhân và nhắn tin nhóm
 public class ChatService {
+    // số tin nhắn mỗi trang lịch sử
+    public static final int PAGE_SIZE = 50;
+    // số cuộc trò chuyện mỗi trang của danh sách chat
+    public static final int USERS_PAGE_SIZE = 30;
+
     private final ApiService apiService;
     private final SocketService socketService;
     private final Gson gson;
 
     public ChatService(SocketService socketService) {
-        this.apiService = new ApiService();
         this.socketService = socketService;
 
         // dùng GsonBuilder để đăng ký deserializer
         this.gson = new GsonBuilder()
                 .registerTypeAdapter(Message.class, new MessageDeserializer())
                 .create();
+        // các danh sách được giải mã trực tiếp từ luồng phản hồi nên ApiService cần dùng cùng deserializer
+        this.apiService = new ApiService(gson);
     }
 
     // lấy danh sách tất cả người dùng
     public List<User> getUsers() throws IOException {
         try {
-            JsonObject response = apiService.get("/messages/users", JsonObject.class, null);
-
-            if(response != null && response.has("users")){
-                JsonArray userArray = response.getAsJsonArray("users");
-
-                Type listType = new TypeToken<List<User>>(){}.getType();
-                System.out.println(userArray);
-                return gson.fromJson(userArray, listType);
-            }
-
-            return new ArrayList<>();
+            return apiService.<User>getList("/messages/users", "users", User.class).getItems();
         } catch (Exception e){
             e.printStackTrace();
             return new ArrayList<>();
         }
     }
 
-    // tìm kiếm người dùng theo tên dựa trên từ khóa truyền vào
-    public List<User> searchUser(String searchTerm) throws IOException {
-        try {
-            String endpoint = "/users/search?keyword=" + searchTerm;
-            JsonObject response = apiService.get(endpoint, JsonObject.class);
+    // lấy danh sách tất cả người dùng (không chặn luồng gọi)
+    public CompletableFuture<List<User>> getUsersAsync() {
+        return ApiService.mapResponse(apiService.<User>getListAsync("/messages/users", "users", User.class),
+                ApiService.ListResponse::getItems);
+    }
 
-            if (response != null && response.has("users")){
-                JsonArray userArray = response.getAsJsonArray("users");
+    // tải 1 trang danh sách chat: before = null -> trang đầu (mới hoạt động nhất), ngược lại là nextCursor của trang trước
+    public CompletableFuture<ConversationPage> getUsersPageAsync(String before) {
+        String endpoint = "/messages/users?limit=" + USERS_PAGE_SIZE;
+        if (before != null) {
+            endpoint += "&before=" + URLEncoder.encode(before, StandardCharsets.UTF_8);
+        }
+        return ApiService.mapResponse(apiService.<User>getListAsync(endpoint, "users", User.class),
+                response -> new ConversationPage(response.getItems(), response.getBoolean("hasMore"), response.getString("nextCursor")));
+    }
 
-                Type listType = new TypeToken<List<User>>(){}.getType();
-                return gson.fromJson(userArray, listType);
-            }
+    // tìm kiếm người dùng theo tên (không chặn luồng gọi)
+    public CompletableFuture<List<User>> searchUserAsync(String searchTerm) {
+        String endpoint = "/users/search?keyword=" + URLEncoder.encode(searchTerm, StandardCharsets.UTF_8);
+        return ApiService.mapResponse(apiService.<User>getListAsync(endpoint, "users", User.class),
+                ApiService.ListResponse::getItems);
+    }
 
-            return new ArrayList<>();
+    // tải 1 trang tin nhắn với 1 người dùng: before = null -> trang mới nhất, ngược lại là nextCursor của trang trước
+    public CompletableFuture<MessagePage<Message>> getMessagesPageAsync(String friendId, String before) {
+        String endpoint = "/messages/" + friendId + "?limit=" + PAGE_SIZE;
+        if (before != null) {
+            endpoint += "&before=" + URLEncoder.encode(before, StandardCharsets.UTF_8);
+        }
+        return ApiService.mapResponse(apiService.<Message>getListAsync(endpoint, "messages", Message.class),
+                response -> new MessagePage<>(response.getItems(), response.getBoolean("hasMore"), response.getString("nextCursor")));
+    }
+
+    // tìm kiếm người dùng theo tên dựa trên từ khóa truyền vào
+    public List<User> searchUser(String searchTerm) throws IOException {
+        try {
+            String endpoint = "/users/search?keyword=" + URLEncoder.encode(searchTerm, StandardCharsets.UTF_8);
+            return apiService.<User>getList(endpoint, "users", User.class).getItems();
         } catch (Exception e) {
             e.printStackTrace();
             throw e;
@@ -72,17 +94,25 @@ public class ChatService {
 
     // tải toàn bộ tin nhắn với 1 người dùng cụ thể
     public List<Message> getMessages(String friendId) throws IOException {
-        try {
-            JsonObject response = apiService.get("/messages/" + friendId, JsonObject.class, null);
+        return fetchMessages("/messages/" + friendId);
+    }
 
-            if(response != null && response.has("messages")){
-                JsonArray messageArray = response.getAsJsonArray("messages");
+    // chỉ tải các tin nhắn từ mốc thời gian "after" trở về sau (tải bù sau khi kết nối lại)
+    public List<Message> getMessagesAfter(String friendId, String after) throws IOException {
+        String endpoint = "/messages/" + friendId + "?after=" + URLEncoder.encode(after, StandardCharsets.UTF_8);
+        return fetchMessages(endpoint);
+    }
 
-                Type listType = new TypeToken<List<Message>>(){}.getType();
-                return gson.fromJson(messageArray, listType);
-            }
+    // bản bất đồng bộ của getMessagesAfter, dùng khi mở cuộc trò chuyện đã có tin lưu sẵn trên máy
+    public CompletableFuture<List<Message>> getMessagesAfterAsync(String friendId, String after) {
+        String endpoint = "/messages/" + friendId + "?after=" + URLEncoder.encode(after, StandardCharsets.UTF_8);
+        return ApiService.mapResponse(apiService.<Message>getListAsync(endpoint, "messages", Message.class),
+                ApiService.ListResponse::getItems);
+    }
 
-            return new ArrayList<>();
+    private List<Message> fetchMessages(String endpoint) {
+        try {
+            return apiService.<Message>getList(endpoint, "messages", Message.class).getItems();
         } catch (Exception e){
             e.printStackTrace();
             return new ArrayList<>();
@@ -95,9 +125,11 @@ public class ChatService {
             return null;
         }
 
-        // tạo tin nhắn mới
+        // tạo tin nhắn mới, dùng tạm clientId làm _id cho tới khi server xác nhận
+        String clientId = UUID.randomUUID().toString();
         Message localMsg = new Message();
-        localMsg.set_id(String.valueOf(System.currentTimeMillis()));
+        localMsg.set_id(clientId);
+        localMsg.setClientId(clientId);
 
         // tạo một đối tượng User cho người gửi
         User senderUser = new User();
@@ -112,7 +144,7 @@ public class ChatService {
         localMsg.setCreatedAt(Instant.now().toString());
 
         // gửi qua socket
-        socketService.sendMessage(receiverId, content);
+        socketService.sendMessage(receiverId, content, clientId);
 
         return localMsg;
     }
@@ -0,0 +1,143 @@
+package com.chatty.services;
+
+import com.chatty.models.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// chỉ mục tiền tố theo tên/username của các người dùng đã biết (danh sách chat, thành viên nhóm, kết quả tìm trước đó)
+// để gợi ý ngay khi gõ mà không cần hỏi server; kết quả server của từng từ khóa cũng được giữ lại,
+// từ khóa dài hơn được lọc từ kết quả của từ khóa ngắn hơn thay vì hỏi lại server
+// chỉ dùng trên luồng FX nên không cần đồng bộ
+public class ContactIndex {
+    private static final int MAX_CACHED_QUERIES = 50;
+
+    private final Map<String, User> users = new HashMap<>();
+    private final Map<String, Set<String>> termsOf = new HashMap<>();
+    // từ đã chuẩn hóa -> id các người dùng có từ đó trong tên/username, sắp xếp theo từ để tìm theo tiền tố
+    private final TreeMap<String, Set<String>> byTerm = new TreeMap<>();
+
+    // từ khóa đã chuẩn hóa -> kết quả server trả về, từ khóa ít dùng nhất bị loại trước
+    private final LinkedHashMap<String, List<User>> serverResults = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<User>> eldest) {
+            return size() > MAX_CACHED_QUERIES;
+        }
+    };
+
+    // thêm/cập nhật người dùng vào chỉ mục
+    public void addAll(Collection<User> list) {
+        for (User user : list) {
+            if (user == null || user.get_id() == null) continue;
+            remove(user.get_id());
+
+            Set<String> terms = new HashSet<>(SearchText.tokens(user.getFullName()));
+            terms.addAll(SearchText.tokens(user.getUsername()));
+            for (String term : terms) {
+                byTerm.computeIfAbsent(term, t -> new HashSet<>()).add(user.get_id());
+            }
+            termsOf.put(user.get_id(), terms);
+            users.put(user.get_id(), user);
+        }
+    }
+
+    // người dùng đã biết theo id, null nếu chưa có
+    public User get(String id) {
+        return users.get(id);
+    }
+
+    // người dùng có mỗi từ trong từ khóa là tiền tố của 1 từ trong tên/username,
+    // ai khớp trọn từ nhiều hơn đứng trước, sau đó theo tên
+    public List<User> search(String query, int limit) {
+        List<String> terms = SearchText.tokens(query);
+        if (terms.isEmpty()) return new ArrayList<>();
+
+        Map<String, Integer> scores = null;
+        for (String term : terms) {
+            Map<String, Integer> termScores = new HashMap<>();
+            for (Map.Entry<String, Set<String>> match : byTerm.subMap(term, true, term + Character.MAX_VALUE, true).entrySet()) {
+                int score = match.getKey().equals(term) ? 2 : 1;
+                for (String id : match.getValue()) {
+                    termScores.merge(id, score, Math::max);
+                }
+            }
+
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                scores.keySet().retainAll(termScores.keySet());
+                scores.replaceAll((id, score) -> score + termScores.get(id));
+            }
+            if (scores.isEmpty()) return new ArrayList<>();
+        }
+
+        Map<String, Integer> finalScores = scores;
+        List<User> result = new ArrayList<>();
+        for (String id : scores.keySet()) {
+            result.add(users.get(id));
+        }
+        result.sort(Comparator.comparing((User u) -> -finalScores.get(u.get_id()))
+                .thenComparing(u -> SearchText.fold(u.getFullName())));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    // kết quả server của từ khóa, hoặc lọc lại từ kết quả của 1 tiền tố của nó đã tìm trước đó
+    // (server tìm theo chuỗi con của username nên kết quả của từ khóa dài hơn luôn nằm trong kết quả của tiền tố)
+    // trả về null nếu chưa có gì để dùng -> cần hỏi server
+    public List<User> cachedServerResults(String query) {
+        String key = SearchText.fold(query.trim());
+        for (int end = key.length(); end > 0; end--) {
+            List<User> cached = serverResults.get(key.substring(0, end));
+            if (cached == null) continue;
+            if (end == key.length()) return cached;
+
+            List<User> filtered = new ArrayList<>();
+            for (User user : cached) {
+                if (SearchText.fold(user.getUsername()).contains(key)) {
+                    filtered.add(user);
+                }
+            }
+            return filtered;
+        }
+        return null;
+    }
+
+    // lưu kết quả server của từ khóa, đồng thời đưa các người dùng này vào chỉ mục
+    public void putServerResults(String query, List<User> result) {
+        serverResults.put(SearchText.fold(query.trim()), new ArrayList<>(result));
+        addAll(result);
+    }
+
+    // gộp 2 danh sách kết quả theo id, giữ thứ tự: kết quả trên máy trước rồi tới kết quả server
+    public static List<User> merge(List<User> local, List<User> remote) {
+        Map<String, User> byId = new LinkedHashMap<>();
+        for (User user : local) {
+            byId.putIfAbsent(user.get_id(), user);
+        }
+        for (User user : remote) {
+            byId.putIfAbsent(user.get_id(), user);
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    private void remove(String id) {
+        Set<String> terms = termsOf.remove(id);
+        users.remove(id);
+        if (terms == null) return;
+        for (String term : terms) {
+            Set<String> ids = byTerm.get(term);
+            if (ids == null) continue;
+            ids.remove(id);
+            if (ids.isEmpty()) byTerm.remove(term);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.chatty.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// danh sách người dùng/nhóm ở thanh bên: tra cứu theo id O(1) và sắp xếp theo hoạt động gần nhất,
+// đưa 1 cuộc trò chuyện lên đầu chỉ tốn O(log n) thay vì xóa/chèn lại trên ArrayList
+// các thay đổi được báo qua listener để nơi dùng vẽ lại giao diện 1 lần cho nhiều thay đổi
+// chỉ dùng trên luồng FX nên không cần đồng bộ
+public class ConversationRegistry<T> {
+    // listener nhận các phần tử vừa thay đổi, reordered = true nếu thứ tự danh sách bị thay đổi
+    @FunctionalInterface
+    public interface Listener<T> {
+        void changed(List<T> items, boolean reordered);
+    }
+
+    private final Function<T, String> idOf;
+    private final Map<String, T> byId = new HashMap<>();
+    // thứ tự hoạt động của từng id, số lớn hơn = hoạt động gần hơn
+    private final Map<String, Long> activityOf = new HashMap<>();
+    private final TreeMap<Long, T> byActivity = new TreeMap<>();
+    private final List<Listener<T>> listeners = new ArrayList<>();
+    private long activityCounter;
+
+    public ConversationRegistry(Function<T, String> idOf) {
+        this.idOf = idOf;
+    }
+
+    public void addListener(Listener<T> listener) {
+        listeners.add(listener);
+    }
+
+    // thay toàn bộ danh sách, giữ nguyên thứ tự truyền vào (phần tử đầu tiên là mới nhất)
+    public void setAll(Collection<T> items) {
+        byId.clear();
+        activityOf.clear();
+        byActivity.clear();
+
+        long activity = activityCounter + items.size();
+        activityCounter = activity;
+        for (T item : items) {
+            String id = idOf.apply(item);
+            if (byId.containsKey(id)) continue;
+            byId.put(id, item);
+            activityOf.put(id, activity);
+            byActivity.put(activity, item);
+            activity--;
+        }
+        fire(new ArrayList<>(items), true);
+    }
+
+    // thay toàn bộ danh sách bằng dữ liệu mới nhưng giữ lại đối tượng cũ cùng id (dữ liệu được chép vào qua merge)
+    // để ô đang hiện, cuộc trò chuyện đang chọn... vẫn trỏ đúng đối tượng; trả về danh sách sau khi gộp
+    public List<T> reconcile(Collection<T> fresh, BiConsumer<T, T> merge) {
+        List<T> result = new ArrayList<>(fresh.size());
+        for (T item : fresh) {
+            T existing = byId.get(idOf.apply(item));
+            if (existing != null && existing != item) {
+                merge.accept(existing, item);
+                result.add(existing);
+            } else {
+                result.add(item);
+            }
+        }
+        setAll(result);
+        return result;
+    }
+
+    // thêm các phần tử vào cuối danh sách (trang tiếp theo của danh sách), phần tử đã có cùng id
+    // chỉ được chép dữ liệu mới qua merge và giữ nguyên vị trí; trả về danh sách sau khi gộp
+    public List<T> appendAll(Collection<T> fresh, BiConsumer<T, T> merge) {
+        List<T> result = new ArrayList<>(fresh.size());
+        long activity = byActivity.isEmpty() ? activityCounter : byActivity.firstKey() - 1;
+        for (T item : fresh) {
+            String id = idOf.apply(item);
+            T existing = byId.get(id);
+            if (existing != null) {
+                if (existing != item) merge.accept(existing, item);
+                result.add(existing);
+                continue;
+            }
+            byId.put(id, item);
+            activityOf.put(id, activity);
+            byActivity.put(activity, item);
+            activity--;
+            result.add(item);
+        }
+        if (!result.isEmpty()) {
+            fire(result, true);
+        }
+        return result;
+    }
+
+    public T get(String id) {
+        return id != null ? byId.get(id) : null;
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    // các phần tử theo thứ tự hoạt động gần nhất trước
+    public List<T> ordered() {
+        return new ArrayList<>(byActivity.descendingMap().values());
+    }
+
+    // thêm mới hoặc thay phần tử cùng id và đưa lên đầu danh sách
+    public void put(T item) {
+        String id = idOf.apply(item);
+        Long previous = activityOf.get(id);
+        if (previous != null) {
+            byActivity.remove(previous);
+        }
+        byId.put(id, item);
+        long activity = ++activityCounter;
+        activityOf.put(id, activity);
+        byActivity.put(activity, item);
+        fire(List.of(item), true);
+    }
+
+    public T remove(String id) {
+        T item = byId.remove(id);
+        if (item == null) return null;
+        byActivity.remove(activityOf.remove(id));
+        fire(List.of(item), true);
+        return item;
+    }
+
+    // đưa phần tử lên đầu danh sách (vừa có tin nhắn mới), trả về phần tử hoặc null nếu không có
+    public T moveToTop(String id) {
+        T item = byId.get(id);
+        if (item == null) return null;
+
+        Long previous = activityOf.get(id);
+        if (previous != null && previous == activityCounter) {
+            fire(List.of(item), false); // đã ở đầu danh sách
+            return item;
+        }
+        byActivity.remove(previous);
+        long activity = ++activityCounter;
+        activityOf.put(id, activity);
+        byActivity.put(activity, item);
+        fire(List.of(item), true);
+        return item;
+    }
+
+    // sửa dữ liệu của 1 phần tử (online, số tin chưa đọc...) mà không đổi thứ tự
+    public T update(String id, Consumer<T> change) {
+        T item = byId.get(id);
+        if (item == null) return null;
+        change.accept(item);
+        fire(List.of(item), false);
+        return item;
+    }
+
+    // sửa nhiều phần tử 1 lần, listener chỉ được báo 1 lần cho cả lô
+    public List<T> updateAll(Collection<String> ids, Consumer<T> change) {
+        List<T> changed = new ArrayList<>();
+        for (String id : ids) {
+            T item = byId.get(id);
+            if (item != null) {
+                change.accept(item);
+                changed.add(item);
+            }
+        }
+        if (!changed.isEmpty()) {
+            fire(changed, false);
+        }
+        return changed;
+    }
+
+    private void fire(List<T> items, boolean reordered) {
+        for (Listener<T> listener : listeners) {
+            listener.changed(items, reordered);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.chatty.services;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// theo dõi mốc tin nhắn mới nhất (high-water mark) của các cuộc trò chuyện gần đây
+// phục vụ tải bù các tin bị lỡ khi socket mất kết nối rồi kết nối lại
+public class ConversationSyncTracker {
+    private static final int MAX_CONVERSATIONS = 20;   // số cuộc trò chuyện gần đây được theo dõi
+    private static final int MAX_RECENT_IDS = 50;      // số id tin nhắn gần nhất giữ lại để lọc trùng
+
+    // mốc của 1 cuộc trò chuyện
+    private static class Mark {
+        Instant createdAt;
+        String createdAtRaw;
+        final LinkedHashSet<String> recentIds = new LinkedHashSet<>();
+    }
+
+    // sắp xếp theo thứ tự truy cập, cuộc trò chuyện ít hoạt động nhất bị loại trước
+    private final LinkedHashMap<String, Mark> marks = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Mark> eldest) {
+            return size() > MAX_CONVERSATIONS;
+        }
+    };
+
+    public static String directKey(String userId) {
+        return "user:" + userId;
+    }
+
+    public static String groupKey(String groupId) {
+        return "group:" + groupId;
+    }
+
+    public static boolean isGroupKey(String key) {
+        return key.startsWith("group:");
+    }
+
+    // lấy id người dùng/nhóm từ khóa
+    public static String targetId(String key) {
+        return key.substring(key.indexOf(':') + 1);
+    }
+
+    // ghi nhận 1 tin nhắn từ server, trả về false nếu tin này đã được ghi nhận trước đó
+    public synchronized boolean record(String key, String messageId, String createdAt) {
+        Mark mark = marks.computeIfAbsent(key, k -> new Mark());
+
+        if (messageId != null) {
+            if (mark.recentIds.contains(messageId)) return false;
+            mark.recentIds.add(messageId);
+            if (mark.recentIds.size() > MAX_RECENT_IDS) {
+                mark.recentIds.remove(mark.recentIds.iterator().next());
+            }
+        }
+
+        Instant time = parse(createdAt);
+        if (time != null && (mark.createdAt == null || time.isAfter(mark.createdAt))) {
+            mark.createdAt = time;
+            mark.createdAtRaw = createdAt;
+        }
+        return true;
+    }
+
+    // đánh dấu cuộc trò chuyện vừa được mở (kể cả khi chưa có tin nhắn nào)
+    public synchronized void touch(String key) {
+        marks.computeIfAbsent(key, k -> new Mark());
+    }
+
+    // mốc hiện tại của cuộc trò chuyện, null nếu chưa biết
+    public synchronized String highWaterMark(String key) {
+        Mark mark = marks.get(key);
+        return mark != null ? mark.createdAtRaw : null;
+    }
+
+    // danh sách khóa và mốc của các cuộc trò chuyện, hoạt động gần nhất đứng đầu
+    public synchronized Map<String, String> snapshot() {
+        // duyệt entrySet để không làm thay đổi thứ tự truy cập
+        List<Map.Entry<String, Mark>> entries = new ArrayList<>(marks.entrySet());
+        Collections.reverse(entries);
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Mark> entry : entries) {
+            if (entry.getValue().createdAtRaw != null) {
+                result.put(entry.getKey(), entry.getValue().createdAtRaw);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        marks.clear();
+    }
+
+    private static Instant parse(String createdAt) {
+        if (createdAt == null || createdAt.isEmpty()) return null;
+        try {
+            return Instant.parse(createdAt);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -1,23 +1,31 @@
 package com.chatty.services;
 
 import com.chatty.models.Group;
+import com.chatty.models.GroupMemberPage;
+import com.chatty.models.GroupRoster;
 import com.chatty.models.GroupMessage;
+import com.chatty.models.MessagePage;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 // phục vụ quản lý các hoạt động liên quan đến nhóm
 public class GroupService {
+    // số thành viên mỗi lần tải danh sách thành viên
+    public static final int MEMBERS_PAGE_SIZE = 50;
+
     private final ApiService apiService;
     private final SocketService socketService;
     private final Gson gson;
@@ -25,7 +33,7 @@ public class GroupService {
     public GroupService(SocketService socketService) {
         this.apiService = new ApiService();
         this.socketService = socketService;
-        this.gson = new Gson();
+        this.gson = HttpRuntime.get().gson();
     }
 
     // ==================== GROUP CRUD ====================
@@ -33,21 +41,19 @@ public class GroupService {
     // lấy danh sách tất cả các nhóm của người dùng
     public List<Group> getGroups() throws IOException {
         try {
-            JsonObject response = apiService.get("/groups/getGroups", JsonObject.class, null);
-
-            if (response != null && response.has("groups")) {
-                JsonArray groupArray = response.getAsJsonArray("groups");
-                Type listType = new TypeToken<List<Group>>(){}.getType();
-                return gson.fromJson(groupArray, listType);
-            }
-
-            return new ArrayList<>();
+            return apiService.<Group>getList("/groups/getGroups", "groups", Group.class).getItems();
         } catch (Exception e) {
             e.printStackTrace();
             throw e;
         }
     }
 
+    // lấy danh sách các nhóm của người dùng (không chặn luồng gọi)
+    public CompletableFuture<List<Group>> getGroupsAsync() {
+        return ApiService.mapResponse(apiService.<Group>getListAsync("/groups/getGroups", "groups", Group.class),
+                ApiService.ListResponse::getItems);
+    }
+
     // tạo nhóm
     public Group createGroup(String name, String description, List<String> memberIds) throws IOException {
         try {
@@ -91,10 +97,10 @@ public class GroupService {
         apiService.patch("/groups/update/" + groupId, updateData, Void.class);
     }
 
-    // lấy thông tin chi tiết của nhóm
+    // lấy thông tin chi tiết của nhóm (kèm số thành viên, không kèm danh sách thành viên)
     public Group getGroupInfo(String groupId) throws IOException {
         try {
-            JsonObject response = apiService.get("/groups/" + groupId, JsonObject.class, null);
+            JsonObject response = apiService.get(groupInfoEndpoint(groupId), JsonObject.class, null);
 
             if (response != null && response.has("group")) {
                 return gson.fromJson(response.get("group"), Group.class);
@@ -107,6 +113,18 @@ public class GroupService {
         }
     }
 
+    // lấy thông tin chi tiết của nhóm (không chặn luồng gọi)
+    public CompletableFuture<Group> getGroupInfoAsync(String groupId) {
+        return ApiService.mapResponse(apiService.getAsync(groupInfoEndpoint(groupId), JsonObject.class),
+                response -> response != null && response.has("group")
+                        ? gson.fromJson(response.get("group"), Group.class)
+                        : null);
+    }
+
+    private static String groupInfoEndpoint(String groupId) {
+        return "/groups/" + groupId + "?members=false";
+    }
+
     // xóa nhóm (với owner) hoặc rời nhóm (với admin/member)
     public boolean deleteGroup(String groupId) throws IOException {
         try {
@@ -123,16 +141,35 @@ public class GroupService {
 
     // lấy toàn bộ tin nhắn nhóm
     public List<GroupMessage> getGroupMessages(String groupId) throws IOException {
-        try {
-            JsonObject response = apiService.get("/groups/" + groupId + "/messages", JsonObject.class, null);
+        return fetchGroupMessages("/groups/" + groupId + "/messages");
+    }
 
-            if (response != null && response.has("messages")) {
-                JsonArray messageArray = response.getAsJsonArray("messages");
-                Type listType = new TypeToken<List<GroupMessage>>(){}.getType();
-                return gson.fromJson(messageArray, listType);
-            }
+    // tải 1 trang tin nhắn nhóm: before = null -> trang mới nhất, ngược lại là nextCursor của trang trước
+    public CompletableFuture<MessagePage<GroupMessage>> getGroupMessagesPageAsync(String groupId, String before) {
+        String endpoint = "/groups/" + groupId + "/messages?limit=" + ChatService.PAGE_SIZE;
+        if (before != null) {
+            endpoint += "&before=" + URLEncoder.encode(before, StandardCharsets.UTF_8);
+        }
+        return ApiService.mapResponse(apiService.<GroupMessage>getListAsync(endpoint, "messages", GroupMessage.class),
+                response -> new MessagePage<>(response.getItems(), response.getBoolean("hasMore"), response.getString("nextCursor")));
+    }
 
-            return new ArrayList<>();
+    // chỉ lấy các tin nhắn nhóm từ mốc thời gian "after" trở về sau (tải bù sau khi kết nối lại)
+    public List<GroupMessage> getGroupMessagesAfter(String groupId, String after) throws IOException {
+        String endpoint = "/groups/" + groupId + "/messages?after=" + URLEncoder.encode(after, StandardCharsets.UTF_8);
+        return fetchGroupMessages(endpoint);
+    }
+
+    // bản bất đồng bộ của getGroupMessagesAfter, dùng khi mở nhóm đã có tin lưu sẵn trên máy
+    public CompletableFuture<List<GroupMessage>> getGroupMessagesAfterAsync(String groupId, String after) {
+        String endpoint = "/groups/" + groupId + "/messages?after=" + URLEncoder.encode(after, StandardCharsets.UTF_8);
+        return ApiService.mapResponse(apiService.<GroupMessage>getListAsync(endpoint, "messages", GroupMessage.class),
+                ApiService.ListResponse::getItems);
+    }
+
+    private List<GroupMessage> fetchGroupMessages(String endpoint) throws IOException {
+        try {
+            return apiService.<GroupMessage>getList(endpoint, "messages", GroupMessage.class).getItems();
         } catch (Exception e) {
             e.printStackTrace();
             throw e;
@@ -145,37 +182,44 @@ public class GroupService {
             return null;
         }
 
-        // tạo tin nhắn cục bộ để cập nhật UI ngay lập tức
+        // tạo tin nhắn cục bộ để cập nhật UI ngay lập tức, dùng tạm clientId làm _id cho tới khi server xác nhận
+        String clientId = UUID.randomUUID().toString();
         GroupMessage localMsg = new GroupMessage();
-        localMsg.set_id(String.valueOf(System.currentTimeMillis()));
+        localMsg.set_id(clientId);
+        localMsg.setClientId(clientId);
         localMsg.setGroupId(groupId);
         localMsg.setContent(content);
         localMsg.setCreatedAt(Instant.now().toString());
 
         // gửi tin nhắn qua socket
-        socketService.sendGroupMessage(groupId, content);
+        socketService.sendGroupMessage(groupId, content, clientId);
 
         return localMsg;
     }
 
     // ==================== GROUP MEMBERS ====================
 
-    // lấy danh sách thành viên của nhóm
-    public List<Group.GroupMember> getGroupMembers(String groupId) throws IOException {
-        try {
-            JsonObject response = apiService.get("/groups/" + groupId + "/getMembers", JsonObject.class, null);
+    // tải 1 trang thành viên: query = null -> tất cả, ngược lại chỉ người có tên/username chứa query (server tìm);
+    // before = null -> trang đầu, ngược lại là nextCursor của trang trước
+    public CompletableFuture<GroupMemberPage> getGroupMembersPageAsync(String groupId, String query, String before) {
+        String endpoint = "/groups/" + groupId + "/getMembers?limit=" + MEMBERS_PAGE_SIZE;
+        if (query != null && !query.isBlank()) {
+            endpoint += "&q=" + URLEncoder.encode(query.trim(), StandardCharsets.UTF_8);
+        }
+        if (before != null) {
+            endpoint += "&before=" + URLEncoder.encode(before, StandardCharsets.UTF_8);
+        }
+        return ApiService.mapResponse(apiService.<Group.GroupMember>getListAsync(endpoint, "members", Group.GroupMember.class),
+                response -> new GroupMemberPage(response.getItems(), response.getBoolean("hasMore"), response.getString("nextCursor")));
+    }
 
-            if (response != null && response.has("members")) {
-                JsonArray memberArray = response.getAsJsonArray("members");
-                Type listType = new TypeToken<List<Group.GroupMember>>(){}.getType();
-                return gson.fromJson(memberArray, listType);
-            }
+    // id các thành viên và admin của nhóm (kiểm tra quyền, đã là thành viên chưa)
+    public GroupRoster getRoster(String groupId) throws IOException {
+        return apiService.get("/groups/" + groupId + "/memberIds", GroupRoster.class);
+    }
 
-            return new ArrayList<>();
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw e;
-        }
+    public CompletableFuture<GroupRoster> getRosterAsync(String groupId) {
+        return apiService.getAsync("/groups/" + groupId + "/memberIds", GroupRoster.class);
     }
 
     // thêm thành viên vào nhóm
@@ -251,9 +295,9 @@ public class GroupService {
         socketService.emitGroupTypingStop(groupId);
     }
 
-    // báo hiệu đã xem tin nhắn
+    // báo hiệu đã xem tới tin nhắn này (các tin cũ hơn cũng được tính là đã xem)
     public void markMessageAsSeen(String messageId, String groupId) {
-        socketService.emitSeenGroupMessage(messageId, groupId);
+        socketService.emitGroupReadUpTo(groupId, messageId);
     }
 
     // ==================== HELPER METHODS ====================
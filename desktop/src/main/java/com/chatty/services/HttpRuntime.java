@@ -0,0 +1,146 @@
+package com.chatty.services;
+
+import com.google.gson.Gson;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// HTTP client, connection pool, cookie jar và Gson dùng chung cho toàn bộ các service
+// các thông số có thể chỉnh qua system property, ví dụ: -Dchatty.http.maxIdleConnections=16
+public final class HttpRuntime {
+    private static final int MAX_IDLE_CONNECTIONS = intProperty("chatty.http.maxIdleConnections", 8);
+    private static final int KEEP_ALIVE_SECONDS = intProperty("chatty.http.keepAliveSeconds", 300);
+    private static final int MAX_REQUESTS = intProperty("chatty.http.maxRequests", 64);
+    private static final int MAX_REQUESTS_PER_HOST = intProperty("chatty.http.maxRequestsPerHost", 8);
+    private static final int CONNECT_TIMEOUT_SECONDS = intProperty("chatty.http.connectTimeoutSeconds", 10);
+    private static final int READ_TIMEOUT_SECONDS = intProperty("chatty.http.readTimeoutSeconds", 30);
+    // thời gian dùng lại kết quả của 1 GET vừa xong cho các lần gọi giống hệt (0 = chỉ gộp các lần gọi đang chạy)
+    private static final int GET_FRESH_MILLIS = intProperty("chatty.http.getFreshMillis", 500);
+    // dung lượng tối đa của cache HTTP trên đĩa
+    private static final int CACHE_MAX_MB = intProperty("chatty.http.cacheMaxMb", 20);
+
+    private static HttpRuntime instance;
+
+    private final OkHttpClient client;
+    private final MemoryCookieJar cookieJar;
+    private final Cache cache;
+    private final Gson gson;
+    private final SingleFlight getFlights = new SingleFlight(GET_FRESH_MILLIS);
+
+    private HttpRuntime() {
+        this.cookieJar = new MemoryCookieJar();
+        // các phản hồi có ETag (danh sách chat, nhóm, thông tin/thành viên nhóm) được giữ lại trên đĩa,
+        // lần tải sau gửi kèm If-None-Match, server trả 304 thì OkHttp dùng lại bản đã lưu
+        this.cache = new Cache(AppStorage.rootDir().resolve("http-cache").toFile(), CACHE_MAX_MB * 1024L * 1024L);
+
+        // luồng của dispatcher có đặt tên và giới hạn số lượng (thay cho cached pool mặc định của OkHttp)
+        Dispatcher dispatcher = new Dispatcher(new AppExecutors.InstrumentedExecutor("chatty-http", MAX_REQUESTS, MAX_REQUESTS));
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        this.client = new OkHttpClient.Builder()
+                .cookieJar(cookieJar)
+                .cache(cache)
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS))
+                // HTTP/2 được dùng khi server hỗ trợ (qua TLS/ALPN), nếu không thì HTTP/1.1 keep-alive
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                // request ghi xong thì các kết quả GET đang giữ có thể đã cũ
+                .addInterceptor(chain -> {
+                    Response response = chain.proceed(chain.request());
+                    if (!"GET".equals(chain.request().method())) {
+                        getFlights.invalidate();
+                    }
+                    return response;
+                })
+                .build();
+        this.gson = new Gson();
+    }
+
+    // lấy runtime hiện tại, tạo mới nếu chưa có hoặc đã bị tắt (sau khi đăng xuất)
+    public static synchronized HttpRuntime get() {
+        if (instance == null) {
+            instance = new HttpRuntime();
+        }
+        return instance;
+    }
+
+    // đóng các kết nối đang giữ, dừng luồng của dispatcher và xóa cookie (khi đăng xuất/thoát ứng dụng)
+    public static synchronized void shutdown() {
+        if (instance == null) return;
+
+        instance.cookieJar.clear();
+        instance.client.dispatcher().cancelAll();
+        instance.client.dispatcher().executorService().shutdown();
+        instance.client.connectionPool().evictAll();
+        try {
+            instance.cache.close();
+        } catch (IOException e) {
+            System.err.println("Không đóng được cache HTTP: " + e.getMessage());
+        }
+        instance = null;
+    }
+
+    // xóa cache HTTP trên đĩa (khi đăng xuất, không để lại dữ liệu của tài khoản cũ)
+    public static synchronized void clearCache() {
+        try {
+            get().cache.evictAll();
+        } catch (IOException e) {
+            System.err.println("Không xóa được cache HTTP: " + e.getMessage());
+        }
+    }
+
+    public OkHttpClient client() {
+        return client;
+    }
+
+    public Gson gson() {
+        return gson;
+    }
+
+    // các GET đang chạy/vừa xong, dùng chung cho mọi ApiService
+    SingleFlight getFlights() {
+        return getFlights;
+    }
+
+    private static class MemoryCookieJar implements CookieJar {
+        private final ConcurrentHashMap<String, List<Cookie>> cookieStore = new ConcurrentHashMap<>();
+
+        @Override
+        public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+            cookieStore.put(url.host(), cookies);
+        }
+
+        @Override
+        public List<Cookie> loadForRequest(HttpUrl url) {
+            List<Cookie> cookies = cookieStore.get(url.host());
+            return cookies != null ? cookies : new ArrayList<>();
+        }
+
+        void clear() {
+            cookieStore.clear();
+        }
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.chatty.services;
+
+import javafx.scene.image.Image;
+import javafx.stage.Screen;
+import okhttp3.CacheControl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// cache ảnh (chủ yếu là avatar) dùng chung cho toàn ứng dụng:
+// - ảnh được giải mã đúng kích thước hiển thị thay vì độ phân giải gốc
+// - giữ trong bộ nhớ theo LRU, giới hạn theo số byte sau khi giải mã
+// - nhiều nơi cùng yêu cầu 1 ảnh đang tải thì dùng chung 1 lần tải
+// - file gốc được lưu ở ~/.chatty/images để mở lại ứng dụng không phải tải lại
+public final class ImageCache {
+    private static final long MAX_MEMORY_BYTES = intProperty("chatty.images.maxMemoryMegabytes", 32) * 1024L * 1024L;
+    private static final long MAX_DISK_BYTES = intProperty("chatty.images.maxDiskMegabytes", 64) * 1024L * 1024L;
+    private static final int DISK_TRIM_INTERVAL = 50; // kiểm tra dung lượng đĩa sau mỗi 50 ảnh tải mới
+
+    private static final ImageCache INSTANCE = new ImageCache();
+
+    // khóa "<url>@<kích thước px>", sắp xếp theo thứ tự truy cập
+    private final LinkedHashMap<String, Image> images = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, CompletableFuture<Image>> decoding = new HashMap<>();
+    private final Map<String, CompletableFuture<byte[]>> downloads = new HashMap<>();
+    private long memoryBytes;
+
+    private final Path diskDir;
+    private final AtomicInteger downloadsSinceTrim = new AtomicInteger();
+
+    private ImageCache() {
+        this.diskDir = AppStorage.rootDir().resolve("images");
+    }
+
+    public static ImageCache get() {
+        return INSTANCE;
+    }
+
+    // ảnh đã giải mã sẵn trong bộ nhớ (null nếu chưa có hoặc chưa tải xong)
+    public synchronized Image getIfLoaded(String url, double size) {
+        return images.get(keyOf(url, pixelSize(size)));
+    }
+
+    // lấy ảnh vuông kích thước size (đơn vị hiển thị), tải/giải mã trên luồng nền nếu chưa có
+    public CompletableFuture<Image> load(String url, double size) {
+        int pixels = pixelSize(size);
+        String key = keyOf(url, pixels);
+
+        synchronized (this) {
+            Image cached = images.get(key);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+
+            CompletableFuture<Image> pending = decoding.get(key);
+            if (pending != null) return pending;
+
+            CompletableFuture<Image> future = download(url).thenApplyAsync(bytes -> {
+                Image image = new Image(new ByteArrayInputStream(bytes), pixels, pixels, true, true);
+                if (image.isError()) {
+                    // file trên đĩa hỏng -> xóa để lần sau tải lại từ server
+                    deleteFromDisk(url);
+                    throw new IllegalStateException("Không giải mã được ảnh " + url, image.getException());
+                }
+                return image;
+            }, AppExecutors.io());
+            decoding.put(key, future);
+
+            future.whenComplete((image, error) -> {
+                synchronized (this) {
+                    decoding.remove(key);
+                    if (image != null) {
+                        put(key, image);
+                    }
+                }
+            });
+            return future;
+        }
+    }
+
+    // tải nội dung gốc của ảnh: đọc từ đĩa nếu có, nếu không thì tải qua HTTP rồi lưu xuống đĩa
+    private synchronized CompletableFuture<byte[]> download(String url) {
+        CompletableFuture<byte[]> pending = downloads.get(url);
+        if (pending != null) return pending;
+
+        CompletableFuture<byte[]> future = AppExecutors.supply(() -> {
+            Path file = diskDir.resolve(hash(url));
+            if (Files.exists(file)) {
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+                return Files.readAllBytes(file);
+            }
+
+            byte[] bytes = fetch(url);
+            try {
+                Files.createDirectories(diskDir);
+                AppStorage.writeAtomically(file, bytes);
+                if (downloadsSinceTrim.incrementAndGet() >= DISK_TRIM_INTERVAL) {
+                    downloadsSinceTrim.set(0);
+                    trimDisk();
+                }
+            } catch (IOException e) {
+                System.err.println("Không lưu được ảnh vào cache: " + e.getMessage());
+            }
+            return bytes;
+        });
+        downloads.put(url, future);
+        future.whenComplete((bytes, error) -> {
+            synchronized (this) {
+                downloads.remove(url);
+            }
+        });
+        return future;
+    }
+
+    private void deleteFromDisk(String url) {
+        try {
+            Files.deleteIfExists(diskDir.resolve(hash(url)));
+        } catch (IOException e) {
+            System.err.println("Không xóa được ảnh hỏng khỏi cache: " + e.getMessage());
+        }
+    }
+
+    private static byte[] fetch(String url) throws IOException {
+        if (!url.startsWith("http")) {
+            // file cục bộ hoặc tài nguyên của ứng dụng
+            try (InputStream in = new URL(url).openStream()) {
+                return in.readAllBytes();
+            }
+        }
+
+        // ảnh đã có cache riêng trên đĩa, không lưu thêm 1 bản vào cache HTTP
+        Request request = new Request.Builder().url(url).get()
+                .cacheControl(new CacheControl.Builder().noStore().build())
+                .build();
+        try (Response response = HttpRuntime.get().client().newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("Tải ảnh thất bại: " + response);
+            }
+            return response.body().bytes();
+        }
+    }
+
+    // thêm ảnh vào bộ nhớ, loại các ảnh lâu không dùng nhất khi vượt giới hạn
+    private void put(String key, Image image) {
+        Image previous = images.put(key, image);
+        if (previous != null) {
+            memoryBytes -= bytesOf(previous);
+        }
+        memoryBytes += bytesOf(image);
+
+        Iterator<Map.Entry<String, Image>> it = images.entrySet().iterator();
+        while (memoryBytes > MAX_MEMORY_BYTES && it.hasNext()) {
+            Map.Entry<String, Image> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            memoryBytes -= bytesOf(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    // xóa các file ảnh lâu không dùng nhất khi thư mục cache vượt giới hạn
+    private void trimDisk() throws IOException {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(diskDir)) {
+            for (Path file : stream) {
+                files.add(file);
+                total += Files.size(file);
+            }
+        }
+        if (total <= MAX_DISK_BYTES) return;
+
+        files.sort(Comparator.comparing(ImageCache::lastModified));
+        for (Path file : files) {
+            if (total <= MAX_DISK_BYTES * 9 / 10) break;
+            total -= Files.size(file);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // 4 byte/pixel (ARGB) sau khi giải mã
+    private static long bytesOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    // kích thước pixel thực tế cần giải mã, tính cả tỉ lệ màn hình HiDPI
+    private static int pixelSize(double size) {
+        double scale = Screen.getPrimary().getOutputScaleX();
+        return (int) Math.ceil(size * Math.max(1, scale));
+    }
+
+    private static String keyOf(String url, int pixels) {
+        return url + "@" + pixels;
+    }
+
+    private static String hash(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
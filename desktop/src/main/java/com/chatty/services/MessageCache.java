@@ -0,0 +1,266 @@
+package com.chatty.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// lưu tin nhắn của từng cuộc trò chuyện xuống đĩa để mở lại là hiện ngay, sau đó chỉ tải phần mới hơn
+// mỗi cuộc trò chuyện là 1 file JSON Lines (1 tin nhắn/dòng), tin mới hoặc tin được cập nhật được ghi nối vào cuối,
+// dòng sau thay thế dòng trước cùng _id; file được viết gọn lại khi có quá nhiều dòng thừa
+// tổng dung lượng có giới hạn, cuộc trò chuyện lâu không mở (theo thời gian sửa file) bị xóa trước
+public class MessageCache {
+    private static final int MAX_MESSAGES = intProperty("chatty.cache.maxMessagesPerConversation", 500);
+    private static final long MAX_BYTES = intProperty("chatty.cache.maxMegabytes", 32) * 1024L * 1024L;
+    private static final String EXTENSION = ".jsonl";
+
+    private final Path dir;
+    private final Gson gson = HttpRuntime.get().gson();
+    // mọi thao tác đọc/ghi file chạy lần lượt trên 1 luồng nên không cần khóa từng file
+    private final ExecutorService executor;
+
+    // số dòng hiện có của các file đã đọc/ghi (chỉ dùng trên luồng của cache)
+    private final Map<String, Integer> lineCounts = new HashMap<>();
+    private long totalBytes = -1;
+
+    public MessageCache(String userId) {
+        this.dir = AppStorage.userDir(userId).resolve("messages");
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "chatty-message-cache");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // đọc các tin nhắn đã lưu của cuộc trò chuyện, sắp xếp từ cũ đến mới (rỗng nếu chưa có)
+    public <T> CompletableFuture<List<T>> load(String key, Class<T> type) {
+        CompletableFuture<List<T>> future = new CompletableFuture<>();
+        submit(() -> {
+            if (future.isCancelled()) return;
+            try {
+                List<JsonObject> rows = read(key);
+                List<T> result = new ArrayList<>(rows.size());
+                for (JsonObject row : rows) {
+                    result.add(gson.fromJson(row, type));
+                }
+                future.complete(result);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // ghi nối các tin nhắn (mới hoặc vừa cập nhật) vào file của cuộc trò chuyện, không chặn luồng gọi
+    public void append(String key, List<?> messages) {
+        if (messages.isEmpty()) return;
+
+        // chuyển sang JSON ngay trên luồng gọi vì đối tượng có thể bị sửa tiếp sau đó
+        StringBuilder lines = new StringBuilder();
+        for (Object message : messages) {
+            lines.append(gson.toJson(message)).append('\n');
+        }
+        int count = messages.size();
+
+        submit(() -> {
+            try {
+                Path file = fileOf(key);
+                Files.createDirectories(dir);
+                long before = Files.exists(file) ? Files.size(file) : 0;
+                int existing = lineCounts.containsKey(key) ? lineCounts.get(key) : countLines(file);
+
+                Files.writeString(file, lines, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                lineCounts.put(key, existing + count);
+                addBytes(Files.size(file) - before);
+
+                if (existing + count > MAX_MESSAGES * 2) {
+                    read(key); // đọc lại sẽ tự viết gọn file
+                }
+                evictIfNeeded(key);
+            } catch (IOException e) {
+                System.err.println("Không ghi được cache tin nhắn " + key + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // chờ các lần ghi còn lại hoàn tất rồi dừng luồng của cache (khi đăng xuất)
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // đọc file, gộp các dòng trùng _id (dòng sau thắng) và sắp xếp theo createdAt
+    // nếu file có nhiều dòng thừa hoặc vượt quá số tin giữ lại thì viết gọn lại
+    private List<JsonObject> read(String key) throws IOException {
+        Path file = fileOf(key);
+        if (!Files.exists(file)) return new ArrayList<>();
+
+        Map<String, JsonObject> byId = new LinkedHashMap<>();
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                lines++;
+                JsonObject row = parseRow(line);
+                if (row == null) continue; // dòng bị cắt dở do ứng dụng tắt giữa chừng
+                byId.remove(row.get("_id").getAsString());
+                byId.put(row.get("_id").getAsString(), row);
+            }
+        }
+
+        List<JsonObject> rows = new ArrayList<>(byId.values());
+        rows.sort(Comparator.comparing(MessageCache::createdAtOf, Comparator.nullsLast(Comparator.naturalOrder())));
+        if (rows.size() > MAX_MESSAGES) {
+            rows = new ArrayList<>(rows.subList(rows.size() - MAX_MESSAGES, rows.size()));
+        }
+
+        if (lines > rows.size()) {
+            compact(key, file, rows);
+        } else {
+            lineCounts.put(key, lines);
+            // đánh dấu vừa được dùng để không bị xóa trước các cuộc trò chuyện lâu không mở
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        }
+        return rows;
+    }
+
+    private void compact(String key, Path file, List<JsonObject> rows) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (JsonObject row : rows) {
+            content.append(gson.toJson(row)).append('\n');
+        }
+        long before = Files.size(file);
+        AppStorage.writeAtomically(file, content.toString());
+        lineCounts.put(key, rows.size());
+        addBytes(Files.size(file) - before);
+    }
+
+    // xóa file của các cuộc trò chuyện lâu không mở nhất cho tới khi tổng dung lượng về dưới giới hạn
+    private void evictIfNeeded(String activeKey) throws IOException {
+        if (totalBytes <= MAX_BYTES) return;
+
+        List<Path> files = listFiles();
+        files.sort(Comparator.comparing(MessageCache::lastModified));
+        Path active = fileOf(activeKey);
+        for (Path file : files) {
+            if (totalBytes <= MAX_BYTES * 9 / 10) break;
+            if (file.equals(active)) continue;
+
+            long size = Files.size(file);
+            Files.deleteIfExists(file);
+            totalBytes -= size;
+            lineCounts.remove(keyOf(file));
+        }
+    }
+
+    private void addBytes(long delta) throws IOException {
+        if (totalBytes < 0) {
+            // lần đầu: tính tổng dung lượng hiện có trên đĩa
+            totalBytes = 0;
+            for (Path file : listFiles()) {
+                totalBytes += Files.size(file);
+            }
+            return;
+        }
+        totalBytes += delta;
+    }
+
+    private List<Path> listFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // cache đã bị tắt (đã đăng xuất), bỏ qua
+        }
+    }
+
+    // "user:<id>" -> user_<id>.jsonl
+    private Path fileOf(String key) {
+        return dir.resolve(key.replace(':', '_') + EXTENSION);
+    }
+
+    private static String keyOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length()).replaceFirst("_", ":");
+    }
+
+    private static int countLines(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return (int) reader.lines().filter(line -> !line.isBlank()).count();
+        }
+    }
+
+    private static JsonObject parseRow(String line) {
+        try {
+            JsonElement element = JsonParser.parseString(line);
+            if (!element.isJsonObject()) return null;
+            JsonObject row = element.getAsJsonObject();
+            return row.has("_id") && !row.get("_id").isJsonNull() ? row : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Instant createdAtOf(JsonObject row) {
+        if (!row.has("createdAt") || row.get("createdAt").isJsonNull()) return null;
+        try {
+            return Instant.parse(row.get("createdAt").getAsString());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -26,6 +26,9 @@ public class MessageDeserializer implements JsonDeserializer<Message> {
             message.setImage(jsonObject.get("image").getAsString());
         }
         if (jsonObject.has("createdAt")) message.setCreatedAt(jsonObject.get("createdAt").getAsString());
+        if (jsonObject.has("clientId") && !jsonObject.get("clientId").isJsonNull()) {
+            message.setClientId(jsonObject.get("clientId").getAsString());
+        }
 
         // xử lý trường 'seenBy' (là một mảng)
         if (jsonObject.has("seenBy") && jsonObject.get("seenBy").isJsonArray()) {
@@ -0,0 +1,54 @@
+package com.chatty.services;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// tra cứu tin nhắn theo _id trong danh sách đang hiển thị (O(1) cho mỗi sự kiện đã xem)
+// chỉ mục tự cập nhật khi danh sách được thay mới hoặc thêm bớt phần tử:
+// tin nối vào cuối thì chỉ đánh chỉ mục phần đuôi, các thay đổi khác (chèn giữa, sắp xếp lại, xóa) thì dựng lại toàn bộ
+// chỉ dùng trên luồng FX nên không cần đồng bộ
+public class MessageIndex<T> {
+    private final Function<T, String> idOf;
+    private final Map<String, T> byId = new HashMap<>();
+    private List<T> source;
+    private T first;
+    private T last; // phần tử cuối lúc đánh chỉ mục: còn nguyên vị trí thì phần mới chỉ có thể được nối vào sau
+    private int indexedSize;
+
+    public MessageIndex(Function<T, String> idOf) {
+        this.idOf = idOf;
+    }
+
+    public T get(List<T> list, String id) {
+        if (id == null) return null;
+        sync(list);
+        return byId.get(id);
+    }
+
+    // ghi nhận tin nhắn bị thay thế hoặc đổi _id tại chỗ (tin tạm được server xác nhận)
+    public void put(T message) {
+        byId.put(idOf.apply(message), message);
+    }
+
+    private void sync(List<T> list) {
+        boolean sameHead = list == source && !list.isEmpty() && list.get(0) == first;
+        if (sameHead && list.size() == indexedSize) return;
+
+        // chỉ là nối thêm vào cuối khi đầu và phần tử cuối cũ vẫn ở nguyên vị trí
+        boolean appended = sameHead && list.size() > indexedSize && list.get(indexedSize - 1) == last;
+        if (!appended) {
+            byId.clear();
+            indexedSize = 0;
+        }
+        for (int i = indexedSize; i < list.size(); i++) {
+            T message = list.get(i);
+            byId.put(idOf.apply(message), message);
+        }
+        source = list;
+        first = list.isEmpty() ? null : list.get(0);
+        last = list.isEmpty() ? null : list.get(list.size() - 1);
+        indexedSize = list.size();
+    }
+}
@@ -0,0 +1,338 @@
+package com.chatty.services;
+
+import com.chatty.models.GroupMessage;
+import com.chatty.models.Message;
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// chỉ mục tìm kiếm tin nhắn ngay trên máy (inverted index: từ -> các tin nhắn chứa từ đó)
+// - từ được chuẩn hóa bỏ dấu nên "da nang" tìm được "Đà Nẵng"
+// - tin nhắn được thêm dần khi nhận/tải về, không cần hỏi server khi tìm
+// - nội dung đã chỉ mục được lưu ở search-index.jsonl cạnh thư mục cache tin nhắn,
+//   mở lại ứng dụng chỉ cần đọc file rồi dựng lại chỉ mục trong bộ nhớ
+public class MessageSearchIndex {
+    private static final int MAX_DOCUMENTS = intProperty("chatty.search.maxDocuments", 50000);
+    private static final String FILE_NAME = "search-index.jsonl";
+
+    // 1 kết quả tìm kiếm: cuộc trò chuyện (khóa "user:<id>"/"group:<id>") và tin nhắn để nhảy tới
+    public static class Hit {
+        private final String conversationKey;
+        private final String messageId;
+        private final String senderId;
+        private final String content;
+        private final String createdAt;
+        private final double score;
+
+        private Hit(Document doc, double score) {
+            this.conversationKey = doc.key;
+            this.messageId = doc.id;
+            this.senderId = doc.senderId;
+            this.content = doc.content;
+            this.createdAt = doc.createdAt;
+            this.score = score;
+        }
+
+        public String getConversationKey() {
+            return conversationKey;
+        }
+
+        public String getMessageId() {
+            return messageId;
+        }
+
+        public String getSenderId() {
+            return senderId;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public String getCreatedAt() {
+            return createdAt;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    // dữ liệu được lưu xuống file cho mỗi tin nhắn
+    private static class Document {
+        String id;
+        String key;
+        String senderId;
+        String content;
+        String createdAt;
+        transient Map<String, Integer> terms; // số lần xuất hiện của từng từ
+    }
+
+    private final String currentUserId;
+    private final Path file;
+    private final Gson gson = HttpRuntime.get().gson();
+    // đọc/ghi file chạy lần lượt trên 1 luồng riêng, chỉ mục trong bộ nhớ được khóa bằng "this"
+    private final ExecutorService executor;
+
+    private final Map<String, Document> documents = new HashMap<>();
+    // từ -> (id tin nhắn -> số lần xuất hiện), sắp xếp theo từ để tìm theo tiền tố
+    private final TreeMap<String, Map<String, Integer>> postings = new TreeMap<>();
+    private int fileLines; // chỉ dùng trên luồng ghi file
+
+    public MessageSearchIndex(String userId) {
+        this.currentUserId = userId;
+        this.file = AppStorage.userDir(userId).resolve(FILE_NAME);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "chatty-search-index");
+            t.setDaemon(true);
+            return t;
+        });
+        submit(this::loadFromDisk);
+    }
+
+    public void addMessages(List<Message> messages) {
+        List<Document> docs = new ArrayList<>(messages.size());
+        for (Message msg : messages) {
+            String friendId = currentUserId.equals(msg.getSenderId()) ? msg.getReceiverId() : msg.getSenderId();
+            if (friendId == null) continue;
+            docs.add(documentOf(msg.get_id(), msg.getClientId(), ConversationSyncTracker.directKey(friendId),
+                    msg.getSenderId(), msg.getContent(), msg.getCreatedAt()));
+        }
+        addAll(docs);
+    }
+
+    public void addGroupMessages(List<GroupMessage> messages) {
+        List<Document> docs = new ArrayList<>(messages.size());
+        for (GroupMessage msg : messages) {
+            if (msg.getGroupId() == null) continue;
+            docs.add(documentOf(msg.get_id(), msg.getClientId(), ConversationSyncTracker.groupKey(msg.getGroupId()),
+                    msg.getSenderId(), msg.getContent(), msg.getCreatedAt()));
+        }
+        addAll(docs);
+    }
+
+    // tìm các tin nhắn chứa tất cả các từ trong câu tìm kiếm (từ cuối được tìm theo tiền tố khi đang gõ dở),
+    // xếp hạng theo độ hiếm của từ (tf-idf), cộng thêm điểm nếu khớp nguyên cụm, hòa điểm thì tin mới hơn đứng trước
+    public synchronized List<Hit> search(String query, int limit) {
+        List<String> terms = SearchText.tokens(query);
+        if (terms.isEmpty() || documents.isEmpty()) return new ArrayList<>();
+        boolean prefixLast = !Character.isWhitespace(query.charAt(query.length() - 1));
+
+        Map<String, Double> scores = null;
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            Map<String, Map<String, Integer>> matches = prefixLast && i == terms.size() - 1
+                    ? postings.subMap(term, true, term + Character.MAX_VALUE, true)
+                    : exact(term);
+
+            Map<String, Double> termScores = new HashMap<>();
+            for (Map.Entry<String, Map<String, Integer>> match : matches.entrySet()) {
+                double idf = Math.log(1 + (double) documents.size() / match.getValue().size());
+                double weight = match.getKey().equals(term) ? 1.0 : 0.7; // khớp trọn từ hơn khớp tiền tố
+                for (Map.Entry<String, Integer> posting : match.getValue().entrySet()) {
+                    double score = (1 + Math.log(posting.getValue())) * idf * weight;
+                    termScores.merge(posting.getKey(), score, Math::max);
+                }
+            }
+
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                scores.keySet().retainAll(termScores.keySet());
+                scores.replaceAll((id, score) -> score + termScores.get(id));
+            }
+            if (scores.isEmpty()) return new ArrayList<>();
+        }
+
+        String phrase = String.join(" ", terms);
+        List<Hit> hits = new ArrayList<>(scores.size());
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            Document doc = documents.get(entry.getKey());
+            double score = entry.getValue();
+            if (terms.size() > 1 && String.join(" ", SearchText.tokens(doc.content)).contains(phrase)) {
+                score *= 1.5;
+            }
+            hits.add(new Hit(doc, score));
+        }
+        hits.sort(Comparator.comparingDouble(Hit::getScore).reversed()
+                .thenComparing(Hit::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    // chờ các lần ghi còn lại hoàn tất rồi dừng luồng ghi file (khi đăng xuất)
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Map<String, Map<String, Integer>> exact(String term) {
+        Map<String, Integer> posting = postings.get(term);
+        return posting != null ? Map.of(term, posting) : Map.of();
+    }
+
+    private static Document documentOf(String id, String clientId, String key, String senderId, String content, String createdAt) {
+        // tin tạm chưa được server xác nhận sẽ được chỉ mục khi có id thật
+        if (id == null || id.equals(clientId)) return null;
+        Document doc = new Document();
+        doc.id = id;
+        doc.key = key;
+        doc.senderId = senderId;
+        doc.content = content;
+        doc.createdAt = createdAt;
+        return doc;
+    }
+
+    // thêm các tin nhắn mới/đã đổi nội dung vào chỉ mục rồi ghi nối xuống file
+    private void addAll(List<Document> docs) {
+        StringBuilder lines = new StringBuilder();
+        int added = 0;
+        synchronized (this) {
+            for (Document doc : docs) {
+                if (doc == null || doc.content == null || doc.content.isBlank()) continue;
+                Document existing = documents.get(doc.id);
+                if (existing != null && Objects.equals(existing.content, doc.content)) continue;
+
+                put(doc);
+                lines.append(gson.toJson(doc)).append('\n');
+                added++;
+            }
+        }
+        if (added == 0) return;
+
+        int count = added;
+        submit(() -> {
+            try {
+                Files.writeString(file, lines, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                fileLines += count;
+                compactIfNeeded();
+            } catch (IOException e) {
+                System.err.println("Không ghi được chỉ mục tìm kiếm: " + e.getMessage());
+            }
+        });
+    }
+
+    // đặt tin nhắn vào chỉ mục, thay bản cũ cùng id (nếu có)
+    private void put(Document doc) {
+        remove(doc.id);
+        doc.terms = new HashMap<>();
+        for (String term : SearchText.tokens(doc.content)) {
+            doc.terms.merge(term, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> term : doc.terms.entrySet()) {
+            postings.computeIfAbsent(term.getKey(), t -> new HashMap<>()).put(doc.id, term.getValue());
+        }
+        documents.put(doc.id, doc);
+    }
+
+    private void remove(String id) {
+        Document doc = documents.remove(id);
+        if (doc == null) return;
+        for (String term : doc.terms.keySet()) {
+            Map<String, Integer> posting = postings.get(term);
+            if (posting == null) continue;
+            posting.remove(id);
+            if (posting.isEmpty()) postings.remove(term);
+        }
+    }
+
+    // đọc chỉ mục đã lưu, dòng sau thay thế dòng trước cùng id
+    // tin đã được thêm vào trong lúc đang đọc file là bản mới hơn nên được giữ nguyên
+    private void loadFromDisk() {
+        if (!Files.exists(file)) return;
+
+        Map<String, Document> loaded = new HashMap<>();
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                lines++;
+                try {
+                    Document doc = gson.fromJson(line, Document.class);
+                    if (doc != null && doc.id != null && doc.content != null) {
+                        loaded.put(doc.id, doc);
+                    }
+                } catch (RuntimeException e) {
+                    // dòng bị cắt dở do ứng dụng tắt giữa chừng
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Không đọc được chỉ mục tìm kiếm: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            for (Document doc : loaded.values()) {
+                if (!documents.containsKey(doc.id)) {
+                    put(doc);
+                }
+            }
+        }
+        fileLines += lines;
+        try {
+            compactIfNeeded();
+        } catch (IOException e) {
+            System.err.println("Không ghi được chỉ mục tìm kiếm: " + e.getMessage());
+        }
+    }
+
+    // bỏ các tin cũ nhất khi vượt quá giới hạn, viết gọn file khi có quá nhiều dòng thừa
+    private void compactIfNeeded() throws IOException {
+        StringBuilder content = new StringBuilder();
+        synchronized (this) {
+            boolean evicted = false;
+            if (documents.size() > MAX_DOCUMENTS) {
+                List<Document> oldest = new ArrayList<>(documents.values());
+                oldest.sort(Comparator.comparing((Document doc) -> doc.createdAt, Comparator.nullsFirst(Comparator.naturalOrder())));
+                for (Document doc : oldest.subList(0, documents.size() - MAX_DOCUMENTS * 9 / 10)) {
+                    remove(doc.id);
+                }
+                evicted = true;
+            }
+            if (!evicted && fileLines <= documents.size() * 2 + 1000) return;
+
+            for (Document doc : documents.values()) {
+                content.append(gson.toJson(doc)).append('\n');
+            }
+            fileLines = documents.size();
+        }
+        AppStorage.writeAtomically(file, content.toString());
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // chỉ mục đã bị tắt (đã đăng xuất), bỏ qua
+        }
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
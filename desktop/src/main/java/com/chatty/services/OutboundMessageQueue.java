@@ -0,0 +1,276 @@
+package com.chatty.services;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.socket.client.Ack;
+import io.socket.client.AckWithTimeout;
+import org.json.JSONObject;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// hàng đợi tin nhắn gửi đi: mỗi tin có clientId riêng, gửi liên tục không chờ ack từng tin,
+// tự gửi lại (có backoff) khi quá hạn chờ ack và được lưu xuống đĩa để không mất khi tắt ứng dụng
+public class OutboundMessageQueue {
+    private static final long ACK_TIMEOUT_MS = 10_000;
+    private static final long BASE_BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final int MAX_ATTEMPTS = 10;
+
+    public static final String KIND_DIRECT = "direct";
+    public static final String KIND_GROUP = "group";
+
+    // lớp trung gian để hàng đợi gửi sự kiện qua socket
+    interface Transport {
+        boolean isConnected();
+
+        void emit(String event, JSONObject payload, Ack ack);
+    }
+
+    // 1 tin nhắn đang chờ server xác nhận
+    public static class PendingMessage {
+        private String clientId;
+        private String kind;        // direct hoặc group
+        private String targetId;    // receiverId hoặc groupId
+        private String content;
+        private int attempts;
+        private transient boolean inFlight;
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public String getTargetId() {
+            return targetId;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+
+    // kết quả server xác nhận đã lưu tin nhắn
+    public static class Delivery {
+        private final PendingMessage message;
+        private final String serverId;
+        private final String createdAt;
+
+        Delivery(PendingMessage message, String serverId, String createdAt) {
+            this.message = message;
+            this.serverId = serverId;
+            this.createdAt = createdAt;
+        }
+
+        public String getClientId() {
+            return message.clientId;
+        }
+
+        public String getKind() {
+            return message.kind;
+        }
+
+        public String getTargetId() {
+            return message.targetId;
+        }
+
+        public String getServerId() {
+            return serverId;
+        }
+
+        public String getCreatedAt() {
+            return createdAt;
+        }
+    }
+
+    private final Map<String, PendingMessage> pending = new LinkedHashMap<>();
+    private final Path storeFile;
+    private final Transport transport;
+    private final Gson gson = new Gson();
+    private final ScheduledExecutorService scheduler;
+
+    private Consumer<Delivery> onDelivered;
+    private Consumer<PendingMessage> onFailed;
+
+    OutboundMessageQueue(Path storeFile, Transport transport) {
+        this.storeFile = storeFile;
+        this.transport = transport;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chatty-outbox");
+            t.setDaemon(true);
+            return t;
+        });
+        load();
+    }
+
+    void setOnDelivered(Consumer<Delivery> onDelivered) {
+        this.onDelivered = onDelivered;
+    }
+
+    void setOnFailed(Consumer<PendingMessage> onFailed) {
+        this.onFailed = onFailed;
+    }
+
+    // thêm tin vào hàng đợi và gửi ngay nếu đang kết nối (không chặn luồng gọi)
+    public void enqueue(String kind, String targetId, String content, String clientId) {
+        PendingMessage message = new PendingMessage();
+        message.clientId = clientId;
+        message.kind = kind;
+        message.targetId = targetId;
+        message.content = content;
+
+        synchronized (pending) {
+            pending.put(clientId, message);
+        }
+        persist();
+        scheduler.execute(() -> send(message));
+    }
+
+    // gửi lại toàn bộ tin chưa được xác nhận (gọi khi socket kết nối/kết nối lại)
+    public void flush() {
+        List<PendingMessage> toSend;
+        synchronized (pending) {
+            toSend = new ArrayList<>(pending.values());
+        }
+        scheduler.execute(() -> toSend.forEach(this::send));
+    }
+
+    public int size() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void send(PendingMessage message) {
+        synchronized (pending) {
+            if (!pending.containsKey(message.clientId) || message.inFlight) return;
+            if (!transport.isConnected()) return; // sẽ được gửi lại trong flush() khi kết nối
+            message.inFlight = true;
+            message.attempts++;
+        }
+
+        JSONObject payload = new JSONObject();
+        try {
+            payload.put("clientId", message.clientId);
+            payload.put("content", message.content);
+            if (KIND_GROUP.equals(message.kind)) {
+                payload.put("groupId", message.targetId);
+                payload.put("replyTo", JSONObject.NULL);
+                payload.put("fileUrl", JSONObject.NULL);
+            } else {
+                payload.put("receiverId", message.targetId);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        String event = KIND_GROUP.equals(message.kind) ? "send-group-message" : "send-message";
+        transport.emit(event, payload, new AckWithTimeout(ACK_TIMEOUT_MS) {
+            @Override
+            public void onSuccess(Object... args) {
+                JSONObject ack = args.length > 0 && args[0] instanceof JSONObject ? (JSONObject) args[0] : null;
+                if (ack != null && ack.optBoolean("success")) {
+                    handleAcked(message, ack);
+                } else {
+                    // server đã nhận nhưng từ chối (dữ liệu không hợp lệ...): gửi lại cũng không khác, báo lỗi ngay
+                    System.out.println("Server từ chối tin nhắn " + message.clientId + ": " + ack);
+                    fail(message);
+                }
+            }
+
+            @Override
+            public void onTimeout() {
+                System.out.println("Quá hạn chờ ack cho tin nhắn " + message.clientId);
+                retryLater(message);
+            }
+        });
+    }
+
+    private void handleAcked(PendingMessage message, JSONObject ack) {
+        synchronized (pending) {
+            message.inFlight = false;
+            if (pending.remove(message.clientId) == null) return;
+        }
+        persist();
+
+        if (onDelivered != null) {
+            onDelivered.accept(new Delivery(message, ack.optString("_id", null), ack.optString("createdAt", null)));
+        }
+    }
+
+    // gửi lại sau 1 khoảng backoff tăng dần, bỏ cuộc sau MAX_ATTEMPTS lần
+    private void retryLater(PendingMessage message) {
+        if (message.attempts >= MAX_ATTEMPTS) {
+            fail(message);
+            return;
+        }
+        synchronized (pending) {
+            message.inFlight = false;
+            if (!pending.containsKey(message.clientId)) return;
+        }
+
+        long delay = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(message.attempts - 1, 16));
+        scheduler.schedule(() -> send(message), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // bỏ tin khỏi hàng đợi và báo gửi thất bại
+    private void fail(PendingMessage message) {
+        synchronized (pending) {
+            message.inFlight = false;
+            if (pending.remove(message.clientId) == null) return;
+        }
+        persist();
+        if (onFailed != null) onFailed.accept(message);
+    }
+
+    // ghi danh sách tin đang chờ xuống đĩa (trên luồng của hàng đợi)
+    private void persist() {
+        List<PendingMessage> snapshot;
+        synchronized (pending) {
+            snapshot = new ArrayList<>(pending.values());
+        }
+        scheduler.execute(() -> {
+            try {
+                AppStorage.writeAtomically(storeFile, gson.toJson(snapshot));
+            } catch (Exception e) {
+                System.err.println("Không lưu được hàng đợi tin nhắn: " + e.getMessage());
+            }
+        });
+    }
+
+    // đọc lại các tin chưa gửi được từ phiên trước
+    private void load() {
+        if (!Files.exists(storeFile)) return;
+        try {
+            String json = Files.readString(storeFile, StandardCharsets.UTF_8);
+            Type listType = new TypeToken<List<PendingMessage>>(){}.getType();
+            List<PendingMessage> saved = gson.fromJson(json, listType);
+            if (saved == null) return;
+            synchronized (pending) {
+                for (PendingMessage message : saved) {
+                    message.attempts = 0;
+                    pending.put(message.clientId, message);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Không đọc được hàng đợi tin nhắn: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.chatty.services;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// gộp các lần gọi dồn dập (gõ phím, sự kiện liên tục...) thành ít lần chạy hơn, hẹn giờ trên luồng dùng chung của AppExecutors
+// - debounce: chỉ chạy sau khi ngừng gọi đủ "delay"
+// - throttle: chạy nhiều nhất 1 lần mỗi "delay"
+// leading = chạy ngay lần gọi đầu tiên, trailing = chạy lần gọi cuối cùng khi hết thời gian chờ
+// mỗi lần gọi mang theo hành động của nó, chỉ hành động mới nhất được chạy ở cạnh sau
+public final class RateLimiter {
+    private final long delayMillis;
+    private final boolean throttle;
+    private final boolean leading;
+    private final boolean trailing;
+    private final Executor target;
+
+    private ScheduledFuture<?> timer;
+    private Runnable pending;
+    private long generation; // tăng mỗi lần hẹn giờ lại/hủy, lần hẹn giờ cũ đã chạy thì tự bỏ qua
+
+    public RateLimiter(long delayMillis, boolean throttle, boolean leading, boolean trailing, Executor target) {
+        this.delayMillis = delayMillis;
+        this.throttle = throttle;
+        this.leading = leading;
+        this.trailing = trailing;
+        this.target = target;
+    }
+
+    // chạy lần gọi cuối cùng sau khi ngừng gọi delayMillis
+    public static RateLimiter debounce(long delayMillis, Executor target) {
+        return new RateLimiter(delayMillis, false, false, true, target);
+    }
+
+    // chạy ngay lần gọi đầu, sau đó nhiều nhất 1 lần mỗi intervalMillis (lần gọi cuối trong khoảng được chạy khi hết khoảng)
+    public static RateLimiter throttle(long intervalMillis, Executor target) {
+        return new RateLimiter(intervalMillis, true, true, true, target);
+    }
+
+    public void submit(Runnable action) {
+        Runnable runNow = null;
+        synchronized (this) {
+            boolean idle = timer == null;
+            if (idle && leading) {
+                runNow = action;
+                pending = null;
+            } else {
+                pending = action;
+            }
+
+            if (!throttle && !idle) {
+                // debounce: mỗi lần gọi lại tính lại thời gian chờ
+                timer.cancel(false);
+                idle = true;
+            }
+            if (idle) {
+                schedule();
+            }
+        }
+        if (runNow != null) {
+            target.execute(runNow);
+        }
+    }
+
+    // bỏ lần gọi đang chờ và kết thúc khoảng chờ hiện tại (lần gọi tiếp theo được coi là lần đầu)
+    public synchronized void cancel() {
+        generation++;
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        pending = null;
+    }
+
+    // chạy ngay lần gọi đang chờ (nếu có) thay vì đợi hết thời gian, rồi kết thúc khoảng chờ
+    public void flush() {
+        Runnable action;
+        synchronized (this) {
+            action = trailing ? pending : null;
+            cancel();
+        }
+        if (action != null) {
+            target.execute(action);
+        }
+    }
+
+    private void schedule() {
+        long scheduled = ++generation;
+        timer = AppExecutors.scheduler().schedule(() -> windowEnded(scheduled), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void windowEnded(long scheduled) {
+        Runnable action;
+        synchronized (this) {
+            if (scheduled != generation) return;
+            timer = null;
+            action = trailing ? pending : null;
+            pending = null;
+            if (action != null && throttle) {
+                // bắt đầu khoảng mới để lần chạy ở cạnh sau cũng tính vào giới hạn
+                schedule();
+            }
+        }
+        if (action != null) {
+            target.execute(action);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.chatty.services;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// chuẩn hóa chữ để tìm kiếm không phân biệt hoa/thường và dấu tiếng Việt ("Đà Nẵng" -> "da nang")
+public final class SearchText {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private SearchText() {}
+
+    // bỏ dấu, chuyển "đ" thành "d" và viết thường
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) return "";
+        String stripped = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return stripped.replace('đ', 'd').replace('Đ', 'D').toLowerCase(Locale.ROOT);
+    }
+
+    // tách thành các từ (chuỗi chữ cái/chữ số liên tiếp) đã chuẩn hóa
+    public static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,105 @@
+package com.chatty.services;
+
+import com.chatty.models.Group;
+import com.chatty.models.User;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// lưu trạng thái thanh bên lần gần nhất (người dùng, nhóm, tin cuối, số tin chưa đọc, url avatar = khóa của ImageCache)
+// để lần mở sau vẽ được thanh bên ngay ở khung hình đầu tiên, sau đó mới đối chiếu với dữ liệu server
+public class SidebarSnapshot {
+    private static final String FILE_NAME = "sidebar.json";
+
+    // nội dung file
+    public static class Data {
+        private String savedAt;
+        private List<User> users = new ArrayList<>();
+        private List<Group> groups = new ArrayList<>();
+
+        public String getSavedAt() {
+            return savedAt;
+        }
+
+        public List<User> getUsers() {
+            return users != null ? users : new ArrayList<>();
+        }
+
+        public List<Group> getGroups() {
+            return groups != null ? groups : new ArrayList<>();
+        }
+    }
+
+    private final Path file;
+    // không ghi token đăng nhập xuống file
+    private final Gson gson = HttpRuntime.get().gson().newBuilder()
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes f) {
+                    return f.getDeclaringClass() == User.class && f.getName().equals("token");
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz) {
+                    return false;
+                }
+            })
+            .create();
+    // thứ tự các lần lưu, lần lưu cũ hoàn thành sau lần mới thì bỏ qua
+    private final AtomicLong versions = new AtomicLong();
+    private long writtenVersion;
+
+    public SidebarSnapshot(String userId) {
+        this.file = AppStorage.userDir(userId).resolve(FILE_NAME);
+    }
+
+    // đọc trạng thái đã lưu (file nhỏ nên đọc trực tiếp khi khởi động), null nếu chưa có hoặc bị hỏng
+    public Data load() {
+        if (!Files.exists(file)) return null;
+        try {
+            return gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), Data.class);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Không đọc được trạng thái thanh bên đã lưu: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // lưu trên luồng nền (dữ liệu được chuyển sang JSON ngay trên luồng gọi vì có thể bị sửa tiếp)
+    public void save(List<User> users, List<Group> groups) {
+        String json = toJson(users, groups);
+        long version = versions.incrementAndGet();
+        AppExecutors.run(() -> write(version, json));
+    }
+
+    // lưu ngay trên luồng gọi (khi đóng cửa sổ/đăng xuất, luồng nền có thể bị dừng trước khi ghi xong)
+    public void saveNow(List<User> users, List<Group> groups) {
+        try {
+            write(versions.incrementAndGet(), toJson(users, groups));
+        } catch (IOException e) {
+            System.err.println("Không lưu được trạng thái thanh bên: " + e.getMessage());
+        }
+    }
+
+    private String toJson(List<User> users, List<Group> groups) {
+        Data data = new Data();
+        data.savedAt = Instant.now().toString();
+        data.users = users;
+        data.groups = groups;
+        return gson.toJson(data);
+    }
+
+    private synchronized void write(long version, String json) throws IOException {
+        if (version < writtenVersion) return;
+        AppStorage.writeAtomically(file, json);
+        writtenVersion = version;
+    }
+}
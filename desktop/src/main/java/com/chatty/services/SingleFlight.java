@@ -0,0 +1,184 @@
+package com.chatty.services;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// gộp các GET giống hệt nhau chạy cùng lúc thành 1 lần gọi mạng (single-flight):
+// lần gọi đầu tiên thực sự gửi request, các lần gọi sau nhận chung kết quả của nó
+// (ApiService chỉ dùng chung nội dung phản hồi, mỗi người gọi tự giải mã ra đối tượng riêng)
+// kết quả vừa xong còn được dùng lại thêm freshMillis (0 = chỉ gộp các lần gọi đang chạy)
+// hủy future của 1 người gọi chỉ hủy request khi không còn ai khác chờ kết quả
+final class SingleFlight {
+
+    // 1 lần gọi mạng và những người đang chờ kết quả của nó
+    private static final class Flight {
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        CompletableFuture<?> source; // request đang chạy (bản bất đồng bộ), dùng để hủy
+        int waiters;
+        boolean done;
+        long freshUntil;
+    }
+
+    @FunctionalInterface
+    interface Call<T> {
+        T call() throws IOException;
+    }
+
+    private final long freshNanos;
+    private final Map<Object, Flight> flights = new HashMap<>();
+
+    SingleFlight(long freshMillis) {
+        this.freshNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, freshMillis));
+    }
+
+    // bản bất đồng bộ: start chỉ được gọi khi chưa có lần gọi nào cùng key đang chạy
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> async(Object key, Supplier<CompletableFuture<T>> start) {
+        Flight flight;
+        boolean leader;
+        synchronized (this) {
+            flight = join(key);
+            leader = flight == null;
+            if (leader) {
+                flight = lead(key);
+            }
+            flight.waiters++;
+        }
+
+        if (leader) {
+            CompletableFuture<T> source;
+            try {
+                source = start.get();
+            } catch (RuntimeException e) {
+                source = CompletableFuture.failedFuture(e);
+            }
+            boolean abandoned;
+            synchronized (this) {
+                flight.source = source;
+                abandoned = flight.waiters == 0;
+            }
+            if (abandoned) {
+                source.cancel(true);
+            }
+            Flight started = flight;
+            source.whenComplete((result, error) -> complete(key, started, result, error));
+        }
+
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        Flight joined = flight;
+        flight.result.whenComplete((result, error) -> {
+            if (error != null) {
+                mine.completeExceptionally(error);
+            } else {
+                mine.complete((T) result);
+            }
+        });
+        mine.whenComplete((result, error) -> {
+            if (mine.isCancelled()) {
+                abandon(key, joined);
+            }
+        });
+        return mine;
+    }
+
+    // bản đồng bộ: chạy call trên luồng gọi, hoặc chờ lần gọi cùng key đang chạy
+    @SuppressWarnings("unchecked")
+    <T> T sync(Object key, Call<T> call) throws IOException {
+        Flight flight;
+        boolean leader;
+        synchronized (this) {
+            flight = join(key);
+            leader = flight == null;
+            if (leader) {
+                flight = lead(key);
+            }
+            flight.waiters++;
+        }
+
+        if (!leader) {
+            try {
+                return (T) flight.result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + key);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+
+        try {
+            T result = call.call();
+            complete(key, flight, result, null);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            complete(key, flight, null, e);
+            throw e;
+        }
+    }
+
+    // bỏ mọi kết quả đang giữ (sau khi có request ghi), lần gọi sau gửi request mới;
+    // các lần gọi đang chạy vẫn trả kết quả cho những người đã chờ nó
+    synchronized void invalidate() {
+        flights.clear();
+    }
+
+    // chỉ bỏ các kết quả có key thỏa điều kiện
+    synchronized void invalidate(Predicate<Object> matches) {
+        flights.keySet().removeIf(matches);
+    }
+
+    // lần gọi đang chạy hoặc vừa xong còn dùng được của key, null nếu phải gửi request mới
+    private Flight join(Object key) {
+        Flight flight = flights.get(key);
+        if (flight == null) return null;
+        if (!flight.done || System.nanoTime() - flight.freshUntil < 0) {
+            return flight;
+        }
+        flights.remove(key);
+        return null;
+    }
+
+    private Flight lead(Object key) {
+        Flight flight = new Flight();
+        flights.put(key, flight);
+        return flight;
+    }
+
+    private void complete(Object key, Flight flight, Object result, Throwable error) {
+        synchronized (this) {
+            flight.done = true;
+            flight.freshUntil = System.nanoTime() + freshNanos;
+            // lỗi không được dùng lại, lần gọi sau thử lại
+            if (error != null || freshNanos == 0) {
+                flights.remove(key, flight);
+            }
+        }
+        if (error != null) {
+            flight.result.completeExceptionally(AppExecutors.unwrap(error));
+        } else {
+            flight.result.complete(result);
+        }
+    }
+
+    // 1 người gọi hủy: chỉ hủy request khi không còn ai chờ
+    private void abandon(Object key, Flight flight) {
+        CompletableFuture<?> source;
+        synchronized (this) {
+            if (--flight.waiters > 0 || flight.done) return;
+            flights.remove(key, flight);
+            source = flight.source;
+        }
+        if (source != null) {
+            source.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.chatty.services;
+
+import com.chatty.models.GroupMessage;
+import com.chatty.models.Message;
+import com.chatty.models.SeenReceipt;
+import com.chatty.models.User;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// chuyển trực tiếp JSONObject (socket.io-client đã parse sẵn) sang model
+// không chuyển ngược về chuỗi rồi parse lại bằng Gson như trước
+public final class SocketEventCodec {
+
+    private SocketEventCodec() {}
+
+    // "receive-message": senderId là chuỗi id
+    public static Message decodeMessage(JSONObject data) {
+        Message message = new Message();
+        message.set_id(string(data, "_id"));
+        message.setSenderId(idOf(data, "senderId"));
+        message.setReceiverId(idOf(data, "receiverId"));
+        message.setContent(string(data, "content"));
+        message.setImage(string(data, "image"));
+        message.setCreatedAt(string(data, "createdAt"));
+        message.setClientId(string(data, "clientId"));
+        if (data.has("seenBy")) {
+            message.setSeenBy(stringList(data.optJSONArray("seenBy")));
+        }
+        return message;
+    }
+
+    // "receive-group-message": senderId là object người gửi đã populate (hoặc chuỗi id)
+    public static GroupMessage decodeGroupMessage(JSONObject data) {
+        GroupMessage message = new GroupMessage();
+        message.set_id(string(data, "_id"));
+        message.setGroupId(idOf(data, "groupId"));
+        message.setSender(decodeSender(data));
+        message.setContent(string(data, "content"));
+        message.setFileUrl(string(data, "fileUrl"));
+        message.setReplyTo(idOf(data, "replyTo"));
+        message.setCreatedAt(string(data, "createdAt"));
+        message.setUpdatedAt(string(data, "updatedAt"));
+        message.setClientId(string(data, "clientId"));
+        if (data.has("seenBy")) {
+            message.setSeenBy(stringList(data.optJSONArray("seenBy")));
+        }
+        return message;
+    }
+
+    // "seen-message": { viewerId, seenAt, upToCreatedAt? }
+    public static SeenReceipt decodeSeenReceipt(JSONObject data) {
+        SeenReceipt receipt = new SeenReceipt();
+        receipt.setViewerId(string(data, "viewerId"));
+        receipt.setSeenAt(string(data, "seenAt"));
+        receipt.setUpToCreatedAt(string(data, "upToCreatedAt"));
+        return receipt;
+    }
+
+    // "group-read-upto": { groupId, userId, messageId, upToCreatedAt }
+    public static SeenReceipt decodeGroupReadUpTo(JSONObject data) {
+        SeenReceipt receipt = new SeenReceipt();
+        receipt.setGroupId(string(data, "groupId"));
+        receipt.setViewerId(string(data, "userId"));
+        receipt.setMessageId(string(data, "messageId"));
+        receipt.setUpToCreatedAt(string(data, "upToCreatedAt"));
+        return receipt;
+    }
+
+    // "user-seen-message": { messageId, userId, seenBy }
+    public static SeenReceipt decodeGroupSeenReceipt(JSONObject data) {
+        SeenReceipt receipt = new SeenReceipt();
+        receipt.setMessageId(string(data, "messageId"));
+        receipt.setViewerId(string(data, "userId"));
+        receipt.setSeenBy(stringList(data.optJSONArray("seenBy")));
+        return receipt;
+    }
+
+    private static User decodeSender(JSONObject data) {
+        JSONObject sender = data.optJSONObject("senderId");
+        User user = new User();
+        if (sender == null) {
+            user.set_id(string(data, "senderId"));
+            return user;
+        }
+        user.set_id(string(sender, "_id"));
+        user.setUsername(string(sender, "username"));
+        user.setFullName(string(sender, "fullName"));
+        user.setAvatar(string(sender, "avatar"));
+        return user;
+    }
+
+    // trường id có thể là chuỗi hoặc object đã populate
+    private static String idOf(JSONObject data, String key) {
+        JSONObject nested = data.optJSONObject(key);
+        return nested != null ? string(nested, "_id") : string(data, key);
+    }
+
+    // đọc chuỗi, trả về null nếu không có hoặc là null (optString của org.json trả về "null")
+    private static String string(JSONObject data, String key) {
+        if (!data.has(key) || data.isNull(key)) return null;
+        return data.optString(key, null);
+    }
+
+    private static List<String> stringList(JSONArray array) {
+        List<String> result = new ArrayList<>();
+        if (array == null) return result;
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject nested = array.optJSONObject(i);
+            String value = nested != null ? string(nested, "_id") : array.optString(i, null);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+}
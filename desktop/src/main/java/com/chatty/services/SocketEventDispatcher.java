@@ -0,0 +1,114 @@
+package com.chatty.services;
+
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// gom các sự kiện socket (đã giải mã ngoài luồng FX) và phát lại theo lô, tối đa 1 lần mỗi khung hình (~60 Hz)
+public class SocketEventDispatcher {
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    // một sự kiện đã giải mã đang chờ được phát
+    private static class Event {
+        final String type;
+        final Object payload;
+
+        Event(String type, Object payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final Map<String, Consumer<List<Object>>> listeners = new ConcurrentHashMap<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService frameTimer;
+    private volatile long lastDrainNanos;
+
+    public SocketEventDispatcher() {
+        this.frameTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chatty-socket-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // đăng ký listener nhận danh sách sự kiện của 1 loại trong mỗi lô
+    @SuppressWarnings("unchecked")
+    public <T> void on(String type, Consumer<List<T>> listener) {
+        if (listener == null) {
+            listeners.remove(type);
+        } else {
+            listeners.put(type, batch -> listener.accept((List<T>) (List<?>) batch));
+        }
+    }
+
+    public boolean hasListener(String type) {
+        return listeners.containsKey(type);
+    }
+
+    // đưa sự kiện vào hàng đợi (gọi từ luồng của socket)
+    public void post(String type, Object payload) {
+        if (!listeners.containsKey(type)) return;
+
+        queue.add(new Event(type, payload));
+        scheduleDrain();
+    }
+
+    // chỉ hẹn 1 lần xả hàng đợi, cách lần xả trước ít nhất 1 khung hình
+    private void scheduleDrain() {
+        if (!drainScheduled.compareAndSet(false, true)) return;
+
+        long wait = lastDrainNanos + FRAME_NANOS - System.nanoTime();
+        if (wait <= 0) {
+            Platform.runLater(this::drain);
+        } else {
+            frameTimer.schedule(() -> Platform.runLater(this::drain), wait, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // xả hàng đợi trên luồng FX: các sự kiện liên tiếp cùng loại được gộp thành 1 lô để giữ đúng thứ tự
+    private void drain() {
+        drainScheduled.set(false);
+        lastDrainNanos = System.nanoTime();
+
+        String runType = null;
+        List<Object> run = new ArrayList<>();
+        Event event;
+        while ((event = queue.poll()) != null) {
+            if (runType != null && !runType.equals(event.type)) {
+                deliver(runType, run);
+                run = new ArrayList<>();
+            }
+            runType = event.type;
+            run.add(event.payload);
+        }
+        if (runType != null) {
+            deliver(runType, run);
+        }
+    }
+
+    private void deliver(String type, List<Object> batch) {
+        Consumer<List<Object>> listener = listeners.get(type);
+        if (listener == null) return;
+        try {
+            listener.accept(batch);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // bỏ các sự kiện đang chờ (khi ngắt kết nối)
+    public void clear() {
+        queue.clear();
+    }
+}
@@ -2,12 +2,12 @@ package com.chatty.services;
 
 import com.chatty.models.GroupMessage;
 import com.chatty.models.Message;
+import com.chatty.models.SeenReceipt;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import io.socket.client.Ack;
 import io.socket.client.IO;
 import io.socket.client.Socket;
-import javafx.application.Platform;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -15,7 +15,11 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 // lớp phục vụ gửi/nhận các sự kiện thời gian thực
 public class SocketService {
@@ -25,28 +29,52 @@ public class SocketService {
 
     private List<String> onlineUsers;
 
-    // ---------- CALLBACKS ----------
-
-    private Consumer<Message> onNewMessage;                 // báo tin nhắn mới
-    private Consumer<List<String>> onOnlineListReceived;    // hỗ trợ lấy danh sách người dùng online
-    private Consumer<String> onUserOnline;                  // danh sách người dùng online
-    private Consumer<String> onUserOffline;                 // danh sách người dùng offline
-
-    private Consumer<GroupMessage> onNewGroupMessage;       // báo tin nhắn nhóm mới
-    private Consumer<String> onGroupTypingStart;            // bắt đầu soạn tin nhắn nhóm
-    private Consumer<String> onGroupTypingStop;             // kết thúc soạn tin nhắn nhóm
-    private Consumer<JsonObject> onGroupMessageSeen;        // báo đã xem tin nhắn nhóm
-    private Consumer<JsonObject> onGroupCreated;            // báo tình trạng tạo nhóm
-    private Consumer<JsonObject> onGroupDeleted;            // báo tình trạng xóa nhóm
-    private Consumer<Void> onReloadGroups;                  // báo tình trạng tải lại nhóm
-
-    private Consumer<String> onTypingStart;                 // báo bắt đầu soạn tin nhắn (cá nhân)
-    private Consumer<String> onTypingStop;                  // báo kết thúc soạn tin nhắn (cá nhân)
-    private Consumer<JsonObject> onMessageSeen;             // báo đã xem tin nhắn (cá nhân)
+    // gom sự kiện nhận được và phát lại theo lô trên luồng FX
+    private final SocketEventDispatcher dispatcher;
+
+    // mốc tin nhắn mới nhất của các cuộc trò chuyện gần đây, dùng để tải bù sau khi kết nối lại
+    private final ConversationSyncTracker syncTracker;
+
+    // các phòng nhóm đã tham gia, cần tham gia lại mỗi khi kết nối lại
+    private final Set<String> joinedGroups = ConcurrentHashMap.newKeySet();
+
+    // đã từng kết nối thành công chưa (để phân biệt kết nối lần đầu và kết nối lại)
+    private volatile boolean hasConnected = false;
+
+    // hàng đợi tin nhắn gửi đi, chờ server xác nhận (ack)
+    private OutboundMessageQueue outbox;
+
+    // ---------- TÊN SỰ KIỆN ----------
+
+    private static final String EVT_ONLINE_LIST = "noti-onlineList-toMe";  // danh sách người dùng online
+    private static final String EVT_USER_ONLINE = "noti-online";           // có người dùng online
+    private static final String EVT_USER_OFFLINE = "noti-offline";         // có người dùng offline
+    private static final String EVT_TYPING_START = "typing-start";         // bắt đầu soạn tin nhắn (cá nhân)
+    private static final String EVT_TYPING_STOP = "typing-stop";           // kết thúc soạn tin nhắn (cá nhân)
+    private static final String EVT_NEW_MESSAGE = "receive-message";       // tin nhắn mới
+    private static final String EVT_MESSAGE_SEEN = "seen-message";         // đã xem tin nhắn (cá nhân)
+    private static final String EVT_NEW_GROUP_MESSAGE = "receive-group-message"; // tin nhắn nhóm mới
+    private static final String EVT_GROUP_TYPING_START = "group-typing-start";   // bắt đầu soạn tin nhắn nhóm
+    private static final String EVT_GROUP_TYPING_STOP = "group-typing-stop";     // kết thúc soạn tin nhắn nhóm
+    private static final String EVT_GROUP_MESSAGE_SEEN = "user-seen-message";    // đã xem tin nhắn nhóm
+    private static final String EVT_GROUP_READ_UPTO = "group-read-upto";        // mốc đã đọc tin nhắn nhóm
+    private static final String EVT_GROUP_CREATED = "group-created";       // tạo nhóm
+    private static final String EVT_GROUP_DELETED = "group-deleted";       // xóa nhóm
+    private static final String EVT_RELOAD_GROUPS = "reload-groups";       // tải lại nhóm
+    private static final String EVT_RECONNECTED = "client-reconnected";    // sự kiện nội bộ: đã kết nối lại
+    private static final String EVT_MESSAGE_ACKED = "client-message-acked"; // sự kiện nội bộ: server đã lưu tin nhắn
+    private static final String EVT_MESSAGE_FAILED = "client-message-failed"; // sự kiện nội bộ: gửi tin nhắn thất bại
+
+    // các GET bị ảnh hưởng bởi sự kiện socket: kết quả đang giữ trong bộ nhớ bị bỏ khi nhận sự kiện
+    private static final String CONVERSATIONS_ENDPOINT = "/messages/users";
+    private static final String GROUPS_ENDPOINT = "/groups/getGroups";
+    private static final String GROUP_PREFIX = "/groups/";
 
     public SocketService() {
         this.gson = new Gson();
         this.onlineUsers = new ArrayList<>();
+        this.dispatcher = new SocketEventDispatcher();
+        this.syncTracker = new ConversationSyncTracker();
     }
 
     // ================= CONNECT =================
@@ -62,11 +90,36 @@ public class SocketService {
             }
 
             socket = IO.socket("http://localhost:3000", opts);
+            outbox = createOutbox(userId);
 
-            socket.on(Socket.EVENT_CONNECT, args -> System.out.println("Socket connected"));
+            socket.on(Socket.EVENT_CONNECT, args -> {
+                System.out.println("Socket connected");
+
+                // server cấp socket mới khi kết nối lại nên phải tham gia lại các phòng nhóm
+                for (String groupId : joinedGroups) {
+                    emitGroupRoom("join-group", groupId);
+                }
+
+                // kết nối lại sau khi bị ngắt -> báo để tải bù các tin nhắn bị lỡ
+                if (hasConnected) {
+                    dispatcher.post(EVT_RECONNECTED, syncTracker.snapshot());
+                }
+                hasConnected = true;
+
+                // gửi lại các tin nhắn chưa được server xác nhận
+                OutboundMessageQueue queue = outbox;
+                if (queue != null) {
+                    queue.flush();
+                }
+            });
+
+            socket.on(Socket.EVENT_DISCONNECT, args -> {
+                String reason = args.length > 0 ? String.valueOf(args[0]) : "";
+                System.out.println("Socket disconnected: " + reason);
+            });
 
             // ===== online users =====
-            socket.on("noti-onlineList-toMe", args -> {
+            socket.on(EVT_ONLINE_LIST, args -> {
                 List<String> users = new ArrayList<>();
                 if (args.length > 0) {
                     if (args[0] instanceof JSONArray){
@@ -86,80 +139,34 @@ public class SocketService {
                 System.out.println("DEBUG SOCKET: Đã parse được danh sách: " + users);
 
                 onlineUsers = users;
-                if (onOnlineListReceived != null) {
-                    Platform.runLater(() -> onOnlineListReceived.accept(users));
-                }
+                dispatcher.post(EVT_ONLINE_LIST, users);
             });
 
             // có người dùng mới online
-            socket.on("noti-online", args -> {
-               if(args.length > 0 && onUserOnline != null){
-                   try {
-                       // backend send object
-                       JSONObject data = (JSONObject) args[0];
-                       String id = data.optString("id");
-                       if(!id.isEmpty()){
-                           Platform.runLater(() -> onUserOnline.accept(id));
-                       }
-                   } catch (Exception e){
-                       e.printStackTrace();
-                   }
-               }
-            });
+            socket.on(EVT_USER_ONLINE, args -> postId(EVT_USER_ONLINE, args, "id"));
 
             // có người dùng mới offline
-            socket.on("noti-offline", args -> {
-                if (args.length > 0 && onUserOffline != null){
-                    try {
-                        // backend send object
-                        JSONObject data = (JSONObject) args[0];
-                        String id = data.optString("id");
-                        if(!id.isEmpty()){
-                            Platform.runLater(() -> onUserOffline.accept(id));
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
+            socket.on(EVT_USER_OFFLINE, args -> postId(EVT_USER_OFFLINE, args, "id"));
 
             // bắt đầu nhập
-            socket.on("typing-start", args -> {
-               if (args.length > 0 && onTypingStart != null){
-                   JSONObject data = (JSONObject) args[0];
-                   String senderId = data.optString("senderId");
-                   Platform.runLater(() -> onTypingStart.accept(senderId));
-               }
-            });
+            socket.on(EVT_TYPING_START, args -> postId(EVT_TYPING_START, args, "senderId"));
 
             // kết thúc nhập
-            socket.on("typing-stop", args -> {
-               if (args.length > 0 && onTypingStop != null){
-                   JSONObject data = (JSONObject) args[0];
-                   String senderId = data.optString("senderId");
-                   Platform.runLater(() -> onTypingStop.accept(senderId));
-               }
-            });
+            socket.on(EVT_TYPING_STOP, args -> postId(EVT_TYPING_STOP, args, "senderId"));
 
             // gửi tin nhắn
-            socket.on("send-message", args -> {
-               if (args.length > 0 && onMessageSeen != null){
-                   try {
-                       JsonObject data = gson.fromJson(args[0].toString(), JsonObject.class);
-                       Platform.runLater(() -> onMessageSeen.accept(data));
-                   } catch (Exception e) {
-                       e.printStackTrace();
-                   }
-               }
-            });
+            socket.on("send-message", args -> postDecoded(EVT_MESSAGE_SEEN, args, SocketEventCodec::decodeSeenReceipt));
 
             // nhận tin nhắn
-            socket.on("receive-message", args -> {
-                if (args.length > 0 && onNewMessage != null) {
+            socket.on(EVT_NEW_MESSAGE, args -> {
+                ApiService.invalidate(CONVERSATIONS_ENDPOINT);
+                if (args.length > 0 && dispatcher.hasListener(EVT_NEW_MESSAGE)) {
                     try {
-                        Message message = gson.fromJson(args[0].toString(), Message.class);
-
-                        Platform.runLater(() -> onNewMessage.accept(message));
+                        Message message = SocketEventCodec.decodeMessage((JSONObject) args[0]);
+                        String key = ConversationSyncTracker.directKey(message.getSenderId());
+                        if (syncTracker.record(key, message.get_id(), message.getCreatedAt())) {
+                            dispatcher.post(EVT_NEW_MESSAGE, message);
+                        }
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -167,23 +174,18 @@ public class SocketService {
             });
 
             // đã xem (cá nhân)
-            socket.on("seen-message", args -> {
-                if (args.length > 0 && onMessageSeen != null){
-                    try {
-                        JsonObject data = gson.fromJson(args[0].toString(), JsonObject.class);
-                        Platform.runLater(() -> onMessageSeen.accept(data));
-                    } catch (Exception e){
-                        e.printStackTrace();
-                    }
-                }
-            });
+            socket.on(EVT_MESSAGE_SEEN, args -> postDecoded(EVT_MESSAGE_SEEN, args, SocketEventCodec::decodeSeenReceipt));
 
             // nhận tin nhắn nhóm
-            socket.on("receive-group-message", args -> {
-                if (args.length > 0 && onNewGroupMessage != null) {
+            socket.on(EVT_NEW_GROUP_MESSAGE, args -> {
+                ApiService.invalidate(GROUPS_ENDPOINT);
+                if (args.length > 0 && dispatcher.hasListener(EVT_NEW_GROUP_MESSAGE)) {
                     try {
-                        GroupMessage message = gson.fromJson(args[0].toString(), GroupMessage.class);
-                        Platform.runLater(() -> onNewGroupMessage.accept(message));
+                        GroupMessage message = SocketEventCodec.decodeGroupMessage((JSONObject) args[0]);
+                        String key = ConversationSyncTracker.groupKey(message.getGroupId());
+                        if (syncTracker.record(key, message.get_id(), message.getCreatedAt())) {
+                            dispatcher.post(EVT_NEW_GROUP_MESSAGE, message);
+                        }
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -191,12 +193,11 @@ public class SocketService {
             });
 
             // bắt đầu soạn tin nhắn nhóm
-            socket.on("group-typing-start", args -> {
-                if (args.length > 0 && onGroupTypingStart != null) {
+            socket.on(EVT_GROUP_TYPING_START, args -> {
+                if (args.length > 0 && dispatcher.hasListener(EVT_GROUP_TYPING_START)) {
                     try {
                         JSONObject data = (JSONObject) args[0];
-                        String senderName = data.optString("senderName", "Someone");
-                        Platform.runLater(() -> onGroupTypingStart.accept(senderName));
+                        dispatcher.post(EVT_GROUP_TYPING_START, data.optString("senderName", "Someone"));
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -204,59 +205,32 @@ public class SocketService {
             });
 
             // kết thúc soạn tin nhắn nhóm
-            socket.on("group-typing-stop", args -> {
-                if (args.length > 0 && onGroupTypingStop != null) {
-                    try {
-                        JSONObject data = (JSONObject) args[0];
-                        String senderId = data.optString("senderId");
-                        Platform.runLater(() -> onGroupTypingStop.accept(senderId));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
+            // luôn chuyển tiếp kể cả khi thiếu senderId (id rỗng): giao diện chỉ cần biết để ẩn dòng "đang soạn tin"
+            socket.on(EVT_GROUP_TYPING_STOP, args -> postId(EVT_GROUP_TYPING_STOP, args, "senderId", true));
 
             // đã xem (nhóm)
-            socket.on("user-seen-message", args -> {
-                if (args.length > 0 && onGroupMessageSeen != null) {
-                    try {
-                        JsonObject data = gson.fromJson(args[0].toString(), JsonObject.class);
-                        Platform.runLater(() -> onGroupMessageSeen.accept(data));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
+            socket.on(EVT_GROUP_MESSAGE_SEEN, args -> postDecoded(EVT_GROUP_MESSAGE_SEEN, args, SocketEventCodec::decodeGroupSeenReceipt));
+            socket.on(EVT_GROUP_READ_UPTO, args -> {
+                ApiService.invalidate(GROUPS_ENDPOINT);
+                postDecoded(EVT_GROUP_READ_UPTO, args, SocketEventCodec::decodeGroupReadUpTo);
             });
 
             // tạo nhóm
-            socket.on("group-created", args -> {
-                if (args.length > 0 && onGroupCreated != null) {
-                    try {
-                        JsonObject data = gson.fromJson(args[0].toString(), JsonObject.class);
-                        Platform.runLater(() -> onGroupCreated.accept(data));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
+            socket.on(EVT_GROUP_CREATED, args -> {
+                ApiService.invalidate(GROUP_PREFIX);
+                postJson(EVT_GROUP_CREATED, args);
             });
 
             // xóa nhóm
-            socket.on("group-deleted", args -> {
-                if (args.length > 0 && onGroupDeleted != null) {
-                    try {
-                        JsonObject data = gson.fromJson(args[0].toString(), JsonObject.class);
-                        Platform.runLater(() -> onGroupDeleted.accept(data));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
+            socket.on(EVT_GROUP_DELETED, args -> {
+                ApiService.invalidate(GROUP_PREFIX);
+                postJson(EVT_GROUP_DELETED, args);
             });
 
             // tải lại nhóm
-            socket.on("reload-groups", args -> {
-                if (onReloadGroups != null) {
-                    Platform.runLater(() -> onReloadGroups.accept(null));
-                }
+            socket.on(EVT_RELOAD_GROUPS, args -> {
+                ApiService.invalidate(GROUP_PREFIX);
+                dispatcher.post(EVT_RELOAD_GROUPS, Boolean.TRUE);
             });
 
             socket.connect();
@@ -266,6 +240,84 @@ public class SocketService {
         }
     }
 
+    // đọc 1 trường id dạng chuỗi trong payload rồi đưa vào hàng đợi
+    private void postId(String type, Object[] args, String field) {
+        postId(type, args, field, false);
+    }
+
+    // keepEmpty: vẫn đưa vào hàng đợi khi không có id (chuỗi rỗng)
+    private void postId(String type, Object[] args, String field, boolean keepEmpty) {
+        if (args.length == 0 || !dispatcher.hasListener(type)) return;
+        try {
+            JSONObject data = (JSONObject) args[0];
+            String id = data.optString(field);
+            if (keepEmpty || !id.isEmpty()) {
+                dispatcher.post(type, id);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // giải mã payload (JSONObject) thẳng sang model rồi đưa vào hàng đợi
+    private <T> void postDecoded(String type, Object[] args, Function<JSONObject, T> decoder) {
+        if (args.length == 0 || !dispatcher.hasListener(type)) return;
+        try {
+            dispatcher.post(type, decoder.apply((JSONObject) args[0]));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // chuyển payload sang JsonObject rồi đưa vào hàng đợi
+    private void postJson(String type, Object[] args) {
+        if (args.length == 0 || !dispatcher.hasListener(type)) return;
+        try {
+            JsonObject data = gson.fromJson(args[0].toString(), JsonObject.class);
+            dispatcher.post(type, data);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // hàng đợi tin nhắn gửi đi của tài khoản, đọc lại các tin chưa gửi được từ phiên trước
+    private OutboundMessageQueue createOutbox(String userId) {
+        if (outbox != null) {
+            outbox.shutdown();
+        }
+
+        OutboundMessageQueue queue = new OutboundMessageQueue(
+                AppStorage.userDir(userId).resolve("outbox.json"),
+                new OutboundMessageQueue.Transport() {
+                    @Override
+                    public boolean isConnected() {
+                        return SocketService.this.isConnected();
+                    }
+
+                    @Override
+                    public void emit(String event, JSONObject payload, Ack ack) {
+                        Socket current = socket;
+                        if (current != null) {
+                            current.emit(event, payload, ack);
+                        }
+                    }
+                });
+
+        queue.setOnDelivered(delivery -> {
+            // tin cá nhân không được server phát lại cho người gửi: ghi nhận vào mốc đồng bộ ngay khi có ack
+            // để không bị tải bù trùng sau khi kết nối lại
+            // tin nhóm thì server phát lại cho cả phòng (kể cả người gửi) ngay sau ack: để bản phát lại được ghi nhận
+            // và đi qua luồng nhận tin nhóm (thay tin tạm, cập nhật tin cuối của nhóm), không chặn nó như tin trùng
+            if (OutboundMessageQueue.KIND_DIRECT.equals(delivery.getKind())) {
+                syncTracker.record(ConversationSyncTracker.directKey(delivery.getTargetId()),
+                        delivery.getServerId(), delivery.getCreatedAt());
+            }
+            dispatcher.post(EVT_MESSAGE_ACKED, delivery);
+        });
+        queue.setOnFailed(message -> dispatcher.post(EVT_MESSAGE_FAILED, message));
+        return queue;
+    }
+
     // ================= DISCONNECT =================
 
     public void disconnect() {
@@ -273,6 +325,14 @@ public class SocketService {
             socket.off();
             socket.disconnect();
             socket = null;
+            dispatcher.clear();
+            joinedGroups.clear();
+            syncTracker.clear();
+            hasConnected = false;
+            if (outbox != null) {
+                outbox.shutdown();
+                outbox = null;
+            }
             System.out.println("Socket disconnected");
         }
     }
@@ -304,10 +364,18 @@ public class SocketService {
 
     // xem tin nhăn
     public void emitSeenMessage(String senderId){
+        emitSeenMessage(senderId, null);
+    }
+
+    // đã đọc tới tin upToMessageId của senderId (null = tất cả), server đánh dấu cả khoảng bằng 1 lần cập nhật
+    public void emitSeenMessage(String senderId, String upToMessageId){
         if (socket != null){
             JSONObject obj = new JSONObject();
             try {
                 obj.put("senderId", senderId);
+                if (upToMessageId != null) {
+                    obj.put("messageId", upToMessageId);
+                }
             } catch (Exception e){
                 e.printStackTrace();
             }
@@ -317,77 +385,47 @@ public class SocketService {
 
     // ================= CHAT =================
 
-    public void sendMessage(String receiverId, String content) {
-        if (socket == null || !socket.connected()) {
+    // đưa tin nhắn vào hàng đợi gửi đi, clientId giúp server bỏ qua tin bị gửi lặp lại
+    public void sendMessage(String receiverId, String content, String clientId) {
+        enqueue(OutboundMessageQueue.KIND_DIRECT, receiverId, content, clientId);
+    }
+
+    private void enqueue(String kind, String targetId, String content, String clientId) {
+        if (outbox == null) {
             System.out.println("Chưa kết nối socket");
             return;
         }
-
-        // dùng JSONObject của org.json
-        JSONObject payload = new JSONObject();
-        try {
-            payload.put("receiverId", receiverId);
-            payload.put("content", content);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        socket.emit("send-message", payload, (Ack) args -> {
-            // Xử lý callback như cũ
-            if (args.length > 0) {
-                // Chỗ này vẫn có thể dùng Gson để parse phản hồi từ server nếu muốn
-                System.out.println("Server phản hồi: " + args[0].toString());
-            }
-        });
+        outbox.enqueue(kind, targetId, content, clientId);
     }
 
     // ==================== GROUP EMIT METHODS ====================
 
     public void joinGroup(String groupId) {
+        joinedGroups.add(groupId);
         if (socket == null || !socket.connected()) return;
 
-        JSONObject obj = new JSONObject();
-        try {
-            obj.put("groupId", groupId);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        socket.emit("join-group", obj);
+        emitGroupRoom("join-group", groupId);
     }
 
     public void leaveGroup(String groupId) {
+        joinedGroups.remove(groupId);
         if (socket == null || !socket.connected()) return;
 
+        emitGroupRoom("leave-group", groupId);
+    }
+
+    private void emitGroupRoom(String event, String groupId) {
         JSONObject obj = new JSONObject();
         try {
             obj.put("groupId", groupId);
         } catch (Exception e) {
             e.printStackTrace();
         }
-        socket.emit("leave-group", obj);
+        socket.emit(event, obj);
     }
 
-    public void sendGroupMessage(String groupId, String content) {
-        if (socket == null || !socket.connected()) {
-            System.out.println("Chưa kết nối socket");
-            return;
-        }
-
-        JSONObject payload = new JSONObject();
-        try {
-            payload.put("groupId", groupId);
-            payload.put("content", content);
-            payload.put("replyTo", JSONObject.NULL);
-            payload.put("fileUrl", JSONObject.NULL);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        socket.emit("send-group-message", payload, (Ack) args -> {
-            if (args.length > 0) {
-                System.out.println("Server phản hồi group message: " + args[0].toString());
-            }
-        });
+    public void sendGroupMessage(String groupId, String content, String clientId) {
+        enqueue(OutboundMessageQueue.KIND_GROUP, groupId, content, clientId);
     }
 
     public void emitGroupTypingStart(String groupId) {
@@ -414,79 +452,109 @@ public class SocketService {
         socket.emit("group-typing-stop", obj);
     }
 
-    public void emitSeenGroupMessage(String messageId, String groupId) {
+    // đã đọc tới tin messageId của nhóm: 1 sự kiện thay cho 1 sự kiện "seen-group-message" mỗi tin
+    public void emitGroupReadUpTo(String groupId, String messageId) {
         if (socket == null || !socket.connected()) return;
 
         JSONObject obj = new JSONObject();
         try {
-            obj.put("messageId", messageId);
             obj.put("groupId", groupId);
+            obj.put("messageId", messageId);
         } catch (Exception e) {
             e.printStackTrace();
         }
-        socket.emit("seen-group-message", obj);
+        socket.emit("read-group-upto", obj);
     }
 
     // ================= SETTERS =================
+    // mỗi listener nhận danh sách các sự kiện gom được trong 1 khung hình, chạy trên luồng FX
+
+    public void setOnNewMessage(Consumer<List<Message>> callback) {
+        dispatcher.on(EVT_NEW_MESSAGE, callback);
+    }
 
-    public void setOnNewMessage(Consumer<Message> callback) {
-        this.onNewMessage = callback;
+    public void setOnOnlineListReceived(Consumer<List<List<String>>> callback) {
+        dispatcher.on(EVT_ONLINE_LIST, callback);
     }
 
-    public void setOnOnlineListReceived(Consumer<List<String>> callback) {
-        this.onOnlineListReceived = callback;
+    public void setOnUserOnline(Consumer<List<String>> onUserOnline) {
+        dispatcher.on(EVT_USER_ONLINE, onUserOnline);
     }
 
-    public void setOnUserOnline(Consumer<String> onUserOnline) {
-        this.onUserOnline = onUserOnline;
+    public void setOnUserOffline(Consumer<List<String>> onUserOffline) {
+        dispatcher.on(EVT_USER_OFFLINE, onUserOffline);
     }
 
-    public void setOnUserOffline(Consumer<String> onUserOffline) {
-        this.onUserOffline = onUserOffline;
+    public void setOnTypingStart(Consumer<List<String>> onTypingStart) {
+        dispatcher.on(EVT_TYPING_START, onTypingStart);
     }
 
-    public void setOnTypingStart(Consumer<String> onTypingStart) {
-        this.onTypingStart = onTypingStart;
+    public void setOnTypingStop(Consumer<List<String>> onTypingStop) {
+        dispatcher.on(EVT_TYPING_STOP, onTypingStop);
     }
 
-    public void setOnTypingStop(Consumer<String> onTypingStop) {
-        this.onTypingStop = onTypingStop;
+    public void setOnMessageSeen(Consumer<List<SeenReceipt>> onMessageSeen) {
+        dispatcher.on(EVT_MESSAGE_SEEN, onMessageSeen);
     }
 
-    public void setOnMessageSeen(Consumer<JsonObject> onMessageSeen) {
-        this.onMessageSeen = onMessageSeen;
+    public void setOnNewGroupMessage(Consumer<List<GroupMessage>> callback) {
+        dispatcher.on(EVT_NEW_GROUP_MESSAGE, callback);
     }
 
-    public void setOnNewGroupMessage(Consumer<GroupMessage> callback) {
-        this.onNewGroupMessage = callback;
+    public void setOnGroupTypingStart(Consumer<List<String>> callback) {
+        dispatcher.on(EVT_GROUP_TYPING_START, callback);
     }
 
-    public void setOnGroupTypingStart(Consumer<String> callback) {
-        this.onGroupTypingStart = callback;
+    public void setOnGroupTypingStop(Consumer<List<String>> callback) {
+        dispatcher.on(EVT_GROUP_TYPING_STOP, callback);
     }
 
-    public void setOnGroupTypingStop(Consumer<String> callback) {
-        this.onGroupTypingStop = callback;
+    public void setOnGroupMessageSeen(Consumer<List<SeenReceipt>> callback) {
+        dispatcher.on(EVT_GROUP_MESSAGE_SEEN, callback);
     }
 
-    public void setOnGroupMessageSeen(Consumer<JsonObject> callback) {
-        this.onGroupMessageSeen = callback;
+    public void setOnGroupReadUpTo(Consumer<List<SeenReceipt>> callback) {
+        dispatcher.on(EVT_GROUP_READ_UPTO, callback);
     }
 
-    public void setOnGroupCreated(Consumer<JsonObject> callback) {
-        this.onGroupCreated = callback;
+    public void setOnGroupCreated(Consumer<List<JsonObject>> callback) {
+        dispatcher.on(EVT_GROUP_CREATED, callback);
     }
 
-    public void setOnGroupDeleted(Consumer<JsonObject> callback) {
-        this.onGroupDeleted = callback;
+    public void setOnGroupDeleted(Consumer<List<JsonObject>> callback) {
+        dispatcher.on(EVT_GROUP_DELETED, callback);
     }
 
-    public void setOnReloadGroups(Consumer<Void> callback) {
-        this.onReloadGroups = callback;
+    // nhiều lần "reload-groups" trong cùng 1 khung hình chỉ gọi callback 1 lần
+    public void setOnReloadGroups(Runnable callback) {
+        Consumer<List<Boolean>> batch = callback != null ? events -> callback.run() : null;
+        dispatcher.on(EVT_RELOAD_GROUPS, batch);
+    }
+
+    // nhận mốc tin nhắn của các cuộc trò chuyện gần đây mỗi khi socket kết nối lại
+    public void setOnReconnected(Consumer<Map<String, String>> callback) {
+        Consumer<List<Map<String, String>>> batch = callback != null
+                ? events -> callback.accept(events.get(events.size() - 1))
+                : null;
+        dispatcher.on(EVT_RECONNECTED, batch);
+    }
+
+    // server đã xác nhận lưu tin nhắn (có _id và createdAt thật)
+    public void setOnMessageAcked(Consumer<List<OutboundMessageQueue.Delivery>> callback) {
+        dispatcher.on(EVT_MESSAGE_ACKED, callback);
+    }
+
+    // tin nhắn bị bỏ sau nhiều lần gửi lại không thành công
+    public void setOnMessageFailed(Consumer<List<OutboundMessageQueue.PendingMessage>> callback) {
+        dispatcher.on(EVT_MESSAGE_FAILED, callback);
     }
 
     // ================= GETTERS =================
 
+    public ConversationSyncTracker getSyncTracker() {
+        return syncTracker;
+    }
+
     public List<String> getOnlineUsers() {
         return onlineUsers;
     }
@@ -14,7 +14,7 @@ public class UserService {
 
     public UserService() {
         this.apiService = new ApiService();
-        this.gson = new Gson();
+        this.gson = HttpRuntime.get().gson();
     }
 
     // lớp nội bộ để parse response khi upload ảnh (lấy URL)
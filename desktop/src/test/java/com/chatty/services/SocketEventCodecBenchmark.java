@@ -0,0 +1,106 @@
+package com.chatty.services;
+
+import com.chatty.models.GroupMessage;
+import com.chatty.models.Message;
+import com.google.gson.Gson;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+// so sánh thời gian CPU và số byte cấp phát khi giải mã payload socket:
+// SocketEventCodec (đọc thẳng JSONObject) với cách cũ gson.fromJson(args[0].toString(), ...)
+// chạy: mvn -B -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+//       java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.chatty.services.SocketEventCodecBenchmark [số payload] [số vòng]
+public final class SocketEventCodecBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile Object sink; // giữ kết quả để JIT không bỏ qua phần giải mã
+
+    private SocketEventCodecBenchmark() {}
+
+    public static void main(String[] args) throws JSONException {
+        int payloads = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Gson gson = new Gson();
+
+        List<JSONObject> direct = new ArrayList<>();
+        List<JSONObject> group = new ArrayList<>();
+        for (int i = 0; i < payloads; i++) {
+            direct.add(directPayload(i));
+            group.add(groupPayload(i));
+        }
+
+        System.out.printf("%d payload x %d vòng (vòng đầu là khởi động, không tính)%n", payloads, rounds);
+        compare("receive-message", direct,
+                SocketEventCodec::decodeMessage,
+                data -> gson.fromJson(data.toString(), Message.class), rounds);
+        compare("receive-group-message", group,
+                SocketEventCodec::decodeGroupMessage,
+                data -> gson.fromJson(data.toString(), GroupMessage.class), rounds);
+    }
+
+    private static void compare(String name, List<JSONObject> payloads, Function<JSONObject, ?> codec,
+                                Function<JSONObject, ?> gson, int rounds) {
+        long[] codecResult = measure(payloads, codec, rounds);
+        long[] gsonResult = measure(payloads, gson, rounds);
+        System.out.printf("%-22s codec: %7.0f ns/payload %7d B/payload | gson: %7.0f ns/payload %7d B/payload%n",
+                name,
+                (double) codecResult[0] / payloads.size(), codecResult[1] / payloads.size(),
+                (double) gsonResult[0] / payloads.size(), gsonResult[1] / payloads.size());
+    }
+
+    // trả về [thời gian CPU, byte cấp phát] trung bình mỗi vòng (trừ vòng khởi động) trên luồng hiện tại
+    private static long[] measure(List<JSONObject> payloads, Function<JSONObject, ?> decode, int rounds) {
+        long thread = Thread.currentThread().getId();
+        long cpu = 0;
+        long allocated = 0;
+        for (int round = 0; round <= rounds; round++) {
+            long cpuStart = THREADS.getCurrentThreadCpuTime();
+            long allocStart = THREADS.getThreadAllocatedBytes(thread);
+            for (JSONObject data : payloads) {
+                sink = decode.apply(data);
+            }
+            if (round == 0) continue;
+            cpu += THREADS.getCurrentThreadCpuTime() - cpuStart;
+            allocated += THREADS.getThreadAllocatedBytes(thread) - allocStart;
+        }
+        return new long[] { cpu / rounds, allocated / rounds };
+    }
+
+    private static JSONObject directPayload(int i) throws JSONException {
+        JSONObject data = new JSONObject();
+        data.put("_id", String.format("65f0c0de%016x", i));
+        data.put("senderId", "65f0c0de00000000000000a1");
+        data.put("receiverId", "65f0c0de00000000000000b2");
+        data.put("content", "tin nhắn thử số " + i + " với một chút nội dung để giống tin thật");
+        data.put("createdAt", "2024-03-12T08:15:30.123Z");
+        data.put("clientId", "c2f1d7a4-0b7e-4d57-9a8e-" + String.format("%012d", i));
+        data.put("seenBy", new JSONArray().put("65f0c0de00000000000000a1"));
+        return data;
+    }
+
+    private static JSONObject groupPayload(int i) throws JSONException {
+        JSONObject sender = new JSONObject();
+        sender.put("_id", "65f0c0de00000000000000a1");
+        sender.put("username", "nguyenvana");
+        sender.put("fullName", "Nguyễn Văn A");
+        sender.put("avatar", "https://res.cloudinary.com/demo/image/upload/avatar.png");
+
+        JSONObject data = new JSONObject();
+        data.put("_id", String.format("65f0c0de%016x", i));
+        data.put("groupId", "65f0c0de00000000000000c3");
+        data.put("senderId", sender);
+        data.put("content", "tin nhắn nhóm thử số " + i);
+        data.put("createdAt", "2024-03-12T08:15:30.123Z");
+        data.put("updatedAt", "2024-03-12T08:15:30.123Z");
+        data.put("clientId", "c2f1d7a4-0b7e-4d57-9a8e-" + String.format("%012d", i));
+        data.put("seenBy", new JSONArray().put("65f0c0de00000000000000a1").put("65f0c0de00000000000000b2"));
+        return data;
+    }
+}